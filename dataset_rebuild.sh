@@ -0,0 +1,13 @@
+if [ ! -f data/sorted_dataset.csv ]; then
+  Rscript sort_dataset.R
+fi
+
+rm -rf data/final/
+
+track_insertion/dataset_rebuild_script.sh
+
+if [ $? -eq 0 ] ; then
+  Rscript plot_rebuilt_map.R
+else
+  exit 1
+fi
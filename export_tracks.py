@@ -1,9 +1,71 @@
 import math
 import os
 import pickle
+import struct
 
 LINE_FLUSH = '\r\033[K'
 
+# layout of tracks.bin, see TrackContainer.java
+CONTAINER_MAGIC = 0x4b54434d
+CONTAINER_VERSION = 1
+CONTAINER_HEADER_SIZE = 32
+CONTAINER_ENTRY_SIZE = 40
+
+def putColumn(data, values):
+  last = 0
+
+  for value in values:
+    bits = struct.unpack('<q', struct.pack('<d', value))[0]
+    difference = ((bits - last + 2**63) % 2**64) - 2**63
+    zigzag = ((difference << 1) ^ (difference >> 63)) & (2**64 - 1)
+
+    while zigzag > 0x7f:
+      data.append((zigzag & 0x7f) | 0x80)
+      zigzag >>= 7
+
+    data.append(zigzag)
+    last = bits
+
+def writeContainer(path, tracks):
+  data = bytearray()
+  names = bytearray()
+  entries = []
+  pointCount = 0
+
+  for name, points in tracks:
+    offset = len(data)
+
+    putColumn(data, [point['long'] for point in points])
+    yOffset = len(data) - offset
+    putColumn(data, [point['lat'] for point in points])
+    zOffset = timestampOffset = len(data) - offset
+    putColumn(data, [point['date'].timestamp() for point in points])
+    onlineOffset = len(data) - offset
+
+    flags = bytearray((len(points) + 7) // 8)
+
+    for i, point in enumerate(points):
+      if point['online']:
+        flags[i // 8] |= 1 << (i % 8)
+
+    data += flags
+
+    encodedName = name.encode('utf-8')
+    entries.append((offset, len(points), yOffset, zOffset, timestampOffset, onlineOffset, len(names), len(encodedName)))
+    names += encodedName
+    pointCount += len(points)
+
+  dataOffset = CONTAINER_HEADER_SIZE + len(entries) * CONTAINER_ENTRY_SIZE
+
+  with open(path, 'wb') as containerFile:
+    containerFile.write(struct.pack('<iiiiqq', CONTAINER_MAGIC, CONTAINER_VERSION, len(entries), 0, pointCount, dataOffset + len(data)))
+
+    for offset, *fields in entries:
+      containerFile.write(struct.pack('<q8i', dataOffset + offset, *fields, 0))
+
+    containerFile.write(data)
+    containerFile.write(names)
+
 os.makedirs('data/tracks', exist_ok=True)
 
 tracksetCount = len(os.listdir('data/tracksets'))
@@ -23,16 +85,19 @@ for tracksetFileIndex in range(tracksetCount):
     if trackCountDigitsEstimate == 0:
       trackCountDigitsEstimate = math.ceil(math.log10(len(trackset) * tracksetCount))
 
+    tracks = []
+
     for track in trackset:
       if len(track['points']) < 2:
         continue
 
-      with open(f'data/tracks/{tracksetFileIndex}/track_{str(trackFileIndex).rjust(trackCountDigitsEstimate, "0")}.txt', 'w') as trackFile:
-        for point in track['points']:
-          trackFile.write(f'{point["long"]} {point["lat"]} {point["date"].timestamp()} {point["online"]}\n')
+      tracks.append((f'track_{str(trackFileIndex).rjust(trackCountDigitsEstimate, "0")}.txt', track['points']))
 
       trackFileIndex += 1
 
+    # all tracks of the trackset go into one container instead of one file each
+    writeContainer(f'data/tracks/{tracksetFileIndex}/tracks.bin', tracks)
+
   tracksetFileIndex += 1
 
 print(f'{LINE_FLUSH}Tracks exported!')
@@ -1,4 +1,10 @@
-track_insertion/final_merge_script.sh
+if [ $# -eq 0 ] ; then
+  echo "Pass output index of the rebuilt tracksets to merge"
+
+  exit 1
+fi
+
+track_insertion/final_merge_script.sh $1
 
 if [ $? -eq 0 ] ; then
   Rscript plot_rebuilt_map.R
@@ -0,0 +1,171 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: Benchmark.java
+ *
+ */
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * A benchmark run by Benchmarks: setUp() prepares one invocation of run(), which is timed on its
+ * own, as a JMH benchmark with a setup at the invocation level.
+ *
+ * measure() runs WARMUP_ITERATIONS iterations then ITERATIONS measured ones, each of
+ * ITERATION_MILLIS milliseconds of run(), or of MAX_ITERATION_MILLIS with setUp(). It reports
+ * the time per operation, the operations per second, the bytes allocated per operation and the
+ * allocation rate (from the allocated bytes of the thread, as the GC profiler of JMH does), and
+ * the collections during the measured iterations.
+ */
+abstract class Benchmark {
+
+  static final int WARMUP_ITERATIONS = 3;
+  static final int ITERATIONS = 5;
+  static final long ITERATION_MILLIS = 1000;
+
+  // an iteration whose setUp() takes most of the time also ends after this wall time
+  static final long MAX_ITERATION_MILLIS = 5 * ITERATION_MILLIS;
+
+  // results are added to sink so that the JIT can't leave out the benchmarked code
+  static volatile double sink;
+
+  final String name;
+  final String unit;
+
+  /**
+   * @param unit what one operation of run() is, as reported
+   */
+  Benchmark(String name, String unit) {
+    this.name = name;
+    this.unit = unit;
+  }
+
+  /**
+   * Prepares the next invocation of run(), outside of the measured time.
+   */
+  void setUp() {
+  }
+
+  /**
+   * Runs one invocation.
+   *
+   * @return the number of operations it did
+   */
+  abstract long run();
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private static long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static long[] collections() {
+    long count = 0;
+    long millis = 0;
+
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, collector.getCollectionCount());
+      millis += Math.max(0, collector.getCollectionTime());
+    }
+    return new long[] { count, millis };
+  }
+
+  /**
+   * Runs invocations until run() took ITERATION_MILLIS, or at most MAX_ITERATION_MILLIS.
+   *
+   * @return the nanoseconds, operations and allocated bytes of run()
+   */
+  private long[] iteration() {
+    long nanos = 0;
+    long operations = 0;
+    long bytes = 0;
+    long end = System.nanoTime() + MAX_ITERATION_MILLIS * 1000000L;
+
+    while (nanos < ITERATION_MILLIS * 1000000L && (operations == 0 || System.nanoTime() < end)) {
+      setUp();
+
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+
+      operations += run();
+
+      nanos += System.nanoTime() - start;
+      bytes += allocatedBytes() - allocated;
+    }
+    return new long[] { nanos, operations, bytes };
+  }
+
+  static String header() {
+    return String.format(Locale.ROOT, "%-28s %14s %10s %14s %10s %10s %6s %8s", "benchmark",
+        "ns/op", "+-", "ops/s", "B/op", "MB/s", "gc", "gc ms");
+  }
+
+  /**
+   * Measures this benchmark and returns its line of results.
+   */
+  String measure() {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      iteration();
+    }
+
+    double[] nanosPerOperation = new double[ITERATIONS];
+    long nanos = 0;
+    long operations = 0;
+    long bytes = 0;
+    long[] collections = collections();
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      long[] result = iteration();
+
+      nanosPerOperation[i] = (double) result[0] / result[1];
+      nanos += result[0];
+      operations += result[1];
+      bytes += result[2];
+    }
+
+    long[] collectionsAfter = collections();
+
+    double mean = (double) nanos / operations;
+    double variance = 0;
+
+    for (double value : nanosPerOperation) {
+      variance += (value - mean) * (value - mean);
+    }
+
+    double error = Math.sqrt(variance / Math.max(1, ITERATIONS - 1));
+
+    return String.format(Locale.ROOT, "%-28s %14.1f %10.1f %14.1f %10.1f %10.1f %6d %8d",
+        name + " (" + unit + ")", mean, error, 1e9 * operations / nanos,
+        (double) bytes / operations, bytes / (nanos / 1e3), collectionsAfter[0]
+            - collections[0], collectionsAfter[1] - collections[1]);
+  }
+}
@@ -0,0 +1,414 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: Benchmarks.java
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmarks of the geometry and insertion hot paths, over fixed fixtures: tracks made from the
+ * roads in data/roads (every road cut into pieces of TRACK_POINTS points, with a seeded noise of
+ * NOISE_IN_EPS * eps) and a map constructed from one set of these tracks, or read from a map
+ * folder. The benchmarks insert or compare another set of tracks, made with another seed.
+ *
+ * Run with "make bench", see benchmark_script.sh.
+ */
+public class Benchmarks {
+
+  static final int TRACK_POINTS = 200;
+  static final double NOISE_IN_EPS = 0.1;
+
+  // number of line and point pairs of one invocation of the geometry benchmarks
+  static final int PAIRS = 4096;
+
+  private final double eps;
+  private final double altEps = 4.0;
+
+  private final MapConstruction construction = new MapConstruction();
+
+  private final List<PoseFile> tracks;
+  private final MapGraph baseMap;
+
+  // the map the insertion benchmarks write into, a copy of baseMap with the tracks before next
+  private MapGraph map;
+  private VertexRegistry registry;
+  private EdgeIndex edgeIndex;
+  private EdgeTable edgeTable;
+  private int next;
+
+  private Benchmarks(List<PoseFile> tracks, MapGraph baseMap, double eps) {
+    this.tracks = tracks;
+    this.baseMap = baseMap;
+    this.eps = eps;
+
+    construction.setParallelism(1);
+    construction.setShowProgress(false);
+  }
+
+  /**
+   * Returns the points of road, one "x y" per line.
+   */
+  static List<double[]> readRoad(File road) throws IOException {
+    List<double[]> points = new ArrayList<double[]>();
+    BufferedReader in = new BufferedReader(new FileReader(road));
+
+    try {
+      String str;
+
+      while ((str = in.readLine()) != null) {
+        String[] fields = str.trim().split("\\s+");
+
+        if (fields.length >= 2) {
+          points.add(new double[] { Double.parseDouble(fields[0]),
+              Double.parseDouble(fields[1]) });
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return points;
+  }
+
+  /**
+   * Cuts the roads in roadsPath into tracks of TRACK_POINTS points, moved by a noise of seed.
+   */
+  static List<PoseFile> makeTracks(File roadsPath, double eps, long seed) throws IOException {
+    File[] roads = roadsPath.listFiles();
+
+    if (roads == null) {
+      throw new IOException("no roads found in " + roadsPath);
+    }
+    Arrays.sort(roads);
+
+    Random random = new Random(seed);
+    List<PoseFile> tracks = new ArrayList<PoseFile>();
+
+    for (File road : roads) {
+      List<double[]> points = readRoad(road);
+
+      for (int start = 0; start + 1 < points.size(); start += TRACK_POINTS - 1) {
+        PoseFile track = new PoseFile();
+        track.fileName = road.getName() + "#" + start;
+
+        for (int i = start; i < Math.min(points.size(), start + TRACK_POINTS); i++) {
+          Vertex point = new Vertex(points.get(i)[0] + random.nextGaussian() * NOISE_IN_EPS * eps,
+              points.get(i)[1] + random.nextGaussian() * NOISE_IN_EPS * eps, 0.0, i);
+          point.addEntry(1.0);
+
+          track.addPoint(point);
+        }
+
+        track.expandBoundingBox();
+
+        if (track.getPose().size() >= 2) {
+          tracks.add(track);
+        }
+      }
+    }
+    return tracks;
+  }
+
+  /**
+   * Copies graph into map, with the entries of its vertices, and registers them in registry.
+   */
+  static void copy(MapGraph graph, MapGraph map, VertexRegistry registry) {
+    for (int i = 0; i < graph.size(); i++) {
+      int index = map.addVertex(graph.getX(i), graph.getY(i), graph.getZ(i),
+          graph.getOnlineSum(i), graph.getEntryCount(i));
+
+      registry.put(map.getVertex(index), index);
+
+      for (int j = 0; j < graph.getDegree(i); j++) {
+        map.addElementAdjList(index, graph.getAdjacentElementAt(i, j));
+      }
+    }
+  }
+
+  /**
+   * Moves to the next track, starting again from a copy of baseMap after the last one.
+   */
+  private PoseFile nextTrack() {
+    if (map == null || next == tracks.size()) {
+      map = new MapGraph();
+      registry = new VertexRegistry();
+      copy(baseMap, map, registry);
+      edgeIndex = EdgeIndex.build(map, EdgeIndex.CELL_SIZE_IN_EPS * eps);
+      edgeTable = new EdgeTable(map);
+      next = 0;
+    }
+    return tracks.get(next++);
+  }
+
+  private List<Edge> edgesNear(EdgeIndex index, EdgeTable table, PoseFile track) {
+    return index.getEdges(table, track.minX - eps, track.minY - eps, track.maxX + eps,
+        track.maxY + eps);
+  }
+
+  /**
+   * Line.pIntersection(Vertex): the intersection of an edge with the eps-disc around a point.
+   */
+  Benchmark pIntersectionVertex() {
+    final Line[] lines = new Line[PAIRS];
+    final Vertex[] points = new Vertex[PAIRS];
+    EdgeIndex index = EdgeIndex.build(baseMap, EdgeIndex.CELL_SIZE_IN_EPS * eps);
+    EdgeTable table = new EdgeTable(baseMap);
+    int count = 0;
+
+    for (int k = 0; count < PAIRS; k = (k + 1) % tracks.size()) {
+      PoseFile track = tracks.get(k);
+      List<Edge> edges = edgesNear(index, table, track);
+
+      for (int i = 0; i < edges.size() && count < PAIRS; i++) {
+        lines[count] = edges.get(i).getLine();
+        points[count] = track.getPose().get(i % track.getPose().size());
+        count++;
+      }
+    }
+
+    return new Benchmark("pIntersection(Vertex)", "call") {
+      @Override
+      long run() {
+        double sum = 0;
+
+        for (int i = 0; i < PAIRS; i++) {
+          double[] t = lines[i].pIntersection(points[i], eps, true);
+
+          if (t != null) {
+            sum += t[0];
+          }
+        }
+        sink += sum;
+        return PAIRS;
+      }
+    };
+  }
+
+  /**
+   * Line.pIntersection(Edge): if a track segment crosses the eps-region of an edge.
+   */
+  Benchmark pIntersectionEdge() {
+    final Line[] lines = new Line[PAIRS];
+    final Edge[] edges = new Edge[PAIRS];
+    final IntersectionKernel.Scratch scratch = new IntersectionKernel.Scratch();
+    EdgeIndex index = EdgeIndex.build(baseMap, EdgeIndex.CELL_SIZE_IN_EPS * eps);
+    EdgeTable table = new EdgeTable(baseMap);
+    int count = 0;
+
+    for (int k = 0; count < PAIRS; k = (k + 1) % tracks.size()) {
+      PoseFile track = tracks.get(k);
+      List<Edge> near = edgesNear(index, table, track);
+      List<Vertex> pose = track.getPose();
+
+      for (int i = 0; i < near.size() && count < PAIRS; i++) {
+        int j = i % (pose.size() - 1);
+
+        lines[count] = new Line(pose.get(j), pose.get(j + 1));
+        edges[count] = near.get(i);
+        count++;
+      }
+    }
+
+    return new Benchmark("pIntersection(Edge)", "call") {
+      @Override
+      long run() {
+        int found = 0;
+
+        for (int i = 0; i < PAIRS; i++) {
+          if (lines[i].pIntersection(edges[i], eps, scratch)) {
+            found++;
+          }
+        }
+        sink += found;
+        return PAIRS;
+      }
+    };
+  }
+
+  /**
+   * MapConstruction.computeNextInterval(): the first white interval of every edge near a track.
+   */
+  Benchmark computeNextInterval() {
+    return new Benchmark("computeNextInterval", "edge") {
+      EdgeIndex index = EdgeIndex.build(baseMap, EdgeIndex.CELL_SIZE_IN_EPS * eps);
+      EdgeTable table = new EdgeTable(baseMap);
+      int k = 0;
+      PoseFile track;
+      List<Edge> edges;
+
+      @Override
+      void setUp() {
+        do {
+          track = tracks.get(k);
+          k = (k + 1) % tracks.size();
+          edges = edgesNear(index, table, track);
+        } while (edges.isEmpty());
+      }
+
+      @Override
+      long run() {
+        SegmentIndex segments = track.getSegmentIndex();
+
+        for (Edge edge : edges) {
+          construction.computeNextInterval(edge, segments, 0, eps, altEps);
+        }
+        sink += edges.get(0).getCurveStart();
+        return edges.size();
+      }
+    };
+  }
+
+  /**
+   * MapConstruction.updateMap(): adding the segments of a track to the map as edges.
+   */
+  Benchmark updateMap() {
+    return new Benchmark("updateMap", "edge") {
+      PoseFile track;
+
+      @Override
+      void setUp() {
+        track = nextTrack();
+      }
+
+      @Override
+      long run() {
+        List<Vertex> pose = track.getPose();
+
+        for (int i = 0; i + 1 < pose.size(); i++) {
+          construction.updateMap(map, registry, edgeIndex, new Edge(pose.get(i),
+              pose.get(i + 1)));
+        }
+        return pose.size() - 1;
+      }
+    };
+  }
+
+  /**
+   * MapConstruction.commitEdgeSplits(): splitting the edges of the map on which a track was
+   * inserted.
+   */
+  Benchmark commitEdgeSplits() {
+    return new Benchmark("commitEdgeSplits", "track") {
+      List<Edge> edges;
+
+      @Override
+      void setUp() {
+        PoseFile track = nextTrack();
+
+        edges = edgesNear(edgeIndex, edgeTable, track);
+        construction.mapConstruction(map, edges, registry, edgeIndex, track.getPose(),
+            track.getSegmentIndex(), eps, altEps);
+      }
+
+      @Override
+      long run() {
+        construction.commitEdgeSplits(edges, registry, edgeIndex, edgeTable, map);
+        return 1;
+      }
+    };
+  }
+
+  /**
+   * The whole insertion of a track, as constructMapMain() does it.
+   */
+  Benchmark insertTrack() {
+    return new Benchmark("insertTrack", "track") {
+      PoseFile track;
+
+      @Override
+      void setUp() {
+        track = nextTrack();
+        // the segment index is built once per track, outside of the insertion
+        track.getSegmentIndex();
+      }
+
+      @Override
+      long run() {
+        List<Edge> edges = edgesNear(edgeIndex, edgeTable, track);
+
+        construction.mapConstruction(map, edges, registry, edgeIndex, track.getPose(),
+            track.getSegmentIndex(), eps, altEps);
+        construction.commitEdgeSplits(edges, registry, edgeIndex, edgeTable, map);
+        return 1;
+      }
+    };
+  }
+
+  public static void main(String args[]) throws IOException {
+    if (args.length < 2) {
+      System.err.println("usage: Benchmarks roadsPath eps [mapPath|-] [name...]");
+      System.exit(1);
+    }
+
+    // path to the folder of the roads the tracks are made from
+    File roadsPath = new File(args[0]);
+
+    // epsilon; see the paper for detail
+    double eps = Double.parseDouble(args[1]);
+
+    // the insertion of every track logs at the INFO level
+    Logger.getLogger("").setLevel(Level.WARNING);
+
+    MapGraph baseMap = new MapGraph();
+
+    if (args.length > 2 && !args[2].equals("-")) {
+      GraphFile.readMapWithEntries(baseMap, new VertexRegistry(), new File(args[2]));
+    } else {
+      MapConstruction construction = new MapConstruction();
+      construction.setShowProgress(false);
+
+      baseMap = construction.constructMapMain(makeTracks(roadsPath, eps, 1), eps, 4.0);
+    }
+
+    List<PoseFile> tracks = makeTracks(roadsPath, eps, 2);
+    Benchmarks benchmarks = new Benchmarks(tracks, baseMap, eps);
+
+    Benchmark[] all = new Benchmark[] { benchmarks.pIntersectionVertex(),
+        benchmarks.pIntersectionEdge(), benchmarks.computeNextInterval(),
+        benchmarks.updateMap(), benchmarks.commitEdgeSplits(), benchmarks.insertTrack() };
+
+    List<String> names = Arrays.asList(args).subList(Math.min(args.length, 3), args.length);
+
+    System.out.println("map of " + baseMap.size() + " vertices, " + tracks.size()
+        + " tracks of at most " + TRACK_POINTS + " points, eps " + eps);
+    System.out.println(Benchmark.header());
+
+    for (Benchmark benchmark : all) {
+      if (names.isEmpty() || names.contains(benchmark.name)) {
+        System.out.println(benchmark.measure());
+      }
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: ScalingBenchmark.java
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures how map construction scales with the number of tracks and of threads, over tracks
+ * from a TrackGenerator. For every track count and thread count it runs:
+ *
+ * - construct: one MapConstruction inserting all tracks, in STEPS steps of as many tracks, to
+ * report the latency per track as the map grows
+ *
+ * - rebuild and merge: a FullRebuild of tracksets of TRACKS_PER_SET tracks, then a MergeTree
+ *
+ * and reports the tracks per second and the peak heap, the sum of the peaks of the heap pools
+ * (an upper bound, the pools don't peak at the same time).
+ */
+public class ScalingBenchmark {
+
+  static final int STEPS = 10;
+  static final int TRACKS_PER_SET = 50;
+
+  private static final double ALT_EPS = 4.0;
+
+  private final double eps;
+
+  // if the results are printed, false while warming up
+  private boolean report = true;
+
+  public ScalingBenchmark(double eps) {
+    this.eps = eps;
+  }
+
+  private static void resetPeakHeap() {
+    System.gc();
+
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  private static double peakHeapMegabytes() {
+    long peak = 0;
+
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak / 1e6;
+  }
+
+  private void print(String format, Object... args) {
+    if (report) {
+      System.out.println(String.format(Locale.ROOT, format, args));
+    }
+  }
+
+  /**
+   * Inserts tracks into one map with threads threads, STEPS steps at a time.
+   */
+  void construct(List<PoseFile> tracks, int threads) {
+    MapConstruction construction = new MapConstruction();
+    construction.setParallelism(threads);
+    construction.setShowProgress(false);
+
+    MapGraph constructedMap = new MapGraph();
+    VertexRegistry map = new VertexRegistry();
+    int step = (tracks.size() + STEPS - 1) / STEPS;
+    long nanos = 0;
+
+    resetPeakHeap();
+
+    for (int start = 0; start < tracks.size(); start += step) {
+      List<PoseFile> stepTracks = tracks.subList(start, Math.min(tracks.size(), start + step));
+      int vertices = constructedMap.size();
+      long startTime = System.nanoTime();
+
+      constructedMap = construction.constructMapMain(constructedMap, map, stepTracks, eps,
+          ALT_EPS);
+
+      long stepNanos = System.nanoTime() - startTime;
+      nanos += stepNanos;
+
+      print("%-9s %7d %7d %9d %9d %12.3f", "latency", tracks.size(), threads,
+          start + stepTracks.size(), vertices, stepNanos / 1e6 / stepTracks.size());
+    }
+
+    print("%-9s %7d %7d %9.3f %10.1f %9.1f %9d", "construct", tracks.size(), threads,
+        nanos / 1e9, tracks.size() / (nanos / 1e9), peakHeapMegabytes(), constructedMap.size());
+  }
+
+  /**
+   * Rebuilds tracksets of TRACKS_PER_SET tracks on threads threads and merges their maps.
+   */
+  void rebuildAndMerge(List<PoseFile> tracks, int threads) {
+    final FullRebuild fullRebuild = new FullRebuild(eps, ALT_EPS, false, threads);
+    List<Callable<MapGraph>> tasks = new ArrayList<Callable<MapGraph>>();
+
+    for (int start = 0; start < tracks.size(); start += TRACKS_PER_SET) {
+      final List<PoseFile> trackset = tracks.subList(start,
+          Math.min(tracks.size(), start + TRACKS_PER_SET));
+
+      tasks.add(new Callable<MapGraph>() {
+        @Override
+        public MapGraph call() {
+          return fullRebuild.rebuild(trackset);
+        }
+      });
+    }
+
+    resetPeakHeap();
+
+    long startTime = System.nanoTime();
+    MapGraph[] partialMaps = new MapGraph[tasks.size()];
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+    try {
+      List<Future<MapGraph>> futures = pool.invokeAll(tasks);
+
+      for (int i = 0; i < partialMaps.length; i++) {
+        partialMaps[i] = futures.get(i).get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+
+    MergeTree mergeTree = new MergeTree(eps, ALT_EPS, threads);
+    mergeTree.setShowProgress(false);
+
+    long mergeTime = System.nanoTime();
+    MapGraph constructedMap = mergeTree.merge(Arrays.asList(partialMaps));
+    long endTime = System.nanoTime();
+
+    print("%-9s %7d %7d %9.3f %10.1f %9.1f %9d", "rebuild", tracks.size(), threads,
+        (mergeTime - startTime) / 1e9, tracks.size() / ((mergeTime - startTime) / 1e9),
+        peakHeapMegabytes(), partialMaps.length);
+    print("%-9s %7d %7d %9.3f %10.1f %9.1f %9d", "merge", tracks.size(), threads,
+        (endTime - mergeTime) / 1e9, tracks.size() / ((endTime - mergeTime) / 1e9),
+        peakHeapMegabytes(), constructedMap.size());
+  }
+
+  private static int[] parseCounts(String list) {
+    String[] fields = list.split(",");
+    int[] counts = new int[fields.length];
+
+    for (int i = 0; i < fields.length; i++) {
+      counts[i] = Integer.parseInt(fields[i].trim());
+    }
+    return counts;
+  }
+
+  public static void main(String args[]) {
+    if (args.length < 3) {
+      System.err.println("usage: ScalingBenchmark eps trackCounts threadCounts [seed]");
+      System.err.println("  e.g. ScalingBenchmark 0.01 100,200,400 1,2,4");
+      System.exit(1);
+    }
+
+    // epsilon; see the paper for detail
+    double eps = Double.parseDouble(args[0]);
+
+    int[] trackCounts = parseCounts(args[1]);
+    int[] threadCounts = parseCounts(args[2]);
+    long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+    // the insertion of every track logs at the INFO level
+    Logger.getLogger("").setLevel(Level.WARNING);
+
+    ScalingBenchmark benchmark = new ScalingBenchmark(eps);
+
+    // one unreported run of the smallest count, so that the first results aren't the ones of
+    // the interpreter
+    List<PoseFile> warmUpTracks = new TrackGenerator(seed).tracks(trackCounts[0]);
+    benchmark.report = false;
+    benchmark.construct(warmUpTracks, threadCounts[0]);
+    benchmark.rebuildAndMerge(warmUpTracks, threadCounts[0]);
+    benchmark.report = true;
+
+    benchmark.print("construct|rebuild|merge tracks threads seconds tracks/s peakHeapMB"
+        + " vertices|tracksets");
+    benchmark.print("latency tracks threads insertedTracks verticesBefore ms/track");
+
+    for (int count : trackCounts) {
+      // the same seed gives the same roads, and the first tracks of a larger count
+      List<PoseFile> tracks = new TrackGenerator(seed).tracks(count);
+
+      // built once, so that every run inserts the tracks the same way
+      for (PoseFile track : tracks) {
+        track.getSegmentIndex();
+      }
+
+      for (int threads : threadCounts) {
+        benchmark.construct(tracks, threads);
+        benchmark.rebuildAndMerge(tracks, threads);
+      }
+    }
+  }
+}
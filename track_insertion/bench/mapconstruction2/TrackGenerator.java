@@ -0,0 +1,274 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TrackGenerator.java
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic road network and noisy GPS tracks driven on it.
+ *
+ * The roads are a grid of gridSize x gridSize intersections, blockSize apart and moved by up to
+ * JITTER_IN_BLOCKS * blockSize, from which a dropRatio of the streets is removed. A track is a
+ * random walk of edgesPerTrack streets, which doesn't turn back unless at a dead end, sampled
+ * every spacing along the way, moved by a gaussian noise of deviation noise, with a point every
+ * TIME_STEP seconds and each point online with probability onlineRatio.
+ *
+ * Everything is drawn from one Random, so the same seed and settings give the same roads and
+ * tracks. The defaults fit eps = 0.01, as in the scripts: the streets are 5 eps apart and the
+ * noise is eps / 10.
+ */
+public class TrackGenerator {
+
+  static final double JITTER_IN_BLOCKS = 0.1;
+  static final double TIME_STEP = 5.0;
+  static final double START_TIME = 1600000000.0;
+
+  private final Random random;
+
+  private int gridSize = 20;
+  private double blockSize = 0.05;
+  private double dropRatio = 0.2;
+  private int edgesPerTrack = 10;
+  private double spacing = 0.002;
+  private double noise = 0.001;
+  private double onlineRatio = 0.8;
+
+  // the roads, built on first use
+  private double[] x;
+  private double[] y;
+  private List<List<Integer>> streets;
+
+  public TrackGenerator(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Sets the roads: gridSize x gridSize intersections blockSize apart, without a dropRatio of
+   * the streets.
+   */
+  public void setRoads(int gridSize, double blockSize, double dropRatio) {
+    this.gridSize = gridSize;
+    this.blockSize = blockSize;
+    this.dropRatio = dropRatio;
+    this.streets = null;
+  }
+
+  /**
+   * Sets the tracks: edgesPerTrack streets long, with a point every spacing, moved by noise and
+   * online with probability onlineRatio.
+   */
+  public void setTracks(int edgesPerTrack, double spacing, double noise, double onlineRatio) {
+    this.edgesPerTrack = edgesPerTrack;
+    this.spacing = spacing;
+    this.noise = noise;
+    this.onlineRatio = onlineRatio;
+  }
+
+  private void buildRoads() {
+    int n = gridSize * gridSize;
+
+    x = new double[n];
+    y = new double[n];
+    streets = new ArrayList<List<Integer>>(n);
+
+    for (int i = 0; i < n; i++) {
+      x[i] = (i % gridSize + (2 * random.nextDouble() - 1) * JITTER_IN_BLOCKS) * blockSize;
+      y[i] = (i / gridSize + (2 * random.nextDouble() - 1) * JITTER_IN_BLOCKS) * blockSize;
+      streets.add(new ArrayList<Integer>(4));
+    }
+
+    for (int i = 0; i < n; i++) {
+      // the street to the east, then the one to the north
+      if (i % gridSize + 1 < gridSize && random.nextDouble() >= dropRatio) {
+        streets.get(i).add(i + 1);
+        streets.get(i + 1).add(i);
+      }
+      if (i + gridSize < n && random.nextDouble() >= dropRatio) {
+        streets.get(i).add(i + gridSize);
+        streets.get(i + gridSize).add(i);
+      }
+    }
+  }
+
+  /**
+   * Returns the road network, with the streets as edges.
+   */
+  public MapGraph roads() {
+    if (streets == null) {
+      buildRoads();
+    }
+
+    MapGraph roads = new MapGraph();
+
+    for (int i = 0; i < x.length; i++) {
+      roads.addVertex(x[i], y[i], 0.0, 1.0, 1.0);
+    }
+    for (int i = 0; i < x.length; i++) {
+      for (int j : streets.get(i)) {
+        roads.addElementAdjList(i, j);
+      }
+    }
+    return roads;
+  }
+
+  /**
+   * Drives a random walk on the roads and returns its sampled points, as a GPS writes them.
+   */
+  public List<Vertex> drive() {
+    if (streets == null) {
+      buildRoads();
+    }
+
+    int current;
+
+    do {
+      current = random.nextInt(x.length);
+    } while (streets.get(current).isEmpty());
+
+    List<Vertex> points = new ArrayList<Vertex>();
+    int previous = -1;
+    double timestamp = START_TIME;
+    double offset = 0; // distance along the current street of the next point
+
+    for (int k = 0; k < edgesPerTrack; k++) {
+      List<Integer> next = streets.get(current);
+      int choice = next.get(random.nextInt(next.size()));
+
+      // a dead end is the only place to turn back
+      while (choice == previous && next.size() > 1) {
+        choice = next.get(random.nextInt(next.size()));
+      }
+
+      double dx = x[choice] - x[current];
+      double dy = y[choice] - y[current];
+      double length = Math.sqrt(dx * dx + dy * dy);
+
+      for (; offset < length; offset += spacing) {
+        Vertex point = new Vertex(x[current] + dx * offset / length + random.nextGaussian()
+            * noise, y[current] + dy * offset / length + random.nextGaussian() * noise, 0.0,
+            timestamp);
+        point.addEntry(random.nextDouble() < onlineRatio ? 1.0 : 0.0);
+
+        points.add(point);
+        timestamp += TIME_STEP;
+      }
+
+      offset -= length;
+      previous = current;
+      current = choice;
+    }
+    return points;
+  }
+
+  /**
+   * Drives a track, read as PoseFile.readFile() reads a track file.
+   */
+  public PoseFile track(String name) {
+    PoseFile track = new PoseFile();
+    track.fileName = name;
+
+    for (Vertex point : drive()) {
+      track.addPoint(point);
+    }
+
+    track.expandBoundingBox();
+    return track;
+  }
+
+  /**
+   * Drives count tracks.
+   */
+  public List<PoseFile> tracks(int count) {
+    List<PoseFile> tracks = new ArrayList<PoseFile>(count);
+
+    for (int i = 0; i < count; i++) {
+      tracks.add(track(String.format("track_%06d.txt", i)));
+    }
+    return tracks;
+  }
+
+  /**
+   * Writes points into file in the "x y timestamp online" format read by PoseFile.readFile().
+   */
+  public static void writeTrack(List<Vertex> points, File file) throws IOException {
+    BufferedWriter out = new BufferedWriter(new FileWriter(file));
+
+    try {
+      for (Vertex point : points) {
+        out.write(point.getX() + " " + point.getY() + " " + point.getTimestamp() + " "
+            + (point.getOnlineSum() > 0) + "\n");
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  public static void main(String args[]) throws IOException {
+    if (args.length < 2) {
+      System.err.println("usage: TrackGenerator outputPath tracks [tracksPerSet] [seed]"
+          + " [spacing] [noise] [onlineRatio]");
+      System.exit(1);
+    }
+
+    // path to the folder where roads/ and tracks/ will be written.
+    File outputPath = new File(args[0]);
+
+    int count = Integer.parseInt(args[1]);
+
+    // number of tracks per trackset folder
+    int tracksPerSet = args.length > 2 ? Integer.parseInt(args[2]) : count;
+
+    TrackGenerator generator = new TrackGenerator(args.length > 3 ? Long.parseLong(args[3]) : 1);
+
+    if (args.length > 4) {
+      generator.setTracks(generator.edgesPerTrack, Double.parseDouble(args[4]),
+          args.length > 5 ? Double.parseDouble(args[5]) : generator.noise,
+          args.length > 6 ? Double.parseDouble(args[6]) : generator.onlineRatio);
+    }
+
+    File roadsPath = new File(outputPath, "roads");
+    roadsPath.mkdirs();
+    GraphFile.writeMap(generator.roads(), roadsPath);
+
+    for (int i = 0; i < count; i++) {
+      File trackset = new File(outputPath, "tracks/" + (i / Math.max(1, tracksPerSet)));
+      trackset.mkdirs();
+
+      writeTrack(generator.drive(), new File(trackset, String.format("track_%06d.txt", i)));
+    }
+
+    System.out.println("Generated " + count + " tracks on " + generator.x.length
+        + " intersections in " + outputPath);
+  }
+}
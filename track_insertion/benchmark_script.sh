@@ -0,0 +1,16 @@
+#To Compile:
+CODE_PATH="track_insertion/" #path to the MapConstruction folder.
+cd $CODE_PATH
+make -s bench
+
+if [ $? -ne 0 ] ; then
+  exit 1
+fi
+
+#To Run:
+ROADS_PATH="../data/roads/" #path to the folder of the roads the benchmark tracks are made from
+EPS=0.01 #epsilon
+MAP_PATH="-" #path to the folder of a map to insert the tracks into, "-" to construct one from the roads
+BENCHMARKS="" #names of the benchmarks to run, all of them if empty
+
+java -cp bin/:bin/bench/ mapconstruction2.Benchmarks $ROADS_PATH $EPS $MAP_PATH $BENCHMARKS
@@ -0,0 +1,20 @@
+#To Compile:
+CODE_PATH="track_insertion/" #path to the MapConstruction folder.
+cd $CODE_PATH
+make -s
+
+if [ $? -ne 0 ] ; then
+  exit 1
+fi
+
+#To Run:
+DATASET_PATH="../data/sorted_dataset.csv" #path to the dataset sorted by id_object and date
+OUTPUT_PATH="../data/final/" #path to the folder where output will be written
+EPS=0.01 #epsilon
+ALT_EPS=4.0 #minimum altitude difference between two streets
+THREADS=$(nproc) #number of tracksets rebuilt at the same time
+TRACKSET_POINTS=100000 #number of points after which a trackset ends
+
+mkdir -p $OUTPUT_PATH
+
+java -Djava.util.logging.config.file=src/logging.properties -cp bin/ mapconstruction2.DatasetRebuild $DATASET_PATH $OUTPUT_PATH $EPS $ALT_EPS $THREADS $TRACKSET_POINTS
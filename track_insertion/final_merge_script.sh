@@ -1,3 +1,9 @@
+if [ $# -eq 0 ] ; then
+  echo "Pass output index"
+
+  exit 1
+fi
+
 #To Compile:
 CODE_PATH="track_insertion/" #path to the MapConstruction folder.
 cd $CODE_PATH
@@ -8,7 +14,7 @@ if [ $? -ne 0 ] ; then
 fi
 
 #To Run:
-INPUT_PATH="../data/merged/" #path to the folder that constains all input tracks
+INPUT_PATH="../data/rebuilt/$1/" #path to the folder that contains one partial map per trackset, written by rebuild_map.sh with the same output index
 OUTPUT_PATH="../data/final/" #path to the folder where output will be written
 EPS=0.01 #epsilon
 HAS_ALTITUDE=false #if input file has altitude information
@@ -16,4 +22,4 @@ ALT_EPS=4.0 #minimum altitude difference between two streets
 
 mkdir -p $OUTPUT_PATH
 
-java -Djava.util.logging.config.file=src/logging.properties -cp bin/ mapconstruction2.MapMerging $INPUT_PATH $OUTPUT_PATH $EPS $HAS_ALTITUDE $ALT_EPS
+java -Djava.util.logging.config.file=src/logging.properties -cp bin/ mapconstruction2.MergeTree $INPUT_PATH $OUTPUT_PATH $EPS $HAS_ALTITUDE $ALT_EPS
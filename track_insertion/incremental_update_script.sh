@@ -0,0 +1,23 @@
+#To Compile:
+CODE_PATH="track_insertion/" #path to the MapConstruction folder.
+cd $CODE_PATH
+make -s
+
+if [ $? -ne 0 ] ; then
+  exit 1
+fi
+
+#To Run:
+MAP_PATH="../data/final/" #path to the folder of the map to update, written by a full rebuild or an earlier update
+INPUT_PATH="../data/tracks/" #path to the folder that constains one folder of tracks per trackset
+OUTPUT_PATH="../data/final/" #path to the folder where the updated map will be written
+EPS=0.01 #epsilon
+HAS_ALTITUDE=false #if input file has altitude information
+ALT_EPS=4.0 #minimum altitude difference between two streets
+THREADS=$(nproc) #number of threads computing the white intervals of the edges
+SIMPLIFY_IN_EPS=0 #tolerance of the track simplification as a multiple of EPS and ALT_EPS, 0 not to simplify
+BUNDLE=false #if tracks within EPS of each other are inserted once, with the entries of all of them
+
+mkdir -p $OUTPUT_PATH
+
+java -Djava.util.logging.config.file=src/logging.properties -cp bin/ mapconstruction2.IncrementalUpdate $MAP_PATH $INPUT_PATH $OUTPUT_PATH $EPS $HAS_ALTITUDE $ALT_EPS $THREADS $SIMPLIFY_IN_EPS $BUNDLE
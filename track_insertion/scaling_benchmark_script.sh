@@ -0,0 +1,16 @@
+#To Compile:
+CODE_PATH="track_insertion/" #path to the MapConstruction folder.
+cd $CODE_PATH
+make -s bench
+
+if [ $? -ne 0 ] ; then
+  exit 1
+fi
+
+#To Run:
+EPS=0.01 #epsilon
+TRACK_COUNTS="100,200,400,800" #numbers of generated tracks to construct the map from
+THREAD_COUNTS="1,$(nproc)" #numbers of threads to construct the map with
+SEED=1 #seed of the generated roads and tracks
+
+java -cp bin/:bin/bench/ mapconstruction2.ScalingBenchmark $EPS $TRACK_COUNTS $THREAD_COUNTS $SEED
@@ -19,7 +19,14 @@ OUTPUT_PATH="../data/rebuilt/$2/$1/" #path to the folder where output will be wr
 EPS=0.01 #epsilon
 HAS_ALTITUDE=false #if input file has altitude information
 ALT_EPS=4.0 #minimum altitude difference between two streets
+THREADS=$(nproc) #number of threads computing the white intervals of the edges
+CHECKPOINT_PATH="" #path to the folder where the map is saved every few tracks, e.g. "../data/checkpoints/$2/$1/"; empty not to save it
+RESUME=false #if the run starts from the map saved in CHECKPOINT_PATH by a run that was killed
+SKIP_FAILING_TRACKS=false #if tracks that fail are skipped and logged instead of ending the run
+METRICS_PATH="" #path to the file of the counters of every track, .csv or .jsonl, e.g. "$OUTPUT_PATH/track_metrics.csv"; empty not to write it
+SIMPLIFY_IN_EPS=0 #tolerance of the track simplification as a multiple of EPS and ALT_EPS, 0 not to simplify
+BUNDLE=false #if tracks within EPS of each other are inserted once, with the entries of all of them
 
 mkdir -p $OUTPUT_PATH
 
-java -Djava.util.logging.config.file=src/logging.properties -cp bin/ mapconstruction2.MapConstruction $INPUT_PATH $OUTPUT_PATH $EPS $HAS_ALTITUDE $ALT_EPS
+java -Djava.util.logging.config.file=src/logging.properties -cp bin/ mapconstruction2.MapConstruction $INPUT_PATH $OUTPUT_PATH $EPS $HAS_ALTITUDE $ALT_EPS $THREADS ${CHECKPOINT_PATH:--} $RESUME $SKIP_FAILING_TRACKS ${METRICS_PATH:--} $SIMPLIFY_IN_EPS $BUNDLE
@@ -0,0 +1,247 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: Checkpoint.java
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Saves the state of a MapConstruction run into a folder, so that the run can resume after it
+ * was killed, and so that a track that failed can be skipped by going back to the last saved
+ * state.
+ *
+ * The folder holds the map as a graph file (see GraphFile.java), with all the entries of its
+ * vertices, named after the number of tracks inserted into it, and STATE_NAME, which holds in
+ * this order one value per line: the name of the graph file, the index of the next track to
+ * insert, the number of tracks of the run and the indices of the skipped tracks. The state is
+ * replaced only once the new graph file is complete, so a run killed while saving resumes from
+ * the state before.
+ *
+ * The vertex registry and the spatial index of the edges are not saved, they are rebuilt from
+ * the map when it is loaded.
+ */
+public class Checkpoint {
+
+  public static final String STATE_NAME = "checkpoint.txt";
+
+  // default number of tracks and milliseconds between two saves, whichever comes first
+  public static final int EVERY_TRACKS = 100;
+  public static final long EVERY_MILLIS = 10 * 60 * 1000;
+
+  private final File folder;
+
+  private int everyTracks = EVERY_TRACKS;
+  private long everyMillis = EVERY_MILLIS;
+
+  private int savedTrack = 0;
+  private long savedTime = System.currentTimeMillis();
+
+  private final Set<Integer> skipped = new TreeSet<Integer>();
+
+  public Checkpoint(File folder) {
+    this.folder = folder;
+  }
+
+  /**
+   * Saves after everyTracks tracks or everyMillis milliseconds since the last save, whichever
+   * comes first.
+   */
+  public void setInterval(int everyTracks, long everyMillis) {
+    this.everyTracks = Math.max(1, everyTracks);
+    this.everyMillis = everyMillis;
+  }
+
+  public File getFolder() {
+    return folder;
+  }
+
+  /**
+   * Checks if a state was saved in the folder.
+   */
+  public boolean exists() {
+    return new File(folder, STATE_NAME).isFile();
+  }
+
+  /**
+   * Checks if the state should be saved before inserting track nextTrack.
+   */
+  public boolean isDue(int nextTrack) {
+    return nextTrack - savedTrack >= everyTracks
+        || System.currentTimeMillis() - savedTime >= everyMillis;
+  }
+
+  /**
+   * Returns the indices of the skipped tracks, saved ones included.
+   */
+  public Set<Integer> getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * Marks track as skipped, in this run and in the next saves.
+   */
+  public void skip(int track) {
+    skipped.add(track);
+  }
+
+  private static String graphName(int nextTrack) {
+    return "checkpoint-" + nextTrack + ".bin";
+  }
+
+  private static void replace(File temporary, File file) throws IOException {
+    if (!temporary.renameTo(file)) {
+      file.delete();
+
+      if (!temporary.renameTo(file)) {
+        throw new IOException("can't replace " + file);
+      }
+    }
+  }
+
+  /**
+   * Saves constructedMap as the map before inserting track nextTrack of trackCount tracks.
+   */
+  public void save(MapGraph constructedMap, int nextTrack, int trackCount) throws IOException {
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      throw new IOException("can't create " + folder);
+    }
+
+    State old = exists() ? readState() : null;
+    State state = new State(graphName(nextTrack), nextTrack, trackCount);
+
+    File temporary = new File(folder, state.graph + ".tmp");
+    GraphFile.write(constructedMap, temporary);
+    replace(temporary, new File(folder, state.graph));
+
+    temporary = new File(folder, STATE_NAME + ".tmp");
+    BufferedWriter out = new BufferedWriter(new FileWriter(temporary));
+
+    try {
+      out.write(state.graph + "\n" + state.nextTrack + "\n" + state.trackCount + "\n");
+
+      for (int track : skipped) {
+        out.write(track + "\n");
+      }
+    } finally {
+      out.close();
+    }
+    replace(temporary, new File(folder, STATE_NAME));
+
+    if (old != null && !old.graph.equals(state.graph)) {
+      new File(folder, old.graph).delete();
+    }
+
+    savedTrack = nextTrack;
+    savedTime = System.currentTimeMillis();
+  }
+
+  private static class State {
+    final String graph;
+    final int nextTrack;
+    final int trackCount;
+    final List<Integer> skipped = new ArrayList<Integer>();
+
+    State(String graph, int nextTrack, int trackCount) {
+      this.graph = graph;
+      this.nextTrack = nextTrack;
+      this.trackCount = trackCount;
+    }
+  }
+
+  private State readState() throws IOException {
+    File file = new File(folder, STATE_NAME);
+    BufferedReader in = new BufferedReader(new FileReader(file));
+
+    try {
+      String graph = in.readLine();
+      String nextTrack = in.readLine();
+      String trackCount = in.readLine();
+
+      if (graph == null || nextTrack == null || trackCount == null) {
+        throw new IOException(file + " is truncated");
+      }
+
+      State state = new State(graph, Integer.parseInt(nextTrack), Integer.parseInt(trackCount));
+      String str;
+
+      while ((str = in.readLine()) != null) {
+        if (!str.isEmpty()) {
+          state.skipped.add(Integer.parseInt(str));
+        }
+      }
+      return state;
+    } catch (NumberFormatException e) {
+      throw new IOException(file + " is corrupt", e);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Loads the saved map into the empty constructedMap and registers its vertices in map.
+   *
+   * @param trackCount the number of tracks of the run, which must be the saved one
+   * @return the index of the next track to insert
+   */
+  public int load(MapGraph constructedMap, VertexRegistry map, int trackCount)
+      throws IOException {
+    State state = readState();
+
+    if (state.trackCount != trackCount) {
+      throw new IOException(folder + " was saved for " + state.trackCount + " tracks, not "
+          + trackCount);
+    }
+
+    GraphFile.readWithEntries(constructedMap, map, new File(folder, state.graph));
+    skipped.addAll(state.skipped);
+
+    savedTrack = state.nextTrack;
+    savedTime = System.currentTimeMillis();
+    return state.nextTrack;
+  }
+
+  /**
+   * Deletes the saved state, once the run it belongs to is complete.
+   */
+  public void delete() throws IOException {
+    if (exists()) {
+      State state = readState();
+
+      new File(folder, STATE_NAME).delete();
+      new File(folder, state.graph).delete();
+    }
+  }
+}
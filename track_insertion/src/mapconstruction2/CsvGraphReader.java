@@ -0,0 +1,550 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: CsvGraphReader.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads vertices.txt and edges.txt of a map folder. Both files are mapped into memory and split
+ * into chunks at line boundaries, and the chunks are parsed in parallel, in place, without
+ * building strings. Fields are separated by commas or white space, as for a Scanner with the
+ * "[\\s,]" delimiter.
+ *
+ * Numbers with at most 19 significant digits are computed from their digits, with a single
+ * rounding when the digits and the power of ten are exact doubles and by the Eisel-Lemire
+ * algorithm otherwise, which gives the same double as Double.parseDouble(). Numbers it can't
+ * decide, "NaN" and "Infinity" included, are passed to Double.parseDouble().
+ *
+ * The edges may come in any order. The neighbours of a vertex are added in the order of their
+ * lines in edges.txt.
+ */
+public class CsvGraphReader {
+
+  /**
+   * Smallest number of bytes parsed as a chunk.
+   */
+  public static final int MIN_CHUNK_SIZE = 1 << 20;
+
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+      1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  private final int parallelism;
+
+  /**
+   * @param parallelism the number of threads parsing chunks
+   */
+  public CsvGraphReader(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /**
+   * The fields of the lines of one chunk, in the order of the lines.
+   */
+  private static class Chunk {
+    final int fields;
+    long[] ids = new long[1024]; // the first field of each line
+    double[] values; // the other fields, fields - 1 per line
+    int lines;
+
+    Chunk(int fields) {
+      this.fields = fields;
+      this.values = new double[1024 * (fields - 1)];
+    }
+
+    void add(long id, double[] line) {
+      if (lines == ids.length) {
+        ids = Arrays.copyOf(ids, lines * 2);
+        values = Arrays.copyOf(values, lines * 2 * (fields - 1));
+      }
+      ids[lines] = id;
+      System.arraycopy(line, 0, values, lines * (fields - 1), fields - 1);
+      lines++;
+    }
+  }
+
+  private static boolean isDelimiter(byte b) {
+    return b == ',' || b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0b;
+  }
+
+  // the first 128 bits of 10^e for MIN_EXPONENT <= e <= MAX_EXPONENT, rounded down, as
+  // POWERS_OF_FIVE[2 * (e - MIN_EXPONENT)] (high bits) and the next element (low bits)
+  private static final int MIN_EXPONENT = -348;
+  private static final int MAX_EXPONENT = 347;
+  private static final long[] POWERS_OF_FIVE = new long[2 * (MAX_EXPONENT - MIN_EXPONENT + 1)];
+
+  static {
+    BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    for (int e = MIN_EXPONENT; e <= MAX_EXPONENT; e++) {
+      BigInteger power = BigInteger.valueOf(5).pow(Math.abs(e));
+      BigInteger bits;
+
+      if (e >= 0) {
+        int shift = power.bitLength() - 128;
+        bits = (shift > 0) ? power.shiftRight(shift) : power.shiftLeft(-shift);
+      } else {
+        bits = BigInteger.ONE.shiftLeft(127 + power.bitLength()).divide(power);
+      }
+
+      POWERS_OF_FIVE[2 * (e - MIN_EXPONENT)] = bits.shiftRight(64).longValue();
+      POWERS_OF_FIVE[2 * (e - MIN_EXPONENT) + 1] = bits.and(mask).longValue();
+    }
+  }
+
+  private static long unsignedMultiplyHigh(long a, long b) {
+    return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+  }
+
+  /**
+   * Computes mantissa * 10^exponent, with mantissa as an unsigned non-zero integer, by the
+   * Eisel-Lemire algorithm (Lemire, "Number Parsing at a Gigabyte per Second", 2021).
+   *
+   * @return the bits of the double, or -1 if the result can't be decided this way
+   */
+  private static long eiselLemire(long mantissa, int exponent) {
+    if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) {
+      return -1;
+    }
+
+    int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+    long normalized = mantissa << leadingZeros;
+    long exponent2 = ((217706L * exponent) >> 16) + 64 + 1023 - leadingZeros;
+
+    int index = 2 * (exponent - MIN_EXPONENT);
+    long high = unsignedMultiplyHigh(normalized, POWERS_OF_FIVE[index]);
+    long low = normalized * POWERS_OF_FIVE[index];
+
+    // the product may be too low by up to the low bits times mantissa
+    if ((high & 0x1ff) == 0x1ff && Long.compareUnsigned(low + normalized, normalized) < 0) {
+      long nextHigh = unsignedMultiplyHigh(normalized, POWERS_OF_FIVE[index + 1]);
+      long nextLow = normalized * POWERS_OF_FIVE[index + 1];
+      long mergedHigh = high;
+      long mergedLow = low + nextHigh;
+
+      if (Long.compareUnsigned(mergedLow, low) < 0) {
+        mergedHigh++;
+      }
+      if ((mergedHigh & 0x1ff) == 0x1ff && mergedLow == -1
+          && Long.compareUnsigned(nextLow + normalized, normalized) < 0) {
+        return -1;
+      }
+      high = mergedHigh;
+      low = mergedLow;
+    }
+
+    long top = high >>> 63;
+    long bits = high >>> (top + 9);
+    exponent2 -= 1 ^ top;
+
+    // exactly half way between two doubles
+    if (low == 0 && (high & 0x1ff) == 0 && (bits & 3) == 1) {
+      return -1;
+    }
+
+    bits += bits & 1;
+    bits >>>= 1;
+    if ((bits >>> 53) > 0) {
+      bits >>>= 1;
+      exponent2++;
+    }
+
+    // subnormal, infinite or NaN
+    if (exponent2 - 1 < 0 || exponent2 - 1 >= 0x7ff - 1) {
+      return -1;
+    }
+    return (exponent2 << 52) | (bits & 0x000fffffffffffffL);
+  }
+
+  /**
+   * Parses the number from start to end, both byte offsets in buffer.
+   */
+  static double parseDouble(ByteBuffer buffer, int start, int end) {
+    int i = start;
+    boolean negative = false;
+
+    if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+      negative = (buffer.get(i) == '-');
+      i++;
+    }
+
+    long mantissa = 0; // unsigned
+    int digits = 0; // significant digits in mantissa
+    int exponent = 0;
+    boolean any = false;
+
+    for (; i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++) {
+      any = true;
+      if (mantissa != 0 || buffer.get(i) != '0') {
+        digits++;
+        mantissa = mantissa * 10 + (buffer.get(i) - '0');
+      }
+    }
+    if (i < end && buffer.get(i) == '.') {
+      for (i++; i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++) {
+        any = true;
+        exponent--;
+        if (mantissa != 0 || buffer.get(i) != '0') {
+          digits++;
+          mantissa = mantissa * 10 + (buffer.get(i) - '0');
+        }
+      }
+    }
+    if (any && i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+      int j = i + 1;
+      boolean negativeExponent = false;
+
+      if (j < end && (buffer.get(j) == '-' || buffer.get(j) == '+')) {
+        negativeExponent = (buffer.get(j) == '-');
+        j++;
+      }
+
+      int value = 0;
+      int start10 = j;
+
+      for (; j < end && buffer.get(j) >= '0' && buffer.get(j) <= '9' && value < 100000; j++) {
+        value = value * 10 + (buffer.get(j) - '0');
+      }
+      if (j > start10) {
+        exponent += negativeExponent ? -value : value;
+        i = j;
+      }
+    }
+
+    if (any && i == end && digits <= 19) {
+      if (mantissa == 0) {
+        return negative ? -0.0 : 0.0;
+      }
+
+      // exact mantissa and power of ten: a single rounding
+      if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+        double value = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent]
+            : mantissa / POWERS_OF_TEN[-exponent];
+
+        return negative ? -value : value;
+      }
+
+      long bits = eiselLemire(mantissa, exponent);
+
+      if (bits != -1) {
+        double value = Double.longBitsToDouble(bits);
+
+        return negative ? -value : value;
+      }
+    }
+
+    byte[] text = new byte[end - start];
+
+    for (int k = 0; k < text.length; k++) {
+      text[k] = buffer.get(start + k);
+    }
+    return Double.parseDouble(new String(text, StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * Parses the integer from start to end, both byte offsets in buffer.
+   */
+  static long parseLong(ByteBuffer buffer, int start, int end) {
+    int i = start;
+    boolean negative = false;
+
+    if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+      negative = (buffer.get(i) == '-');
+      i++;
+    }
+    if (i == end || end - i > 18) {
+      return parseLongSlow(buffer, start, end);
+    }
+
+    long value = 0;
+
+    for (; i < end; i++) {
+      byte b = buffer.get(i);
+
+      if (b < '0' || b > '9') {
+        return parseLongSlow(buffer, start, end);
+      }
+      value = value * 10 + (b - '0');
+    }
+    return negative ? -value : value;
+  }
+
+  private static long parseLongSlow(ByteBuffer buffer, int start, int end) {
+    byte[] text = new byte[end - start];
+
+    for (int k = 0; k < text.length; k++) {
+      text[k] = buffer.get(start + k);
+    }
+    return Long.parseLong(new String(text, StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * Parses the lines from start to end, each with fields fields, the first one an integer.
+   */
+  private static Chunk parseChunk(ByteBuffer buffer, int start, int end, int fields, File file) {
+    Chunk chunk = new Chunk(fields);
+    double[] line = new double[fields - 1];
+    int i = start;
+
+    while (i < end) {
+      int lineStart = i;
+      int field = 0;
+      long id = 0;
+
+      while (i < end && buffer.get(i) != '\n') {
+        if (isDelimiter(buffer.get(i))) {
+          i++;
+          continue;
+        }
+
+        int tokenStart = i;
+
+        while (i < end && buffer.get(i) != '\n' && !isDelimiter(buffer.get(i))) {
+          i++;
+        }
+
+        if (field >= fields) {
+          throw new IllegalArgumentException(file + ": too many fields at byte " + lineStart);
+        }
+        try {
+          if (field == 0) {
+            id = parseLong(buffer, tokenStart, i);
+          } else if (fields == 3) {
+            line[field - 1] = parseLong(buffer, tokenStart, i);
+          } else {
+            line[field - 1] = parseDouble(buffer, tokenStart, i);
+          }
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException(file + ": bad number at byte " + tokenStart, e);
+        }
+        field++;
+      }
+      i++;
+
+      if (field == 0) {
+        continue; // empty line
+      }
+      if (field != fields) {
+        throw new IllegalArgumentException(file + ": missing fields at byte " + lineStart);
+      }
+      chunk.add(id, line);
+    }
+    return chunk;
+  }
+
+  /**
+   * Maps file and parses its lines in parallel, in chunks of at least MIN_CHUNK_SIZE bytes.
+   *
+   * @return the chunks, in file order
+   */
+  private List<Chunk> parseFile(final File file, final int fields) throws IOException {
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+
+    try {
+      long length = in.getChannel().size();
+
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException(file + " is too large: " + length + " bytes");
+      }
+
+      final ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+      int size = (int) length;
+      int chunks = (int) Math.max(1, Math.min(4L * parallelism, length / MIN_CHUNK_SIZE));
+
+      // chunk k starts after the first new line at or after k * size / chunks
+      final int[] bounds = new int[chunks + 1];
+
+      for (int k = 1; k < chunks; k++) {
+        int bound = Math.max(bounds[k - 1], (int) ((long) k * size / chunks));
+
+        while (bound < size && bound > 0 && buffer.get(bound - 1) != '\n') {
+          bound++;
+        }
+        bounds[k] = bound;
+      }
+      bounds[chunks] = size;
+
+      if (chunks == 1) {
+        List<Chunk> result = new ArrayList<Chunk>();
+        result.add(parseChunk(buffer, 0, size, fields, file));
+        return result;
+      }
+
+      List<Callable<Chunk>> tasks = new ArrayList<Callable<Chunk>>();
+
+      for (int k = 0; k < chunks; k++) {
+        final int start = bounds[k];
+        final int end = bounds[k + 1];
+
+        tasks.add(new Callable<Chunk>() {
+          @Override
+          public Chunk call() {
+            return parseChunk(buffer, start, end, fields, file);
+          }
+        });
+      }
+
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, chunks));
+
+      try {
+        List<Chunk> result = new ArrayList<Chunk>();
+
+        for (Future<Chunk> future : pool.invokeAll(tasks)) {
+          result.add(future.get());
+        }
+        return result;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        throw (e.getCause() instanceof IllegalArgumentException)
+            ? new IOException(e.getCause().getMessage(), e.getCause())
+            : new IOException(e.getCause());
+      } finally {
+        pool.shutdown();
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads vertices.txt and edges.txt in folder into constructedMap. Every vertex gets its online
+   * average as a single entry and is registered in map.
+   */
+  public void read(MapGraph constructedMap, VertexRegistry map, File folder) throws IOException {
+    File vertexFile = new File(folder, "vertices.txt");
+    File edgeFile = new File(folder, "edges.txt");
+
+    List<Chunk> vertexChunks = parseFile(vertexFile, 5);
+    List<Chunk> edgeChunks = parseFile(edgeFile, 3);
+
+    int base = constructedMap.size();
+    int n = 0;
+    boolean sequential = true; // if vertex ids are their line numbers
+
+    for (Chunk chunk : vertexChunks) {
+      for (int i = 0; i < chunk.lines; i++) {
+        sequential &= (chunk.ids[i] == n);
+
+        double[] values = chunk.values;
+        Vertex vertex = new Vertex(values[4 * i], values[4 * i + 1], values[4 * i + 2]);
+
+        vertex.addEntry(values[4 * i + 3]);
+
+        int index = constructedMap.addVertex(vertex);
+
+        map.put(vertex, index);
+        n++;
+      }
+    }
+
+    Map<Long, Integer> indices = null;
+
+    if (!sequential) {
+      indices = new HashMap<Long, Integer>();
+      int line = 0;
+
+      for (Chunk chunk : vertexChunks) {
+        for (int i = 0; i < chunk.lines; i++) {
+          indices.put(chunk.ids[i], line++);
+        }
+      }
+    }
+
+    // group the edges by their first vertex, keeping the order of the file
+    int edges = 0;
+
+    for (Chunk chunk : edgeChunks) {
+      edges += chunk.lines;
+    }
+
+    int[] from = new int[edges];
+    int[] to = new int[edges];
+    int[] offsets = new int[n + 1];
+    int e = 0;
+
+    for (Chunk chunk : edgeChunks) {
+      for (int i = 0; i < chunk.lines; i++, e++) {
+        from[e] = vertexIndex(indices, (long) chunk.values[2 * i], n, edgeFile);
+        to[e] = vertexIndex(indices, (long) chunk.values[2 * i + 1], n, edgeFile);
+        offsets[from[e] + 1]++;
+      }
+    }
+    for (int v = 0; v < n; v++) {
+      offsets[v + 1] += offsets[v];
+    }
+
+    int[] adjacency = new int[edges];
+    int[] next = Arrays.copyOf(offsets, n);
+
+    for (e = 0; e < edges; e++) {
+      adjacency[next[from[e]]++] = to[e];
+    }
+
+    for (int v = 0; v < n; v++) {
+      for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+        constructedMap.addElementAdjList(base + v, base + adjacency[k]);
+      }
+    }
+  }
+
+  private static int vertexIndex(Map<Long, Integer> indices, long id, int n, File file)
+      throws IOException {
+    if (indices == null) {
+      if (id >= 0 && id < n) {
+        return (int) id;
+      }
+    } else {
+      Integer index = indices.get(id);
+
+      if (index != null) {
+        return index;
+      }
+    }
+    throw new IOException(file + ": unknown vertex " + id);
+  }
+}
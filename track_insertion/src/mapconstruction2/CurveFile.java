@@ -0,0 +1,116 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Author: Mahmuda Ahmed Filename: CurveFile.java
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * An object that represents a track.
+ *
+ */
+class CurveFile {
+  String fileName;
+  ArrayList<Vertex> curve;
+  double minX;
+  double minY;
+  double maxX;
+  double maxY;
+  SegmentIndex segmentIndex; // built on first use
+
+  CurveFile() {
+    this.fileName = "";
+    this.curve = new ArrayList<Vertex>();
+
+    minX = minY = Double.POSITIVE_INFINITY;
+    maxX = maxY = Double.NEGATIVE_INFINITY;
+  }
+
+  CurveFile(String curveName, ArrayList<Vertex> curve) {
+    this.fileName = curveName;
+    this.curve = curve;
+
+    minX = minY = Double.POSITIVE_INFINITY;
+    maxX = maxY = Double.NEGATIVE_INFINITY;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public ArrayList<Vertex> getPose() {
+    return curve;
+  }
+
+  /**
+   * Returns the segment index of the pose, built on the first call. The pose
+   * must not be changed afterwards.
+   */
+  public SegmentIndex getSegmentIndex() {
+    if (segmentIndex == null) {
+      segmentIndex = new SegmentIndex(curve);
+    }
+    return segmentIndex;
+  }
+
+  public double getLength() {
+    double length = 0;
+    for (int i = 1; i < curve.size(); i++) {
+      length = length + curve.get(i - 1).dist(curve.get(i));
+    }
+    return length;
+  }
+
+  public boolean enclosesVertex(Vertex v) {
+    return (v.getX() >= minX) && (v.getX() <= maxX) && (v.getY() >= minY) && (v.getY() <= maxY);
+  }
+
+  public static CurveFile readTrack(List<Vertex> track) {
+    CurveFile poseFile = new CurveFile();
+    poseFile.fileName = "";
+
+    for (int i = 0; i < track.size(); i++) {
+      Vertex point = track.get(i);
+
+      poseFile.curve.add(point);
+
+      poseFile.minX = Math.min(poseFile.minX, point.getX());
+      poseFile.minY = Math.min(poseFile.minY, point.getY());
+      poseFile.maxX = Math.max(poseFile.maxX, point.getX());
+      poseFile.maxY = Math.max(poseFile.maxY, point.getY());
+    }
+
+    poseFile.minX -= 0.1;
+    poseFile.minY -= 0.1;
+    poseFile.maxX += 0.1;
+    poseFile.maxY += 0.1;
+
+    return poseFile;
+  }
+}
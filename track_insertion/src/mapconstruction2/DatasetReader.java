@@ -0,0 +1,642 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: DatasetReader.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads sorted_dataset.csv and splits it into tracks and tracksets as build_tracksets.py and
+ * export_tracks.py do, without writing them into files.
+ *
+ * The file is mapped into memory in windows of WINDOW_SIZE bytes. Each window is split into
+ * chunks at line boundaries and the chunks are parsed in parallel, then the rows are split into
+ * tracks in file order. A track ends before a point when the object id changes, when more than
+ * MAX_GAP seconds passed or the point is more than MAX_JUMP degrees away from the last one, and
+ * when the point falls into the bounding box of the track so far; in the last case the next
+ * track starts with the last point. A trackset is handed over to the Handler when it has
+ * tracksetPoints points or more and the next track starts. Tracks of less than two points are
+ * left out, and the points of a track go through PoseFile.addPoint() as the lines of a track
+ * file do.
+ *
+ * The first line names the columns; id_object, latitude, longitude, online and date are used.
+ * Fields may be quoted but can't hold line breaks. Dates are ISO 8601, in the local time zone
+ * (the TZ environment variable) unless they have an offset, as in Python.
+ */
+public class DatasetReader {
+
+  /**
+   * Handles the tracksets of the dataset, in order, on the reading thread.
+   */
+  public interface Handler {
+    void trackset(int index, List<PoseFile> tracks);
+  }
+
+  public static final int TRACKSET_POINTS = 100000;
+
+  public static final double MAX_GAP = 600;
+  public static final double MAX_JUMP = 0.2;
+
+  public static final int WINDOW_SIZE = 64 << 20;
+
+  private static final String LINE_FLUSH = "\r\033[K";
+
+  private static final String[] COLUMNS = { "id_object", "latitude", "longitude", "online",
+      "date" };
+
+  // the time zone of the dates without an offset
+  private static final ZoneId LOCAL_ZONE = ZoneId.systemDefault();
+
+  private final int parallelism;
+
+  private int tracksetPoints = TRACKSET_POINTS;
+
+  // if read prints its progress on the console
+  private boolean showProgress = true;
+
+  /**
+   * @param parallelism the number of threads parsing chunks
+   */
+  public DatasetReader(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  public void setTracksetPoints(int tracksetPoints) {
+    this.tracksetPoints = tracksetPoints;
+  }
+
+  public void setShowProgress(boolean showProgress) {
+    this.showProgress = showProgress;
+  }
+
+  /**
+   * The rows of one chunk, in file order.
+   */
+  private static class Rows {
+    int count;
+    double[] latitude = new double[1024];
+    double[] longitude = new double[1024];
+    double[] time = new double[1024]; // seconds since the epoch
+    boolean[] online = new boolean[1024];
+    boolean[] sameId = new boolean[1024]; // if the id is the one of the row before
+    String firstId; // the id of the first and last rows
+    String lastId;
+
+    void add(double lat, double lng, double t, boolean on, boolean same) {
+      if (count == time.length) {
+        latitude = Arrays.copyOf(latitude, 2 * count);
+        longitude = Arrays.copyOf(longitude, 2 * count);
+        time = Arrays.copyOf(time, 2 * count);
+        online = Arrays.copyOf(online, 2 * count);
+        sameId = Arrays.copyOf(sameId, 2 * count);
+      }
+      latitude[count] = lat;
+      longitude[count] = lng;
+      time[count] = t;
+      online[count] = on;
+      sameId[count] = same;
+      count++;
+    }
+  }
+
+  private static String text(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+
+    for (int k = 0; k < bytes.length; k++) {
+      bytes[k] = buffer.get(start + k);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the end of the field starting at start, which is the offset of the comma, new line
+   * or end after it.
+   */
+  private static int fieldEnd(ByteBuffer buffer, int start, int end) {
+    int i = start;
+
+    if (i < end && buffer.get(i) == '"') {
+      for (i++; i < end && buffer.get(i) != '\n'; i++) {
+        if (buffer.get(i) == '"') {
+          if (i + 1 < end && buffer.get(i + 1) == '"') {
+            i++;
+          } else {
+            i++;
+            break;
+          }
+        }
+      }
+    }
+    while (i < end && buffer.get(i) != ',' && buffer.get(i) != '\n') {
+      i++;
+    }
+    return i;
+  }
+
+  private static int digits(ByteBuffer buffer, int start, int count, int end) {
+    if (start + count > end) {
+      throw new IllegalArgumentException();
+    }
+
+    int value = 0;
+
+    for (int i = start; i < start + count; i++) {
+      byte b = buffer.get(i);
+
+      if (b < '0' || b > '9') {
+        throw new IllegalArgumentException();
+      }
+      value = value * 10 + (b - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Parses an ISO 8601 date from start to end, as "yyyy-mm-dd", optionally followed by
+   * "Thh:mm[:ss[.ffffff]]" (or with a space for the "T") and "Z" or an offset "+hh[:mm]".
+   *
+   * A date without "Z" or an offset is in LOCAL_ZONE, as naive datetimes are for Python: a
+   * time repeated when the clocks go back is the first one, a time skipped when they go forward
+   * is taken with the offset before the change.
+   *
+   * @return the seconds since the epoch, computed as datetime.timestamp() does
+   */
+  static double parseTimestamp(ByteBuffer buffer, int start, int end) {
+    int year = digits(buffer, start, 4, end);
+    int i = start + 4;
+
+    if (i >= end || buffer.get(i) != '-') {
+      throw new IllegalArgumentException();
+    }
+
+    int month = digits(buffer, i + 1, 2, end);
+
+    if (i + 3 >= end || buffer.get(i + 3) != '-') {
+      throw new IllegalArgumentException();
+    }
+
+    int day = digits(buffer, i + 4, 2, end);
+    i += 6;
+
+    long seconds = 0;
+    long micros = 0;
+
+    if (i < end && (buffer.get(i) == 'T' || buffer.get(i) == ' ')) {
+      seconds = 3600L * digits(buffer, i + 1, 2, end);
+
+      if (i + 3 >= end || buffer.get(i + 3) != ':') {
+        throw new IllegalArgumentException();
+      }
+      seconds += 60L * digits(buffer, i + 4, 2, end);
+      i += 6;
+
+      if (i < end && buffer.get(i) == ':') {
+        seconds += digits(buffer, i + 1, 2, end);
+        i += 3;
+
+        if (i < end && buffer.get(i) == '.') {
+          int scale = 100000;
+
+          for (i++; i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++) {
+            micros += scale * (buffer.get(i) - '0');
+            scale /= 10;
+          }
+        }
+      }
+    }
+
+    boolean local = false;
+
+    if (i < end && buffer.get(i) == 'Z') {
+      i++;
+    } else if (i < end && (buffer.get(i) == '+' || buffer.get(i) == '-')) {
+      int sign = (buffer.get(i) == '-') ? -1 : 1;
+      long offset = 3600L * digits(buffer, i + 1, 2, end);
+      i += 3;
+
+      if (i < end && buffer.get(i) == ':') {
+        i++;
+      }
+      if (i < end) {
+        offset += 60L * digits(buffer, i, 2, end);
+        i += 2;
+      }
+      seconds -= sign * offset;
+    } else {
+      local = true;
+    }
+
+    if (i != end || month < 1 || month > 12 || day < 1 || day > 31) {
+      throw new IllegalArgumentException();
+    }
+
+    // days since 1970-01-01 of the proleptic Gregorian calendar
+    int y = (month <= 2) ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    long days = era * 146097L + dayOfEra - 719468;
+    long epochSeconds = days * 86400 + seconds;
+
+    if (local) {
+      epochSeconds = LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC)
+          .atZone(LOCAL_ZONE).toEpochSecond();
+    }
+    return (epochSeconds * 1000000 + micros) / 1e6;
+  }
+
+  private static double parseNumber(ByteBuffer buffer, int start, int end) {
+    if (end - start >= 2 && buffer.get(start) == '"' && buffer.get(end - 1) == '"') {
+      start++;
+      end--;
+    }
+    return CsvGraphReader.parseDouble(buffer, start, end);
+  }
+
+  /**
+   * Parses the rows from start to end, with the columns at columns[] in the order of COLUMNS.
+   */
+  private static Rows parseChunk(ByteBuffer buffer, int start, int end, int[] columns,
+      int fields, long position) {
+    Rows rows = new Rows();
+    int[] starts = new int[fields];
+    int[] ends = new int[fields];
+    int lastIdStart = -1;
+    int lastIdEnd = -1;
+    int i = start;
+
+    while (i < end) {
+      int lineStart = i;
+      int lineEnd = i;
+
+      while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+        lineEnd++;
+      }
+
+      int contentEnd = lineEnd;
+
+      if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+        contentEnd--;
+      }
+      i = lineEnd + 1;
+
+      if (contentEnd == lineStart) {
+        continue; // empty line
+      }
+
+      int field = 0;
+
+      for (int j = lineStart; field < fields; field++) {
+        starts[field] = j;
+        ends[field] = fieldEnd(buffer, j, contentEnd);
+        j = ends[field] + 1;
+
+        if (ends[field] >= contentEnd) {
+          field++;
+          break;
+        }
+      }
+      if (field < fields) {
+        throw new IllegalArgumentException("missing fields at byte " + (position + lineStart));
+      }
+
+      int idStart = starts[columns[0]];
+      int idEnd = ends[columns[0]];
+      boolean sameId = false;
+
+      if (lastIdStart >= 0 && idEnd - idStart == lastIdEnd - lastIdStart) {
+        sameId = true;
+
+        for (int k = 0; k < idEnd - idStart && sameId; k++) {
+          sameId = buffer.get(idStart + k) == buffer.get(lastIdStart + k);
+        }
+      }
+
+      try {
+        int onlineStart = starts[columns[3]];
+        int onlineEnd = ends[columns[3]];
+
+        if (onlineEnd - onlineStart == 3 && buffer.get(onlineStart) == '"') {
+          onlineStart++;
+          onlineEnd--;
+        }
+
+        int dateStart = starts[columns[4]];
+        int dateEnd = ends[columns[4]];
+
+        if (dateEnd - dateStart >= 2 && buffer.get(dateStart) == '"') {
+          dateStart++;
+          dateEnd--;
+        }
+
+        rows.add(parseNumber(buffer, starts[columns[1]], ends[columns[1]]),
+            parseNumber(buffer, starts[columns[2]], ends[columns[2]]),
+            parseTimestamp(buffer, dateStart, dateEnd),
+            onlineEnd - onlineStart == 1 && buffer.get(onlineStart) == '1', sameId);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("bad value at byte " + (position + lineStart), e);
+      }
+
+      if (rows.count == 1) {
+        rows.firstId = text(buffer, idStart, idEnd);
+      }
+      lastIdStart = idStart;
+      lastIdEnd = idEnd;
+    }
+
+    if (rows.count > 0) {
+      rows.lastId = text(buffer, lastIdStart, lastIdEnd);
+    }
+    return rows;
+  }
+
+  /**
+   * Splits the rows into tracks and tracksets, as build_tracksets.py does.
+   */
+  private class Segmenter {
+    final Handler handler;
+
+    List<PoseFile> trackset = new ArrayList<PoseFile>();
+    int tracksetIndex = 0;
+    int tracksetPointCount = 0;
+    int trackIndex = 0;
+
+    PoseFile track; // the current track
+    int trackPointCount;
+
+    String lastId;
+    double lastLatitude;
+    double lastLongitude;
+    double lastTime;
+    boolean lastOnline;
+
+    double minLat = Double.POSITIVE_INFINITY;
+    double minLong = Double.POSITIVE_INFINITY;
+    double maxLat = Double.NEGATIVE_INFINITY;
+    double maxLong = Double.NEGATIVE_INFINITY;
+
+    Segmenter(Handler handler) {
+      this.handler = handler;
+    }
+
+    void addPoint(double latitude, double longitude, double time, boolean online) {
+      // track files hold "longitude latitude timestamp online"
+      Vertex point = new Vertex(longitude, latitude, 0.0, time);
+
+      point.addEntry(online ? 1.0 : 0.0);
+      track.addPoint(point);
+      trackPointCount++;
+    }
+
+    void closeTrack() {
+      if (track != null && trackPointCount >= 2) {
+        track.fileName = "track_" + trackIndex;
+        track.expandBoundingBox();
+        trackset.add(track);
+        trackIndex++;
+      }
+      track = null;
+    }
+
+    void closeTrackset() {
+      if (!trackset.isEmpty()) {
+        handler.trackset(tracksetIndex, trackset);
+        tracksetIndex++;
+      }
+      tracksetPointCount = 0;
+      trackset = new ArrayList<PoseFile>();
+    }
+
+    void add(Rows rows) {
+      for (int i = 0; i < rows.count; i++) {
+        double latitude = rows.latitude[i];
+        double longitude = rows.longitude[i];
+        double time = rows.time[i];
+
+        boolean newTrack = (track == null);
+
+        if (!newTrack) {
+          boolean sameId = (i > 0) ? rows.sameId[i] : rows.firstId.equals(lastId);
+          double distance = Math.sqrt(Math.pow(latitude - lastLatitude, 2)
+              + Math.pow(longitude - lastLongitude, 2));
+
+          newTrack = !sameId || time - lastTime > MAX_GAP || distance > MAX_JUMP;
+        }
+
+        boolean returned = (minLat <= latitude && latitude <= maxLat)
+            && (minLong <= longitude && longitude <= maxLong);
+
+        if (newTrack || returned) {
+          closeTrack();
+
+          if (tracksetPointCount >= tracksetPoints) {
+            closeTrackset();
+          }
+
+          track = new PoseFile();
+          trackPointCount = 0;
+
+          if (returned && !newTrack) {
+            addPoint(lastLatitude, lastLongitude, lastTime, lastOnline);
+            minLat = maxLat = lastLatitude;
+            minLong = maxLong = lastLongitude;
+          } else {
+            minLat = minLong = Double.POSITIVE_INFINITY;
+            maxLat = maxLong = Double.NEGATIVE_INFINITY;
+          }
+        }
+
+        addPoint(latitude, longitude, time, rows.online[i]);
+
+        minLat = Math.min(minLat, latitude);
+        minLong = Math.min(minLong, longitude);
+        maxLat = Math.max(maxLat, latitude);
+        maxLong = Math.max(maxLong, longitude);
+
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastTime = time;
+        lastOnline = rows.online[i];
+
+        tracksetPointCount++;
+      }
+
+      if (rows.count > 0) {
+        lastId = rows.lastId;
+      }
+    }
+
+    void finish() {
+      closeTrack();
+      closeTrackset();
+    }
+  }
+
+  /**
+   * Parses the lines from start to end of buffer, a window at position of the file, in chunks on
+   * pool.
+   */
+  private List<Rows> parseWindow(ExecutorService pool, final ByteBuffer buffer, int start,
+      int end, final int[] columns, final int fields, final long position)
+      throws InterruptedException, ExecutionException {
+    int size = end - start;
+    int chunks = Math.max(1, Math.min(4 * parallelism, size / CsvGraphReader.MIN_CHUNK_SIZE));
+    int[] bounds = new int[chunks + 1];
+
+    bounds[0] = start;
+    for (int k = 1; k < chunks; k++) {
+      int bound = Math.max(bounds[k - 1], start + (int) ((long) k * size / chunks));
+
+      while (bound < end && bound > start && buffer.get(bound - 1) != '\n') {
+        bound++;
+      }
+      bounds[k] = bound;
+    }
+    bounds[chunks] = end;
+
+    List<Callable<Rows>> tasks = new ArrayList<Callable<Rows>>();
+
+    for (int k = 0; k < chunks; k++) {
+      final int chunkStart = bounds[k];
+      final int chunkEnd = bounds[k + 1];
+
+      tasks.add(new Callable<Rows>() {
+        @Override
+        public Rows call() {
+          return parseChunk(buffer, chunkStart, chunkEnd, columns, fields, position);
+        }
+      });
+    }
+
+    List<Rows> result = new ArrayList<Rows>();
+
+    for (Future<Rows> future : pool.invokeAll(tasks)) {
+      result.add(future.get());
+    }
+    return result;
+  }
+
+  /**
+   * Reads dataset and hands its tracksets to handler.
+   */
+  public void read(File dataset, Handler handler) throws IOException {
+    RandomAccessFile in = new RandomAccessFile(dataset, "r");
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+
+    try {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+
+      // the header
+      String header = in.readLine();
+
+      if (header == null) {
+        throw new IOException(dataset + " is empty");
+      }
+
+      String[] names = header.split(",", -1);
+      int[] columns = new int[COLUMNS.length];
+
+      for (int c = 0; c < COLUMNS.length; c++) {
+        columns[c] = -1;
+
+        for (int k = 0; k < names.length; k++) {
+          if (names[k].trim().replace("\"", "").equals(COLUMNS[c])) {
+            columns[c] = k;
+          }
+        }
+        if (columns[c] < 0) {
+          throw new IOException(dataset + " has no column " + COLUMNS[c]);
+        }
+      }
+
+      int fields = 0;
+
+      for (int column : columns) {
+        fields = Math.max(fields, column + 1);
+      }
+
+      Segmenter segmenter = new Segmenter(handler);
+      long position = in.getFilePointer();
+      int windowSize = WINDOW_SIZE;
+
+      while (position < size) {
+        int length = (int) Math.min(windowSize, size - position);
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int end = length;
+
+        if (position + length < size) {
+          while (end > 0 && buffer.get(end - 1) != '\n') {
+            end--;
+          }
+          if (end == 0) {
+            // a line longer than the window
+            windowSize *= 2;
+            continue;
+          }
+        }
+
+        for (Rows rows : parseWindow(pool, buffer, 0, end, columns, fields, position)) {
+          segmenter.add(rows);
+        }
+        position += end;
+
+        if (showProgress) {
+          System.out.print(LINE_FLUSH + "Reading dataset: " + (int) (100 * position / size)
+              + "%");
+        }
+      }
+
+      segmenter.finish();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(dataset + ": " + e.getCause().getMessage(), e.getCause());
+    } finally {
+      pool.shutdown();
+      in.close();
+    }
+  }
+}
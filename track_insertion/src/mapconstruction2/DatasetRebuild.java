@@ -0,0 +1,240 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: DatasetRebuild.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rebuilds the map straight from sorted_dataset.csv, in one JVM. A DatasetReader splits the
+ * dataset into tracksets, each trackset is rebuilt as soon as it is read, by FullRebuild, and
+ * the partial maps are merged by a MergeTree. No track or trackset is written into files.
+ *
+ * At most 2 * parallelism tracksets are read but not rebuilt yet, so the tracks in memory don't
+ * grow with the dataset. The exit statuses are the ones of FullRebuild.
+ */
+public class DatasetRebuild {
+
+  private static final Logger logger = Logger.getAnonymousLogger();
+
+  private static final String LINE_FLUSH = "\r\033[K";
+
+  private final FullRebuild fullRebuild;
+  private final DatasetReader reader;
+  private final int parallelism;
+
+  /**
+   * @param parallelism the number of tracksets rebuilt at the same time
+   */
+  public DatasetRebuild(double eps, double altEps, int parallelism, int tracksetPoints) {
+    this.parallelism = Math.max(1, parallelism);
+    this.fullRebuild = new FullRebuild(eps, altEps, false, this.parallelism);
+    this.reader = new DatasetReader(this.parallelism);
+    this.reader.setTracksetPoints(tracksetPoints);
+  }
+
+  /**
+   * Reads dataset and rebuilds the maps of its tracksets.
+   *
+   * @return the partial maps, in the order of tracksets
+   */
+  public MapGraph[] rebuildAll(File dataset) throws IOException {
+    final ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    final Semaphore pending = new Semaphore(2 * parallelism);
+    final List<Future<MapGraph>> futures = new ArrayList<Future<MapGraph>>();
+
+    try {
+      reader.read(dataset, new DatasetReader.Handler() {
+        @Override
+        public void trackset(final int index, final List<PoseFile> tracks) {
+          pending.acquireUninterruptibly();
+
+          futures.add(pool.submit(new Callable<MapGraph>() {
+            @Override
+            public MapGraph call() {
+              long startTime = System.currentTimeMillis();
+
+              try {
+                MapGraph partialMap = fullRebuild.rebuild(tracks);
+
+                logger.info("trackset " + index + ": " + tracks.size() + " tracks, "
+                    + partialMap.size() + " vertices :"
+                    + (System.currentTimeMillis() - startTime) / 60000.00);
+                return partialMap;
+              } catch (RuntimeException e) {
+                throw new RuntimeException("trackset " + index + " failed", e);
+              } finally {
+                pending.release();
+              }
+            }
+          }));
+        }
+      });
+
+      MapGraph[] partialMaps = new MapGraph[futures.size()];
+
+      for (int i = 0; i < partialMaps.length; i++) {
+        partialMaps[i] = futures.get(i).get();
+
+        System.out.print(LINE_FLUSH + "Rebuilding map: " + (i + 1) + "/" + partialMaps.length
+            + " tracksets");
+      }
+      return partialMaps;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Merges the partial maps with a MergeTree.
+   */
+  public MapGraph merge(MapGraph[] partialMaps) {
+    return fullRebuild.merge(partialMaps);
+  }
+
+  private static int usage(String message) {
+    System.err.println(message);
+    System.err.println("usage: DatasetRebuild datasetPath outputPath eps [altEps] [threads]"
+        + " [tracksetPoints]");
+    return FullRebuild.EXIT_USAGE;
+  }
+
+  /**
+   * Runs the rebuild with the arguments of main().
+   *
+   * @return the exit status
+   */
+  public static int run(String args[]) {
+    if (args.length < 3) {
+      return usage("missing arguments");
+    }
+
+    // path to sorted_dataset.csv
+    File datasetPath = new File(args[0]);
+
+    // path to the folder where the merged map will be written.
+    File outputPath = new File(args[1]);
+
+    double eps;
+    double altEps = 4.0;
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    int tracksetPoints = DatasetReader.TRACKSET_POINTS;
+
+    try {
+      // epsilon; see the paper for detail
+      eps = Double.parseDouble(args[2]);
+
+      // minimum altitude difference between two streets.
+      if (args.length > 3) {
+        altEps = Double.parseDouble(args[3]);
+      }
+
+      // number of tracksets rebuilt at the same time
+      if (args.length > 4) {
+        parallelism = Integer.parseInt(args[4]);
+      }
+
+      // number of points after which a trackset ends
+      if (args.length > 5) {
+        tracksetPoints = Integer.parseInt(args[5]);
+      }
+    } catch (NumberFormatException e) {
+      return usage(e.getMessage());
+    }
+
+    if (!datasetPath.isFile()) {
+      System.err.println("no dataset found at " + datasetPath);
+      return FullRebuild.EXIT_INPUT;
+    }
+
+    DatasetRebuild datasetRebuild = new DatasetRebuild(eps, altEps, parallelism, tracksetPoints);
+    MapGraph[] partialMaps;
+
+    try {
+      partialMaps = datasetRebuild.rebuildAll(datasetPath);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Reading failed: " + e.getMessage());
+      return FullRebuild.EXIT_INPUT;
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Rebuild failed: " + e.getMessage());
+      return FullRebuild.EXIT_REBUILD;
+    }
+
+    if (partialMaps.length == 0) {
+      System.err.println(LINE_FLUSH + "no track found in " + datasetPath);
+      return FullRebuild.EXIT_INPUT;
+    }
+
+    try {
+      MapGraph constructedMap = datasetRebuild.merge(partialMaps);
+
+      if (!outputPath.isDirectory() && !outputPath.mkdirs()) {
+        System.err.println(LINE_FLUSH + "Can't create " + outputPath);
+        return FullRebuild.EXIT_MERGE;
+      }
+
+      System.out.print(LINE_FLUSH + "Exporting merged map...");
+
+      GraphFile.writeMap(constructedMap, outputPath);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Export failed: " + e.getMessage());
+      return FullRebuild.EXIT_MERGE;
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Merge failed: " + e.getMessage());
+      return FullRebuild.EXIT_MERGE;
+    }
+
+    System.out.print(LINE_FLUSH + "Rebuilt and merged " + partialMaps.length
+        + " tracksets!\n");
+    return FullRebuild.EXIT_OK;
+  }
+
+  public static void main(String args[]) {
+    System.exit(run(args));
+  }
+}
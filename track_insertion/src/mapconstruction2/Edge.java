@@ -28,7 +28,6 @@ package mapconstruction2;
  */
 
 
-import java.util.ArrayList;
 import java.util.List;
 
 
@@ -40,57 +39,47 @@ class Edge implements Comparable<Edge> {
 
   private Vertex vertex1; // first endpoint of edge
   private Vertex vertex2; // second endpoint of edge
-  private double curveStart; // contains start point of white interval on curve
-  private double curveEnd; // contains end point of white interval on curve
-  private double edgeStart; // contains corresponding points on that edge
-  private double edgeEnd; // contains corresponding points on that edge
+  private MapGraph graph; // map this edge belongs to, or null
+  private int index1; // index of vertex1 in graph, or -1
+  private int index2; // index of vertex2 in graph, or -1
   private Line line; // line from vertex v1 to v2
-  /**
-   * done is marked as true when an edge is done being compared with all segments of a curve.
-   */
-  private boolean done;
-  /**
-   * Contains start and end index of curves for white intervals corresponding to the edge.
-   */
-  private int curveStartIndex;
-  private int curveEndIndex;
-
-  /**
-   * Contains a sorted list (in descending order) of positions indicating where to split this edge.
-   */
-  private List<Double> edgeSplitPositions;
-
-  /**
-   * For each split position the corresponding new vertex is saved in this list.
-   */
-  private List<Integer> edgeSplitVertices;
+  private double avgAltitude; // average altitude of vertex1 and vertex2
+  private IntersectionKernel.Region region; // eps-region around this edge, computed on demand
+  private EdgeInterval interval; // state of the comparison with the current curve
 
  // private static final FormattingLogger logger = FormattingLogger.getLogger(Edge.class);
 
   Edge(Vertex v1, Vertex v2) {
     this.vertex1 = v1;
     this.vertex2 = v2;
-    edgeSplitPositions = new ArrayList<Double>();
-    edgeSplitVertices = new ArrayList<Integer>();
-    this.reset();
+    this.graph = null;
+    this.index1 = -1;
+    this.index2 = -1;
+    this.line = new Line(v1, v2);
+    this.avgAltitude = this.line.avgAltitude();
+    this.region = null;
+    this.interval = new EdgeInterval();
   }
 
+  /**
+   * Creates the edge between vertices index1 and index2 of a map.
+   */
+  Edge(MapGraph graph, int index1, int index2) {
+    this(graph.getVertex(index1), graph.getVertex(index2));
+    this.graph = graph;
+    this.index1 = index1;
+    this.index2 = index2;
+  }
+
+  /**
+   * Clears the interval and split positions so the edge can be compared with another curve.
+   */
   void reset() {
-    this.curveStart = Double.MAX_VALUE;
-    this.curveEnd = -1.0;
-    this.edgeStart = Double.MAX_VALUE;
-    this.edgeEnd = -1.0;
-    this.line = new Line(vertex1, vertex2);
-    this.done = false;
+    this.interval.reset();
   }
 
   void set(Edge edge) {
-    this.curveStart = edge.curveStart;
-    this.curveEnd = edge.curveEnd;
-    this.edgeStart = edge.edgeStart;
-    this.edgeEnd = edge.edgeEnd;
-    this.line = new Line(vertex1, vertex2);
-    this.done = edge.done;
+    this.interval.set(edge.interval);
   }
 
   public Vertex getVertex1() {
@@ -101,76 +90,127 @@ class Edge implements Comparable<Edge> {
     return this.vertex2;
   }
 
+  public int getIndex1() {
+    return this.index1;
+  }
+
+  public int getIndex2() {
+    return this.index2;
+  }
+
+  /**
+   * Get a Vertex on this edge with parameter t. For an edge of a map, entries are interpolated
+   * from the entries its endpoints have in the map at the time of the call.
+   */
+  public Vertex getVertex(double t) {
+    if (this.graph == null) {
+      return this.line.getVertex(t);
+    }
+
+    Vertex vertex = new Vertex(
+      this.vertex1.getX() + this.line.getXdiff() * t,
+      this.vertex1.getY() + this.line.getYdiff() * t,
+      this.vertex1.getZ() + this.line.getZdiff() * t
+    );
+
+    vertex.addEntry(
+      (graph.getOnlineSum(index1) * t) + (graph.getOnlineSum(index2) * (1 - t)),
+      (graph.getEntryCount(index1) * t) + (graph.getEntryCount(index2) * (1 - t))
+    );
+
+    return vertex;
+  }
+
   public Line getLine() {
     return this.line;
   }
 
+  public double getAvgAltitude() {
+    return this.avgAltitude;
+  }
+
+  /**
+   * Returns the eps-region around this edge. It is computed on the first call and kept until it
+   * is asked for with another eps.
+   */
+  public IntersectionKernel.Region getRegion(double eps) {
+    if (this.region == null || this.region.getEps() != eps) {
+      this.region = new IntersectionKernel.Region(this.line.getP1().getX(),
+          this.line.getP1().getY(), this.line.getP2().getX(), this.line.getP2().getY(), eps);
+    }
+    return this.region;
+  }
+
+  public EdgeInterval getInterval() {
+    return this.interval;
+  }
+
   public boolean getDone() {
-    return this.done;
+    return this.interval.done;
   }
 
   public void setDone(boolean done) {
-    this.done = done;
+    this.interval.done = done;
   }
 
   public double getCurveStart() {
-    return this.curveStart;
+    return this.interval.curveStart;
   }
 
   public void setCurveStart(double cstart) {
-    this.curveStart = cstart;
+    this.interval.curveStart = cstart;
   }
 
   public double getCurveEnd() {
-    return this.curveEnd;
+    return this.interval.curveEnd;
   }
 
   public void setCurveEnd(double cend) {
-    this.curveEnd = cend;
+    this.interval.curveEnd = cend;
   }
 
   public double getEdgeStart() {
-    return this.edgeStart;
+    return this.interval.edgeStart;
   }
 
   public void setEdgeStart(double vstart) {
-    this.edgeStart = vstart;
+    this.interval.edgeStart = vstart;
   }
 
   public double getEdgeEnd() {
-    return this.edgeEnd;
+    return this.interval.edgeEnd;
   }
 
   public void setEdgeEnd(double vend) {
-    this.edgeEnd = vend;
+    this.interval.edgeEnd = vend;
   }
 
   public int getCurveStartIndex() {
-    return this.curveStartIndex;
+    return this.interval.curveStartIndex;
   }
 
   public void setCurveStartIndex(int startIndex) {
     if (startIndex >= 0) {
-      this.curveStartIndex = startIndex;
+      this.interval.curveStartIndex = startIndex;
     } else {
      // logger.log(Level.SEVERE, "Invalid assignment of Edge.startIndex");
     }
   }
 
   public int getCurveEndIndex() {
-    return this.curveEndIndex;
+    return this.interval.curveEndIndex;
   }
 
   public void setCurveEndIndex(int endIndex) {
-    this.curveEndIndex = endIndex;
+    this.interval.curveEndIndex = endIndex;
   }
 
   public List<Integer> getEdgeSplitVertices() {
-    return this.edgeSplitVertices;
+    return this.interval.edgeSplitVertices;
   }
 
   public List<Double> getEdgeSplitPositions() {
-    return this.edgeSplitPositions;
+    return this.interval.edgeSplitPositions;
   }
 
   /**
@@ -184,17 +224,17 @@ class Edge implements Comparable<Edge> {
   public void addSplit(double position, int vertex) {
     int i = 0;
     //logger.log(Level.FINEST, "Inside updateSplits");
-    for (i = 0; i < this.edgeSplitPositions.size(); i++) {
-      if (this.edgeSplitPositions.get(i).doubleValue() == position) {
+    for (i = 0; i < this.interval.edgeSplitPositions.size(); i++) {
+      if (this.interval.edgeSplitPositions.get(i).doubleValue() == position) {
         return;
-      } else if (this.edgeSplitPositions.get(i).doubleValue() > position) {
-        this.edgeSplitPositions.add(i, position);
-        this.edgeSplitVertices.add(i, vertex);
+      } else if (this.interval.edgeSplitPositions.get(i).doubleValue() > position) {
+        this.interval.edgeSplitPositions.add(i, position);
+        this.interval.edgeSplitVertices.add(i, vertex);
         return;
       }
     }
-    this.edgeSplitPositions.add(position);
-    this.edgeSplitVertices.add(vertex);
+    this.interval.edgeSplitPositions.add(position);
+    this.interval.edgeSplitVertices.add(vertex);
   }
 
   @Override
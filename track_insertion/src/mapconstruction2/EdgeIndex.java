@@ -0,0 +1,318 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: EdgeIndex.java
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid over the edges of a constructed map. Every edge is registered in each cell its
+ * bounding box overlaps, so a range query only looks at the edges around the query box instead of
+ * walking the whole map.
+ */
+public class EdgeIndex {
+
+  /**
+   * Side of a grid cell as a multiple of eps.
+   */
+  public static final double CELL_SIZE_IN_EPS = 5.0;
+
+  /**
+   * A growable list of packed edge keys.
+   */
+  private static class Cell {
+    long[] keys = new long[8];
+    int size = 0;
+
+    boolean contains(long key) {
+      for (int i = 0; i < size; i++) {
+        if (keys[i] == key) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void add(long key) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+      }
+      keys[size++] = key;
+    }
+
+    boolean remove(long key) {
+      for (int i = 0; i < size; i++) {
+        if (keys[i] == key) {
+          keys[i] = keys[--size];
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private final MapGraph graph; // the indexed map
+  private final double cellSize; // side of a grid cell, in the same unit as the coordinates
+  private final Map<Long, Cell> cells;
+  private int edgeCount;
+
+  /**
+   * @param graph the map whose edges are indexed
+   *
+   * @param cellSize the side of a grid cell
+   */
+  public EdgeIndex(MapGraph graph, double cellSize) {
+    this.graph = graph;
+    this.cellSize = cellSize;
+    this.cells = new HashMap<Long, Cell>();
+    this.edgeCount = 0;
+  }
+
+  /**
+   * Builds an index with every edge already present in the adjacency lists of graph.
+   */
+  public static EdgeIndex build(MapGraph graph, double cellSize) {
+    EdgeIndex index = new EdgeIndex(graph, cellSize);
+
+    for (int i = 0; i < graph.size(); i++) {
+      for (int j = 0; j < graph.getDegree(i); j++) {
+        int k = graph.getAdjacentElementAt(i, j);
+
+        if (k > i) {
+          index.add(i, k);
+        }
+      }
+    }
+    return index;
+  }
+
+  public int getEdgeCount() {
+    return edgeCount;
+  }
+
+  private static long edgeKey(int a, int b) {
+    return ((long) Math.min(a, b) << 32) | (Math.max(a, b) & 0xffffffffL);
+  }
+
+  private static long cellKey(long cx, long cy) {
+    return (cx << 32) | (cy & 0xffffffffL);
+  }
+
+  private long cellOf(double coordinate) {
+    return (long) Math.floor(coordinate / cellSize);
+  }
+
+  /**
+   * Registers the edge between vertices a and b, if it is not registered yet.
+   */
+  public void add(int a, int b) {
+    if (a == b) {
+      return;
+    }
+
+    long key = edgeKey(a, b);
+
+    long minCx = cellOf(Math.min(graph.getX(a), graph.getX(b)));
+    long maxCx = cellOf(Math.max(graph.getX(a), graph.getX(b)));
+    long minCy = cellOf(Math.min(graph.getY(a), graph.getY(b)));
+    long maxCy = cellOf(Math.max(graph.getY(a), graph.getY(b)));
+
+    Cell first = cells.get(cellKey(minCx, minCy));
+
+    if (first != null && first.contains(key)) {
+      return;
+    }
+
+    for (long cx = minCx; cx <= maxCx; cx++) {
+      for (long cy = minCy; cy <= maxCy; cy++) {
+        Long cellKey = cellKey(cx, cy);
+        Cell cell = cells.get(cellKey);
+
+        if (cell == null) {
+          cell = new Cell();
+          cells.put(cellKey, cell);
+        }
+        cell.add(key);
+      }
+    }
+    edgeCount++;
+  }
+
+  /**
+   * Unregisters the edge between vertices a and b, if it is registered.
+   */
+  public void remove(int a, int b) {
+    if (a == b) {
+      return;
+    }
+
+    long key = edgeKey(a, b);
+
+    long minCx = cellOf(Math.min(graph.getX(a), graph.getX(b)));
+    long maxCx = cellOf(Math.max(graph.getX(a), graph.getX(b)));
+    long minCy = cellOf(Math.min(graph.getY(a), graph.getY(b)));
+    long maxCy = cellOf(Math.max(graph.getY(a), graph.getY(b)));
+
+    boolean removed = false;
+
+    for (long cx = minCx; cx <= maxCx; cx++) {
+      for (long cy = minCy; cy <= maxCy; cy++) {
+        Cell cell = cells.get(cellKey(cx, cy));
+
+        if (cell != null && cell.remove(key)) {
+          removed = true;
+        }
+      }
+    }
+
+    if (removed) {
+      edgeCount--;
+    }
+  }
+
+  /**
+   * Checks if the segment from (x1, y1) to (x2, y2) has at least one point inside the box, using
+   * Liang-Barsky clipping. This also accepts segments crossing the box with both endpoints outside
+   * of it.
+   */
+  static boolean segmentIntersectsBox(double x1, double y1, double x2, double y2, double minX,
+      double minY, double maxX, double maxY) {
+    double t0 = 0.0;
+    double t1 = 1.0;
+    double dx = x2 - x1;
+    double dy = y2 - y1;
+
+    double p[] = {-dx, dx, -dy, dy};
+    double q[] = {x1 - minX, maxX - x1, y1 - minY, maxY - y1};
+
+    for (int i = 0; i < 4; i++) {
+      if (p[i] == 0) {
+        if (q[i] < 0) {
+          return false;
+        }
+      } else {
+        double r = q[i] / p[i];
+
+        if (p[i] < 0) {
+          t0 = Math.max(t0, r);
+        } else {
+          t1 = Math.min(t1, r);
+        }
+
+        if (t0 > t1) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the packed keys of all edges intersecting the box, sorted in ascending order.
+   */
+  public long[] query(double minX, double minY, double maxX, double maxY) {
+    long found[] = new long[16];
+    int size = 0;
+
+    for (long cx = cellOf(minX); cx <= cellOf(maxX); cx++) {
+      for (long cy = cellOf(minY); cy <= cellOf(maxY); cy++) {
+        Cell cell = cells.get(cellKey(cx, cy));
+
+        if (cell == null) {
+          continue;
+        }
+
+        for (int i = 0; i < cell.size; i++) {
+          if (size == found.length) {
+            found = Arrays.copyOf(found, size * 2);
+          }
+          found[size++] = cell.keys[i];
+        }
+      }
+    }
+
+    Arrays.sort(found, 0, size);
+
+    int count = 0;
+
+    for (int i = 0; i < size; i++) {
+      if (i > 0 && found[i] == found[i - 1]) {
+        continue;
+      }
+
+      int a = (int) (found[i] >>> 32);
+      int b = (int) found[i];
+
+      if (segmentIntersectsBox(graph.getX(a), graph.getY(a), graph.getX(b), graph.getY(b),
+          minX, minY, maxX, maxY)) {
+        found[count++] = found[i];
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  /**
+   * Returns a new Edge for every map edge intersecting the box. Edges are directed from the lower
+   * to the higher vertex index and ordered by their first vertex and then by the position of the
+   * second one in its adjacency list, as a full scan of the map would produce them.
+   */
+  public List<Edge> getEdges(double minX, double minY, double maxX, double maxY) {
+    return this.getEdges(new EdgeTable(graph), minX, minY, maxX, maxY);
+  }
+
+  /**
+   * Same as getEdges(minX, minY, maxX, maxY), but the edges are taken from table, so an edge
+   * returned for an earlier box is returned again, reset.
+   */
+  public List<Edge> getEdges(EdgeTable table, double minX, double minY, double maxX,
+      double maxY) {
+    long keys[] = this.query(minX, minY, maxX, maxY);
+
+    List<Edge> edges = new ArrayList<Edge>();
+
+    for (int i = 0; i < keys.length; i++) {
+      int a = (int) (keys[i] >>> 32);
+
+      if (i > 0 && a == (int) (keys[i - 1] >>> 32)) {
+        continue;
+      }
+
+      for (int j = 0; j < graph.getDegree(a); j++) {
+        int b = graph.getAdjacentElementAt(a, j);
+
+        if (b > a && Arrays.binarySearch(keys, edgeKey(a, b)) >= 0) {
+          edges.add(table.get(a, b));
+        }
+      }
+    }
+    return edges;
+  }
+}
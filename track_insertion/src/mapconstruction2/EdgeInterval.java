@@ -0,0 +1,89 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: EdgeInterval.java
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state an Edge collects while one curve is compared with it: the current white interval and
+ * the positions where the edge has to be split. reset() makes it ready for the next curve.
+ */
+class EdgeInterval {
+
+  double curveStart; // contains start point of white interval on curve
+  double curveEnd; // contains end point of white interval on curve
+  double edgeStart; // contains corresponding points on that edge
+  double edgeEnd; // contains corresponding points on that edge
+  /**
+   * done is marked as true when an edge is done being compared with all segments of a curve.
+   */
+  boolean done;
+  /**
+   * Contains start and end index of curves for white intervals corresponding to the edge.
+   */
+  int curveStartIndex;
+  int curveEndIndex;
+
+  /**
+   * Contains a sorted list (in descending order) of positions indicating where to split this edge.
+   */
+  final List<Double> edgeSplitPositions = new ArrayList<Double>();
+
+  /**
+   * For each split position the corresponding new vertex is saved in this list.
+   */
+  final List<Integer> edgeSplitVertices = new ArrayList<Integer>();
+
+  EdgeInterval() {
+    this.reset();
+  }
+
+  void reset() {
+    this.curveStart = Double.MAX_VALUE;
+    this.curveEnd = -1.0;
+    this.edgeStart = Double.MAX_VALUE;
+    this.edgeEnd = -1.0;
+    this.done = false;
+    this.curveStartIndex = 0;
+    this.curveEndIndex = 0;
+    this.edgeSplitPositions.clear();
+    this.edgeSplitVertices.clear();
+  }
+
+  /**
+   * Copies the white interval of other, but not its split positions.
+   */
+  void set(EdgeInterval other) {
+    this.curveStart = other.curveStart;
+    this.curveEnd = other.curveEnd;
+    this.edgeStart = other.edgeStart;
+    this.edgeEnd = other.edgeEnd;
+    this.done = other.done;
+  }
+}
@@ -0,0 +1,79 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: EdgeTable.java
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Edge objects of a constructed map, kept for as long as the map lives. An Edge caches its
+ * line, average altitude and eps-region, which only change when the edge is split, so the same
+ * object is handed out for every curve until remove() is called for it.
+ */
+public class EdgeTable {
+
+  private final MapGraph graph; // the map the edges belong to
+  private final Map<Long, Edge> edges;
+
+  public EdgeTable(MapGraph graph) {
+    this.graph = graph;
+    this.edges = new HashMap<Long, Edge>();
+  }
+
+  public int size() {
+    return edges.size();
+  }
+
+  private static long edgeKey(int a, int b) {
+    return ((long) Math.min(a, b) << 32) | (Math.max(a, b) & 0xffffffffL);
+  }
+
+  /**
+   * Returns the edge from vertex a to vertex b, reset for a new curve. The edge is created when
+   * the table doesn't have it yet.
+   */
+  public Edge get(int a, int b) {
+    Long key = edgeKey(a, b);
+    Edge edge = edges.get(key);
+
+    if (edge == null || edge.getIndex1() != a) {
+      edge = new Edge(graph, a, b);
+      edges.put(key, edge);
+    } else {
+      edge.reset();
+    }
+    return edge;
+  }
+
+  /**
+   * Drops the edge between vertices a and b, which has been split.
+   */
+  public void remove(int a, int b) {
+    edges.remove(edgeKey(a, b));
+  }
+}
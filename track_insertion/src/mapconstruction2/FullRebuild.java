@@ -0,0 +1,369 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: FullRebuild.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rebuilds the map of every trackset in a folder and merges the partial maps, in one JVM. The
+ * tracksets are rebuilt on a work-stealing pool and their maps are kept in memory, then merged
+ * pairwise by a MergeTree.
+ *
+ * The process exits with EXIT_OK on success, EXIT_USAGE for bad arguments, EXIT_INPUT when there
+ * is no trackset to rebuild, EXIT_REBUILD when a trackset failed and EXIT_MERGE when merging or
+ * exporting failed. The map folder also gets the manifest of its tracks, which
+ * IncrementalUpdate reads to insert only the tracks added later. The tracks are listed once,
+ * before the rebuild, so that the manifest holds the tracks of the map even when tracks are
+ * added during the rebuild.
+ */
+public class FullRebuild {
+
+  public static final int EXIT_OK = 0;
+  public static final int EXIT_USAGE = 1;
+  public static final int EXIT_INPUT = 2;
+  public static final int EXIT_REBUILD = 3;
+  public static final int EXIT_MERGE = 4;
+
+  private static final Logger logger = Logger.getAnonymousLogger();
+
+  private static final String LINE_FLUSH = "\r\033[K";
+
+  private final double eps;
+  private final double altEps;
+  private final boolean hasAltitude;
+  private final int parallelism;
+
+  /**
+   * @param parallelism the number of tracksets rebuilt at the same time
+   */
+  public FullRebuild(double eps, double altEps, boolean hasAltitude, int parallelism) {
+    this.eps = eps;
+    this.altEps = altEps;
+    this.hasAltitude = hasAltitude;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  // tolerance of the simplification of the tracks as a multiple of eps, 0 not to simplify them
+  private double simplifyInEps = 0;
+
+  /**
+   * Simplifies the tracks of each trackset with a TrackSimplification before they are inserted.
+   */
+  public void setSimplification(double simplifyInEps) {
+    this.simplifyInEps = simplifyInEps;
+  }
+
+  // if the tracks are bundled before they are inserted
+  private boolean bundling = false;
+
+  /**
+   * Inserts one representative of every bundle of tracks within eps of each other, as
+   * MapConstruction.setBundling() does.
+   */
+  public void setBundling(boolean bundling) {
+    this.bundling = bundling;
+  }
+
+  /**
+   * Returns the trackset folders in folder, the ones with a numeric name first in the order of
+   * their number, then the others by name.
+   */
+  public static File[] listTracksets(File folder) {
+    File[] files = folder.listFiles();
+
+    if (files == null) {
+      return new File[0];
+    }
+
+    List<File> tracksets = new ArrayList<File>();
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        tracksets.add(file);
+      }
+    }
+
+    File[] sorted = tracksets.toArray(new File[tracksets.size()]);
+
+    Arrays.sort(sorted, new Comparator<File>() {
+      @Override
+      public int compare(File f1, File f2) {
+        boolean numeric1 = f1.getName().matches("\\d+");
+        boolean numeric2 = f2.getName().matches("\\d+");
+
+        if (numeric1 && numeric2) {
+          int result = Long.compare(Long.parseLong(f1.getName()), Long.parseLong(f2.getName()));
+
+          if (result != 0) {
+            return result;
+          }
+        } else if (numeric1 != numeric2) {
+          return numeric1 ? -1 : 1;
+        }
+        return f1.getName().compareTo(f2.getName());
+      }
+    });
+    return sorted;
+  }
+
+  /**
+   * Rebuilds the map of one trackset, as MapConstruction does.
+   */
+  public MapGraph rebuild(File trackset) {
+    MapConstruction construction = new MapConstruction();
+    // the tracksets are already read concurrently
+    construction.setReadParallelism(1);
+    construction.setShowProgress(false);
+
+    return rebuild(construction.readAllFiles(trackset, hasAltitude));
+  }
+
+  /**
+   * Rebuilds the map of the tracks of listing, as MapConstruction does.
+   */
+  public MapGraph rebuild(TrackListing listing) {
+    // the tracksets are already read concurrently
+    return rebuild(listing.read(1));
+  }
+
+  /**
+   * Rebuilds the map of one trackset from its tracks, as MapConstruction does.
+   */
+  public MapGraph rebuild(List<PoseFile> tracks) {
+    MapConstruction construction = new MapConstruction();
+    construction.setParallelism(1);
+    construction.setShowProgress(false);
+
+    if (simplifyInEps > 0) {
+      // the tracksets are already rebuilt concurrently
+      construction.setSimplification(new TrackSimplification(simplifyInEps, 1));
+    }
+    construction.setBundling(bundling);
+
+    MapGraph constructedMap = construction.constructMapMain(tracks, eps, altEps);
+
+    // the partial map is only read from now on
+    return constructedMap.snapshot();
+  }
+
+  /**
+   * Rebuilds the maps of all listed tracksets. The first failing trackset cancels the others.
+   *
+   * @return the partial maps, in the order of tracksets
+   */
+  public MapGraph[] rebuildAll(final List<TrackListing> tracksets) {
+    final MapGraph[] partialMaps = new MapGraph[tracksets.size()];
+
+    ExecutorService pool = Executors.newWorkStealingPool(parallelism);
+    CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(pool);
+
+    try {
+      for (int i = 0; i < tracksets.size(); i++) {
+        final int index = i;
+
+        completion.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            long startTime = System.currentTimeMillis();
+
+            try {
+              partialMaps[index] = rebuild(tracksets.get(index));
+            } catch (RuntimeException e) {
+              throw new RuntimeException("trackset " + tracksets.get(index).getTrackset().getName()
+                  + " failed", e);
+            }
+
+            logger.info("trackset " + tracksets.get(index).getTrackset().getName() + ": "
+                + partialMaps[index].size() + " vertices :"
+                + (System.currentTimeMillis() - startTime) / 60000.00);
+            return index;
+          }
+        });
+      }
+
+      for (int done = 1; done <= tracksets.size(); done++) {
+        completion.take().get();
+
+        System.out.print(LINE_FLUSH + "Rebuilding map: " + done + "/" + tracksets.size()
+            + " tracksets");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    return partialMaps;
+  }
+
+  /**
+   * Merges the partial maps with a MergeTree.
+   */
+  public MapGraph merge(MapGraph[] partialMaps) {
+    return new MergeTree(eps, altEps, parallelism).merge(Arrays.asList(partialMaps));
+  }
+
+  private static int usage(String message) {
+    System.err.println(message);
+    System.err.println("usage: FullRebuild tracksPath outputPath eps hasAltitude [altEps]"
+        + " [threads] [simplifyInEps] [bundle]");
+    return EXIT_USAGE;
+  }
+
+  /**
+   * Runs the rebuild with the arguments of main().
+   *
+   * @return the exit status
+   */
+  public static int run(String args[]) {
+    if (args.length < 4) {
+      return usage("missing arguments");
+    }
+
+    // path to the folder that contains one folder of tracks per trackset.
+    File inputPath = new File(args[0]);
+
+    // path to the folder where the merged map will be written.
+    File outputPath = new File(args[1]);
+
+    double eps;
+    double altEps = 4.0;
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    double simplifyInEps = 0;
+
+    try {
+      // epsilon; see the paper for detail
+      eps = Double.parseDouble(args[2]);
+
+      // minimum altitude difference between two streets.
+      if (args.length > 4) {
+        altEps = Double.parseDouble(args[4]);
+      }
+
+      // number of tracksets rebuilt at the same time
+      if (args.length > 5) {
+        parallelism = Integer.parseInt(args[5]);
+      }
+
+      // tolerance of the simplification of the tracks, as a multiple of eps and altEps
+      if (args.length > 6) {
+        simplifyInEps = Double.parseDouble(args[6]);
+      }
+    } catch (NumberFormatException e) {
+      return usage(e.getMessage());
+    }
+
+    // if the input files contains altitude information
+    boolean hasAltitude = Boolean.parseBoolean(args[3]);
+
+    List<TrackListing> tracksets;
+
+    try {
+      // the tracks rebuilt and written in the manifest, whatever is added in the meantime
+      tracksets = TrackListing.list(inputPath, hasAltitude);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Reading failed: " + e.getMessage());
+      return EXIT_INPUT;
+    }
+
+    if (tracksets.isEmpty()) {
+      System.err.println("no trackset found in " + inputPath);
+      return EXIT_INPUT;
+    }
+
+    FullRebuild fullRebuild = new FullRebuild(eps, altEps, hasAltitude, parallelism);
+    fullRebuild.setSimplification(simplifyInEps);
+
+    // if tracks within eps of each other are inserted once, with the entries of all of them
+    fullRebuild.setBundling(args.length > 7 && Boolean.parseBoolean(args[7]));
+    MapGraph[] partialMaps;
+
+    try {
+      partialMaps = fullRebuild.rebuildAll(tracksets);
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Rebuild failed: " + e.getMessage());
+      return EXIT_REBUILD;
+    }
+
+    try {
+      MapGraph constructedMap = fullRebuild.merge(partialMaps);
+
+      if (!outputPath.isDirectory() && !outputPath.mkdirs()) {
+        System.err.println(LINE_FLUSH + "Can't create " + outputPath);
+        return EXIT_MERGE;
+      }
+
+      System.out.print(LINE_FLUSH + "Exporting merged map...");
+
+      // lets IncrementalUpdate insert only the tracks added after this rebuild
+      Map<String, String> manifest = new LinkedHashMap<String, String>();
+
+      for (TrackListing trackset : tracksets) {
+        for (int i = 0; i < trackset.size(); i++) {
+          manifest.put(trackset.getKey(i), trackset.getName(i));
+        }
+      }
+      IncrementalUpdate.writeMapAndManifest(constructedMap, outputPath, manifest);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Export failed: " + e.getMessage());
+      return EXIT_MERGE;
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Merge failed: " + e.getMessage());
+      return EXIT_MERGE;
+    }
+
+    System.out.print(LINE_FLUSH + "Rebuilt and merged " + tracksets.size() + " tracksets!\n");
+    return EXIT_OK;
+  }
+
+  public static void main(String args[]) {
+    System.exit(run(args));
+  }
+}
@@ -0,0 +1,360 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: GraphFile.java
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes the files of a map folder: vertices.txt and edges.txt, and graph.bin, a
+ * binary copy of the same map which is mapped into memory instead of parsed.
+ *
+ * graph.bin is little endian and holds, in this order:
+ *
+ * - a header of HEADER_SIZE bytes: int MAGIC, int VERSION, int # of vertices n, int 0, long # of
+ * adjacency entries m, long 0
+ *
+ * - double arrays x, y, z, onlineSum and entryCount of n values each
+ *
+ * - the adjacency in compressed sparse row form: int offsets[n + 1], where the neighbours of
+ * vertex v are at offsets[v] until offsets[v + 1], and int adjacency[m]
+ *
+ * Self-loops are left out, as in edges.txt.
+ */
+public class GraphFile {
+
+  public static final String FILE_NAME = "graph.bin";
+
+  public static final int MAGIC = 0x4746434d; // "MCFG" in little endian
+  public static final int VERSION = 1;
+
+  public static final int HEADER_SIZE = 32;
+
+  // size of the buffer the file is written through
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  // size of the windows of the file mapped at once, as a buffer holds at most 2 GB
+  private static final int WINDOW_SIZE = 1 << 30;
+
+  /**
+   * Writes graph to file in the binary format.
+   */
+  public static void write(MapGraph graph, File file) throws IOException {
+    int n = graph.size();
+    int[] offsets = new int[n + 1];
+    long entries = 0;
+
+    for (int v = 0; v < n; v++) {
+      for (int k = 0; k < graph.getDegree(v); k++) {
+        if (graph.getAdjacentElementAt(v, k) != v) {
+          entries++;
+        }
+      }
+
+      if (entries > Integer.MAX_VALUE) {
+        throw new IOException("map too large for " + FILE_NAME + ": " + entries
+            + " adjacency entries");
+      }
+      offsets[v + 1] = (int) entries;
+    }
+
+    int m = offsets[n];
+    long length = HEADER_SIZE + 5L * 8 * n + 4L * (n + 1) + 4L * m;
+
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+
+    try {
+      out.setLength(length);
+
+      FileChannel channel = out.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(n);
+      buffer.putInt(0);
+      buffer.putLong(m);
+      buffer.putLong(0);
+
+      for (int v = 0; v < n; v++) {
+        room(channel, buffer, 8).putDouble(graph.getX(v));
+      }
+      for (int v = 0; v < n; v++) {
+        room(channel, buffer, 8).putDouble(graph.getY(v));
+      }
+      for (int v = 0; v < n; v++) {
+        room(channel, buffer, 8).putDouble(graph.getZ(v));
+      }
+      for (int v = 0; v < n; v++) {
+        room(channel, buffer, 8).putDouble(graph.getOnlineSum(v));
+      }
+      for (int v = 0; v < n; v++) {
+        room(channel, buffer, 8).putDouble(graph.getEntryCount(v));
+      }
+      for (int v = 0; v <= n; v++) {
+        room(channel, buffer, 4).putInt(offsets[v]);
+      }
+      for (int v = 0; v < n; v++) {
+        for (int k = 0; k < graph.getDegree(v); k++) {
+          int w = graph.getAdjacentElementAt(v, k);
+
+          if (w != v) {
+            room(channel, buffer, 4).putInt(w);
+          }
+        }
+      }
+
+      flush(channel, buffer);
+      channel.force(false);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes buffer to channel if it has less than bytes left, and returns it.
+   */
+  private static ByteBuffer room(FileChannel channel, ByteBuffer buffer, int bytes)
+      throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush(channel, buffer);
+    }
+    return buffer;
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long position, long size)
+      throws IOException {
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  private static double[] getDoubles(FileChannel channel, long position, int count)
+      throws IOException {
+    double[] values = new double[count];
+
+    for (int i = 0; i < count; i += WINDOW_SIZE / 8) {
+      int size = Math.min(count - i, WINDOW_SIZE / 8);
+
+      map(channel, position + 8L * i, 8L * size).asDoubleBuffer().get(values, i, size);
+    }
+    return values;
+  }
+
+  private static int[] getInts(FileChannel channel, long position, int count)
+      throws IOException {
+    int[] values = new int[count];
+
+    for (int i = 0; i < count; i += WINDOW_SIZE / 4) {
+      int size = Math.min(count - i, WINDOW_SIZE / 4);
+
+      map(channel, position + 4L * i, 4L * size).asIntBuffer().get(values, i, size);
+    }
+    return values;
+  }
+
+  /**
+   * Maps file into memory, a window at a time, and returns the map it holds, read-only and with
+   * the entries of each vertex as they were written.
+   */
+  public static MapGraph read(File file) throws IOException {
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+
+    try {
+      FileChannel channel = in.getChannel();
+      long length = channel.size();
+
+      if (length < HEADER_SIZE) {
+        throw new IOException(file + " is not a graph file");
+      }
+
+      MappedByteBuffer buffer = map(channel, 0, HEADER_SIZE);
+
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException(file + " is not a graph file");
+      }
+
+      int version = buffer.getInt();
+
+      if (version != VERSION) {
+        throw new IOException(file + " has unsupported version " + version);
+      }
+
+      int n = buffer.getInt();
+      buffer.getInt();
+      long m = buffer.getLong();
+      buffer.getLong();
+
+      if (n < 0 || m < 0 || m > Integer.MAX_VALUE
+          || length != HEADER_SIZE + 5L * 8 * n + 4L * (n + 1) + 4L * m) {
+        throw new IOException(file + " is truncated or corrupt");
+      }
+
+      long position = HEADER_SIZE;
+      double[] x = getDoubles(channel, position, n);
+      double[] y = getDoubles(channel, position += 8L * n, n);
+      double[] z = getDoubles(channel, position += 8L * n, n);
+      double[] onlineSum = getDoubles(channel, position += 8L * n, n);
+      double[] entryCount = getDoubles(channel, position += 8L * n, n);
+      int[] offsets = getInts(channel, position += 8L * n, n + 1);
+      int[] adjacency = getInts(channel, position + 4L * (n + 1), (int) m);
+
+      return MapGraph.fromCompressed(n, x, y, z, onlineSum, entryCount, offsets, adjacency);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes graph into vertices.txt and edges.txt in folder.
+   */
+  public static void writeCsv(MapGraph graph, File folder) throws IOException {
+    int count = 0;
+    BufferedWriter bwedges = new BufferedWriter(new FileWriter(new File(folder, "edges.txt")));
+    BufferedWriter bvertex = new BufferedWriter(new FileWriter(new File(folder, "vertices.txt")));
+
+    for (int i = 0; i < graph.size(); i++) {
+      bvertex.write(i + "," + graph.getX(i) + "," + graph.getY(i) + "," + graph.getZ(i) + ","
+          + graph.getOnlineAvg(i) + "\n");
+
+      for (int j = 0; j < graph.getDegree(i); j++) {
+        if (i != graph.getAdjacentElementAt(i, j)) {
+          bwedges.write(count + "," + i + "," + graph.getAdjacentElementAt(i, j) + "\n");
+
+          count++;
+        }
+      }
+    }
+
+    bwedges.close();
+    bvertex.close();
+  }
+
+  /**
+   * Reads vertices.txt and edges.txt in folder into constructedMap with a CsvGraphReader. Every
+   * vertex gets its online average as a single entry. The edges may come in any order.
+   */
+  public static void readCsv(MapGraph constructedMap, VertexRegistry map, File folder)
+      throws IOException {
+    new CsvGraphReader(Runtime.getRuntime().availableProcessors())
+        .read(constructedMap, map, folder);
+  }
+
+  /**
+   * Checks if folder has a graph.bin at least as recent as its vertices.txt.
+   */
+  public static boolean hasBinary(File folder) {
+    File binary = new File(folder, FILE_NAME);
+    File vertices = new File(folder, "vertices.txt");
+
+    return binary.isFile()
+        && (!vertices.exists() || binary.lastModified() >= vertices.lastModified());
+  }
+
+  /**
+   * Reads the map in folder into constructedMap, from graph.bin when hasBinary(folder) and from
+   * the CSV files otherwise. Both give every vertex its online average as a single entry, as
+   * readCsv() does.
+   */
+  public static void readMap(MapGraph constructedMap, VertexRegistry map, File folder)
+      throws IOException {
+    if (hasBinary(folder)) {
+      MapMerging.readFromMap(constructedMap, map, read(new File(folder, FILE_NAME)));
+    } else {
+      readCsv(constructedMap, map, folder);
+    }
+  }
+
+  /**
+   * Reads the map in folder into constructedMap as readMap() does, except that from graph.bin
+   * every vertex keeps all of its entries. The CSV files only hold the online averages.
+   */
+  public static void readMapWithEntries(MapGraph constructedMap, VertexRegistry map, File folder)
+      throws IOException {
+    if (hasBinary(folder)) {
+      readWithEntries(constructedMap, map, new File(folder, FILE_NAME));
+    } else {
+      readCsv(constructedMap, map, folder);
+    }
+  }
+
+  /**
+   * Copies the map in the binary file into constructedMap, with all the entries of its vertices,
+   * and registers the vertices in map.
+   */
+  public static void readWithEntries(MapGraph constructedMap, VertexRegistry map, File file)
+      throws IOException {
+    MapMerging.readFromMapWithEntries(constructedMap, map, read(file));
+  }
+
+
+  /**
+   * Writes graph into folder, as vertices.txt, edges.txt and graph.bin.
+   */
+  public static void writeMap(MapGraph graph, File folder) throws IOException {
+    writeCsv(graph, folder);
+    write(graph, new File(folder, FILE_NAME));
+  }
+
+  public static void main(String args[]) throws IOException {
+    if (args.length < 2 || !(args[0].equals("toBinary") || args[0].equals("toCsv"))) {
+      System.err.println("usage: GraphFile toBinary|toCsv folder...");
+      System.exit(1);
+    }
+
+    for (int i = 1; i < args.length; i++) {
+      File folder = new File(args[i]);
+
+      if (args[0].equals("toBinary")) {
+        MapGraph graph = new MapGraph();
+
+        readCsv(graph, new VertexRegistry(), folder);
+        write(graph, new File(folder, FILE_NAME));
+      } else {
+        writeCsv(read(new File(folder, FILE_NAME)), folder);
+      }
+    }
+  }
+}
@@ -0,0 +1,415 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: IncrementalUpdate.java
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Inserts the tracks added since the last build into an existing map instead of rebuilding it.
+ *
+ * A map folder written by FullRebuild or IncrementalUpdate has a MANIFEST_NAME file listing the
+ * tracks in the map, one "key trackset/track" per line, where key is the TrackListing key of the
+ * track, a hash of its points, and track is the name of a track file or of a track of a
+ * TrackContainer, only there to be read. An update loads the map with the entries of its
+ * vertices (from graph.bin; the CSV files only keep the online averages), inserts the tracks of
+ * the trackset folders whose key is not in the manifest, as MapConstruction inserts tracks, and
+ * writes the map and the manifest with the new tracks. As the keys don't depend on the names,
+ * the tracks may be exported again, renamed or moved to other tracksets, between updates.
+ *
+ * The map and the manifest are written to a STAGING_NAME folder in the output folder first and
+ * then moved into it, so an update killed while writing leaves either the old map and manifest
+ * or the new ones, never a new map with the old manifest, whose tracks would be inserted twice.
+ * Once all the files are written, a COMMIT_MARKER file is created in the staging folder; an
+ * update finding the marker finishes moving the files, one without it drops the staging folder
+ * (see recover()).
+ *
+ * The process exits with EXIT_OK on success, EXIT_USAGE for bad arguments, EXIT_INPUT when the
+ * map or the tracks can't be read, EXIT_UPDATE when inserting failed and EXIT_OUTPUT when
+ * writing failed.
+ */
+public class IncrementalUpdate {
+
+  public static final String MANIFEST_NAME = "inserted_tracks.txt";
+
+  public static final String STAGING_NAME = "update.tmp";
+  public static final String COMMIT_MARKER = "committed";
+
+  // the files of a map folder, in the order they are moved out of the staging folder
+  private static final String[] MAP_FILES = {"vertices.txt", "edges.txt", GraphFile.FILE_NAME,
+      MANIFEST_NAME};
+
+  public static final int EXIT_OK = 0;
+  public static final int EXIT_USAGE = 1;
+  public static final int EXIT_INPUT = 2;
+  public static final int EXIT_UPDATE = 3;
+  public static final int EXIT_OUTPUT = 4;
+
+  private static final Logger logger = Logger.getAnonymousLogger();
+
+  private static final String LINE_FLUSH = "\r\033[K";
+
+  private final double eps;
+  private final double altEps;
+  private final boolean hasAltitude;
+  private final int parallelism;
+
+  /**
+   * @param parallelism the number of threads computing the first white intervals
+   */
+  public IncrementalUpdate(double eps, double altEps, boolean hasAltitude, int parallelism) {
+    this.eps = eps;
+    this.altEps = altEps;
+    this.hasAltitude = hasAltitude;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  // tolerance of the simplification of the tracks as a multiple of eps, 0 not to simplify them
+  private double simplifyInEps = 0;
+
+  /**
+   * Simplifies the new tracks with a TrackSimplification before they are inserted, as
+   * FullRebuild.setSimplification() does.
+   */
+  public void setSimplification(double simplifyInEps) {
+    this.simplifyInEps = simplifyInEps;
+  }
+
+  // if the tracks are bundled before they are inserted
+  private boolean bundling = false;
+
+  /**
+   * Inserts one representative of every bundle of tracks within eps of each other, as
+   * MapConstruction.setBundling() does.
+   */
+  public void setBundling(boolean bundling) {
+    this.bundling = bundling;
+  }
+
+  /**
+   * Returns the tracks listed in the manifest of folder, from their keys to their names, none if
+   * it has no manifest.
+   */
+  public static Map<String, String> readManifest(File folder) throws IOException {
+    Map<String, String> tracks = new LinkedHashMap<String, String>();
+    File manifest = new File(folder, MANIFEST_NAME);
+
+    if (!manifest.isFile()) {
+      return tracks;
+    }
+
+    BufferedReader in = new BufferedReader(new FileReader(manifest));
+
+    try {
+      String str;
+
+      while ((str = in.readLine()) != null) {
+        if (!str.isEmpty()) {
+          int separator = str.indexOf(' ');
+
+          // the manifests of the first updates only had the names, which change with an export
+          if (separator < 0) {
+            throw new IOException(manifest + " has no track keys, rebuild the map");
+          }
+          tracks.put(str.substring(0, separator), str.substring(separator + 1));
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return tracks;
+  }
+
+  /**
+   * Writes tracks, from their keys to their names, as the manifest of folder, replacing the old
+   * one only once it is complete.
+   */
+  public static void writeManifest(File folder, Map<String, String> tracks) throws IOException {
+    File manifest = new File(folder, MANIFEST_NAME);
+    File temporary = new File(folder, MANIFEST_NAME + ".tmp");
+    BufferedWriter out = new BufferedWriter(new FileWriter(temporary));
+
+    try {
+      for (Map.Entry<String, String> track : tracks.entrySet()) {
+        out.write(track.getKey() + " " + track.getValue() + "\n");
+      }
+    } finally {
+      out.close();
+    }
+
+    replace(temporary, manifest);
+  }
+
+  private static void replace(File source, File target) throws IOException {
+    if (!source.renameTo(target)) {
+      target.delete();
+
+      if (!source.renameTo(target)) {
+        throw new IOException("can't replace " + target);
+      }
+    }
+  }
+
+  /**
+   * Writes graph and the manifest of tracks into folder, through its staging folder, so that
+   * they replace the map and the manifest of folder together.
+   */
+  public static void writeMapAndManifest(MapGraph graph, File folder,
+      Map<String, String> tracks) throws IOException {
+    recover(folder);
+
+    File staging = new File(folder, STAGING_NAME);
+
+    if (!staging.mkdir()) {
+      throw new IOException("can't create " + staging);
+    }
+    GraphFile.writeMap(graph, staging);
+    writeManifest(staging, tracks);
+
+    if (!new File(staging, COMMIT_MARKER).createNewFile()) {
+      throw new IOException("can't create " + new File(staging, COMMIT_MARKER));
+    }
+    recover(folder);
+  }
+
+  /**
+   * Completes or drops an interrupted write of the map of folder: moves the files of its staging
+   * folder into it if they were all written, as told by the commit marker, and deletes the
+   * staging folder.
+   */
+  public static void recover(File folder) throws IOException {
+    File staging = new File(folder, STAGING_NAME);
+
+    if (!staging.isDirectory()) {
+      return;
+    }
+    File marker = new File(staging, COMMIT_MARKER);
+
+    if (marker.isFile()) {
+      for (String name : MAP_FILES) {
+        File file = new File(staging, name);
+
+        if (file.isFile()) {
+          replace(file, new File(folder, name));
+        }
+      }
+    } else {
+      logger.warning("dropping the unfinished map of " + staging);
+    }
+
+    for (File file : staging.listFiles()) {
+      if (!file.getName().equals(COMMIT_MARKER) && !file.delete()) {
+        throw new IOException("can't delete " + file);
+      }
+    }
+
+    // the marker goes last, so that the moves are done again if deleting the rest fails
+    if ((marker.exists() && !marker.delete()) || !staging.delete()) {
+      throw new IOException("can't delete " + staging);
+    }
+  }
+
+  /**
+   * Reads the tracks of the trackset folders in tracksPath whose key is not in inserted, in the
+   * order of TrackListing.list(), and adds their keys and names to added.
+   */
+  public List<PoseFile> readNewTracks(File tracksPath, Set<String> inserted,
+      Map<String, String> added) throws IOException {
+    List<PoseFile> poseFiles = new ArrayList<PoseFile>();
+
+    for (TrackListing listing : TrackListing.list(tracksPath, hasAltitude)) {
+      TrackListing newTracks = listing.without(inserted);
+
+      for (int i = 0; i < newTracks.size(); i++) {
+        added.put(newTracks.getKey(i), newTracks.getName(i));
+      }
+      poseFiles.addAll(newTracks.read(parallelism));
+    }
+    return poseFiles;
+  }
+
+  /**
+   * Inserts tracks into constructedMap, whose vertices are registered in map.
+   */
+  public MapGraph insert(MapGraph constructedMap, VertexRegistry map, List<PoseFile> tracks) {
+    MapConstruction construction = new MapConstruction();
+    construction.setParallelism(parallelism);
+
+    if (simplifyInEps > 0) {
+      construction.setSimplification(new TrackSimplification(simplifyInEps, parallelism));
+    }
+    construction.setBundling(bundling);
+
+    return construction.constructMapMain(constructedMap, map, tracks, eps, altEps);
+  }
+
+  private static int usage(String message) {
+    System.err.println(message);
+    System.err.println("usage: IncrementalUpdate mapPath tracksPath outputPath eps hasAltitude"
+        + " [altEps] [threads] [simplifyInEps] [bundle]");
+    return EXIT_USAGE;
+  }
+
+  /**
+   * Runs the update with the arguments of main().
+   *
+   * @return the exit status
+   */
+  public static int run(String args[]) {
+    if (args.length < 5) {
+      return usage("missing arguments");
+    }
+
+    // path to the folder of the map to update, with its manifest.
+    File mapPath = new File(args[0]);
+
+    // path to the folder that contains one folder of tracks per trackset.
+    File tracksPath = new File(args[1]);
+
+    // path to the folder where the updated map will be written, which may be mapPath.
+    File outputPath = new File(args[2]);
+
+    double eps;
+    double altEps = 4.0;
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    double simplifyInEps = 0;
+
+    try {
+      // epsilon; see the paper for detail
+      eps = Double.parseDouble(args[3]);
+
+      // minimum altitude difference between two streets.
+      if (args.length > 5) {
+        altEps = Double.parseDouble(args[5]);
+      }
+
+      // number of threads computing the first white intervals of the edges
+      if (args.length > 6) {
+        parallelism = Integer.parseInt(args[6]);
+      }
+
+      // tolerance of the simplification of the tracks, as a multiple of eps and altEps
+      if (args.length > 7) {
+        simplifyInEps = Double.parseDouble(args[7]);
+      }
+    } catch (NumberFormatException e) {
+      return usage(e.getMessage());
+    }
+
+    // if the input files contains altitude information
+    boolean hasAltitude = Boolean.parseBoolean(args[4]);
+
+    IncrementalUpdate update = new IncrementalUpdate(eps, altEps, hasAltitude, parallelism);
+    update.setSimplification(simplifyInEps);
+
+    // if tracks within eps of each other are inserted once, with the entries of all of them
+    update.setBundling(args.length > 8 && Boolean.parseBoolean(args[8]));
+
+    MapGraph constructedMap = new MapGraph();
+    // map contains mapping between vertex keys and their indices in
+    // constructedMap
+    VertexRegistry map = new VertexRegistry();
+    Map<String, String> inserted;
+    Map<String, String> added = new LinkedHashMap<String, String>();
+    List<PoseFile> tracks;
+
+    try {
+      System.out.print(LINE_FLUSH + "Reading map...");
+
+      // an update killed while moving the new map into place is finished first
+      recover(mapPath);
+
+      if (!new File(mapPath, "vertices.txt").isFile()
+          && !new File(mapPath, GraphFile.FILE_NAME).isFile()) {
+        throw new IOException("no map found in " + mapPath);
+      }
+      GraphFile.readMapWithEntries(constructedMap, map, mapPath);
+      inserted = readManifest(mapPath);
+
+      System.out.print(LINE_FLUSH + "Reading new tracks...");
+
+      tracks = update.readNewTracks(tracksPath, inserted.keySet(), added);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Reading failed: " + e.getMessage());
+      return EXIT_INPUT;
+    }
+
+    logger.info("map of " + constructedMap.size() + " vertices and " + inserted.size()
+        + " tracks, " + tracks.size() + " new tracks");
+
+    if (tracks.isEmpty() && outputPath.getAbsoluteFile().equals(mapPath.getAbsoluteFile())) {
+      System.out.print(LINE_FLUSH + "Map is up to date!\n");
+      return EXIT_OK;
+    }
+
+    try {
+      constructedMap = update.insert(constructedMap, map, tracks);
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Update failed: " + e.getMessage());
+      return EXIT_UPDATE;
+    }
+
+    try {
+      if (!outputPath.isDirectory() && !outputPath.mkdirs()) {
+        throw new IOException("can't create " + outputPath);
+      }
+
+      System.out.print(LINE_FLUSH + "Exporting updated map...");
+
+      // the map and the manifest are replaced together, so that a failed update inserts the
+      // same tracks again
+      Map<String, String> manifest = new LinkedHashMap<String, String>(inserted);
+      manifest.putAll(added);
+      writeMapAndManifest(constructedMap, outputPath, manifest);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e.toString(), e);
+      System.err.println(LINE_FLUSH + "Export failed: " + e.getMessage());
+      return EXIT_OUTPUT;
+    }
+
+    System.out.print(LINE_FLUSH + "Inserted " + tracks.size() + " new tracks!\n");
+    return EXIT_OK;
+  }
+
+  public static void main(String args[]) {
+    System.exit(run(args));
+  }
+}
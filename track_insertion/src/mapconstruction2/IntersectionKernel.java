@@ -0,0 +1,688 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: IntersectionKernel.java
+ *
+ */
+
+/**
+ * Intersection of a curve segment with the eps-region around an edge, computed on plain
+ * coordinates. This is the computation of Line.pIntersection(Edge, double) step for step, with the
+ * same floating point operations in the same order, so both give bit-identical results, but
+ * nothing is allocated: intermediate and final values are kept in a Scratch which callers reuse,
+ * and everything that depends only on the edge is computed once into a Region.
+ */
+public final class IntersectionKernel {
+
+  /**
+   * Relative amount by which the bounding box of a Region exceeds eps, to absorb rounding.
+   */
+  static final double BOX_SLACK = 1e-6;
+
+  private IntersectionKernel() {}
+
+  /**
+   * Reusable state of one intersection computation. A Scratch must not be shared between threads.
+   */
+  public static final class Scratch {
+
+    // results, valid after intersect() returned true
+    public double curveStart; // start of the white interval on the curve segment
+    public double curveEnd; // end of the white interval on the curve segment
+    public double edgeStart; // position on the edge corresponding to curveStart
+    public double edgeEnd; // position on the edge corresponding to curveEnd
+
+    // curve segment, as the fields of a Line
+    private double cx1, cy1, cxdiff, cydiff, cm, cc, ctheta;
+
+    // last result of disc() or parallel()
+    private double t0, t1;
+
+    // last result of intervals()
+    private double cIntervalStart, cIntervalEnd, neighborhoodStart, neighborhoodEnd;
+
+    /**
+     * Sets curveStart, curveEnd, edgeStart and edgeEnd on edge.
+     */
+    public void applyTo(Edge edge) {
+      edge.setCurveStart(curveStart);
+      edge.setCurveEnd(curveEnd);
+      edge.setEdgeStart(edgeStart);
+      edge.setEdgeEnd(edgeEnd);
+    }
+  }
+
+  /**
+   * The eps-region around an edge: the edge itself and the two lines which, along with the
+   * eps-discs around its endpoints, bound the region, see Line.getEpsilonNeighborhood(). A Region
+   * depends only on the edge and eps, so it can be kept for as long as both don't change.
+   */
+  public static final class Region {
+
+    final double eps;
+
+    // edge segment, as the fields of a Line
+    final double vx1, vy1, vx2, vy2, vxdiff, vydiff, vm, vtheta;
+
+    // the two bounding lines
+    final double ax1, ay1, axdiff, aydiff, am, ac;
+    final double bx1, by1, bxdiff, bydiff, bm, bc;
+
+    // bounding box of the region, see getMinX()
+    final double minX, minY, maxX, maxY;
+
+    public Region(double ex1, double ey1, double ex2, double ey2, double eps) {
+      this.eps = eps;
+
+      double margin = eps * (1 + BOX_SLACK);
+      this.minX = Math.min(ex1, ex2) - margin;
+      this.minY = Math.min(ey1, ey2) - margin;
+      this.maxX = Math.max(ex1, ex2) + margin;
+      this.maxY = Math.max(ey1, ey2) + margin;
+
+      this.vx1 = ex1;
+      this.vy1 = ey1;
+      this.vx2 = ex2;
+      this.vy2 = ey2;
+      this.vxdiff = ex2 - ex1;
+      this.vydiff = ey2 - ey1;
+      this.vm = slope(this.vxdiff, this.vydiff);
+      this.vtheta = theta(this.vxdiff, this.vydiff);
+
+      double dTheta;
+      if (this.vxdiff != 0) {
+        dTheta = Math.atan(this.vm) + Math.PI / 2.0;
+      } else if (this.vydiff > 0.0) {
+        dTheta = Math.PI / 2.0;
+      } else {
+        dTheta = -Math.PI / 2.0;
+      }
+      double dx = eps * Math.cos(dTheta);
+      double dy = eps * Math.sin(dTheta);
+
+      double x1 = ex1 - dx;
+      double y1 = ey1 - dy;
+      double x2 = ex2 - dx;
+      double y2 = ey2 - dy;
+
+      this.ax1 = x1;
+      this.ay1 = y1;
+      this.axdiff = x2 - x1;
+      this.aydiff = y2 - y1;
+      double am = slope(this.axdiff, this.aydiff);
+      this.ac = intercept(x1, y1, x2, y2, am, this.axdiff);
+
+      x1 = ex1 + dx;
+      y1 = ey1 + dy;
+      x2 = ex2 + dx;
+      y2 = ey2 + dy;
+
+      this.bx1 = x1;
+      this.by1 = y1;
+      this.bxdiff = x2 - x1;
+      this.bydiff = y2 - y1;
+      this.bm = slope(this.bxdiff, this.bydiff);
+      this.bc = intercept(x1, y1, x2, y2, this.bm, this.bxdiff);
+
+      // the first line takes the slope of the second one, but keeps its own y-intersect
+      this.am = (am != this.bm) ? this.bm : am;
+    }
+
+    public double getEps() {
+      return eps;
+    }
+
+    /**
+     * The bounding box of the edge expanded by slightly more than eps. A curve segment which
+     * doesn't cross this box never intersects the region.
+     */
+    public double getMinX() {
+      return minX;
+    }
+
+    public double getMinY() {
+      return minY;
+    }
+
+    public double getMaxX() {
+      return maxX;
+    }
+
+    public double getMaxY() {
+      return maxY;
+    }
+  }
+
+  /**
+   * Angle between the x-axis and a segment in degrees, as computed by the Line constructor.
+   */
+  static double theta(double xdiff, double ydiff) {
+    if (xdiff != 0.0) {
+      double angle1 = (xdiff * 1.0 + ydiff * 0.0 + 0.0 * 0.0)
+          / Math.sqrt(Math.pow(xdiff, 2) + Math.pow(ydiff, 2) + Math.pow(0.0, 2));
+      double cosAngle1 = Math.acos(angle1);
+      if (ydiff >= 0) {
+        return Math.toDegrees(cosAngle1);
+      } else {
+        return -1 * Math.toDegrees(cosAngle1);
+      }
+    } else if (ydiff > 0.0) {
+      return Math.toDegrees(Math.PI / 2.0);
+    } else {
+      return -Math.toDegrees(Math.PI / 2.0);
+    }
+  }
+
+  /**
+   * Slope of a segment, as computed by the Line constructor.
+   */
+  static double slope(double xdiff, double ydiff) {
+    return (xdiff != 0.0) ? ydiff / xdiff : 0.0;
+  }
+
+  /**
+   * y-intersect of a segment, as computed by the Line constructor.
+   */
+  static double intercept(double x1, double y1, double x2, double y2, double m, double xdiff) {
+    return (xdiff != 0.0) ? ((y1 + y2) - m * (x1 + x2)) / 2.0 : 0.0;
+  }
+
+  /**
+   * Intersection of the eps-disc around (px, py) with the line through (x1, y1) with direction
+   * (xdiff, ydiff), see Line.pIntersection(Vertex, double, boolean). Leaves the parameters in
+   * s.t0 <= s.t1.
+   *
+   * @return false when they don't intersect
+   */
+  private static boolean disc(double x1, double y1, double xdiff, double ydiff, double px,
+      double py, double eps, boolean precisionCompromise, Scratch s) {
+    double t0;
+    double t1;
+    double b = 2 * ((x1 - px) * xdiff + (y1 - py) * ydiff);
+    double c = (x1 - px) * (x1 - px) + (y1 - py) * (y1 - py) - eps * eps;
+    double a = xdiff * xdiff + ydiff * ydiff;
+
+    if (a == 0) {
+      return false;
+    }
+
+    double determinant = b * b - 4 * a * c;
+    if (determinant >= 0) {
+      t1 = (-b + Math.sqrt(determinant)) / (2 * a);
+      t0 = (-b - Math.sqrt(determinant)) / (2 * a);
+    } else if (precisionCompromise) {
+      double newEps = eps + 0.1;
+      double newC = (x1 - px) * (x1 - px) + (y1 - py) * (y1 - py) - newEps * newEps;
+      double newDeterminant = b * b - 4 * a * newC;
+      if (newDeterminant >= 0) {
+        t1 = (-b + Math.sqrt(newDeterminant)) / (2 * a);
+        t0 = (-b - Math.sqrt(newDeterminant)) / (2 * a);
+      } else {
+        return false;
+      }
+    } else {
+      return false;
+    }
+
+    s.t0 = Math.min(t0, t1);
+    s.t1 = Math.max(t0, t1);
+    return true;
+  }
+
+  /**
+   * Intersection of the eps-disc around the point at parameter t of the curve segment with the
+   * edge, as used by Line.pIntersection(Edge, double).
+   */
+  private static boolean edgeDisc(double t, double eps, Region r, Scratch s) {
+    return disc(r.vx1, r.vy1, r.vxdiff, r.vydiff, s.cx1 + s.cxdiff * t, s.cy1 + s.cydiff * t,
+        eps, true, s);
+  }
+
+  /**
+   * Intersections of the curve segment with the two bounding lines, see Line.getIntervals().
+   */
+  private static void intervals(Region r, Scratch s) {
+    double cIntervalStart;
+    double cIntervalEnd;
+    double neighborhoodStart;
+    double neighborhoodEnd;
+
+    if (r.axdiff == 0.0) {
+      // when the edge is a vertical line
+      cIntervalStart = s.cm * r.ax1 + s.cc;
+      cIntervalEnd = s.cm * r.bx1 + s.cc;
+
+      neighborhoodStart = (cIntervalStart - r.ay1) / r.aydiff;
+      neighborhoodEnd = (cIntervalEnd - r.by1) / r.bydiff;
+      if (s.cydiff != 0.0) {
+        cIntervalStart = (cIntervalStart - s.cy1) / s.cydiff;
+        cIntervalEnd = (cIntervalEnd - s.cy1) / s.cydiff;
+      } else {
+        cIntervalStart = (r.ax1 - s.cx1) / s.cxdiff;
+        cIntervalEnd = (r.bx1 - s.cx1) / s.cxdiff;
+      }
+
+    } else if (s.cxdiff == 0.0) {
+      // when the curve segment is a vertical line
+      cIntervalStart = r.am * s.cx1 + r.ac;
+      cIntervalEnd = r.bm * s.cx1 + r.bc;
+
+      if (r.aydiff != 0.0) {
+        neighborhoodStart = (cIntervalStart - r.ay1) / r.aydiff;
+        neighborhoodEnd = (cIntervalEnd - r.by1) / r.bydiff;
+      } else {
+        neighborhoodStart = (s.cx1 - r.ax1) / r.axdiff;
+        neighborhoodEnd = (s.cx1 - r.bx1) / r.bxdiff;
+      }
+      cIntervalStart = (cIntervalStart - s.cy1) / s.cydiff;
+      cIntervalEnd = (cIntervalEnd - s.cy1) / s.cydiff;
+    } else {
+
+      cIntervalStart = -(s.cc - r.ac) / (s.cm - r.am);
+      cIntervalEnd = -(s.cc - r.bc) / (s.cm - r.bm);
+
+      neighborhoodStart = (cIntervalStart - r.ax1) / r.axdiff;
+      neighborhoodEnd = (cIntervalEnd - r.bx1) / r.bxdiff;
+
+      cIntervalStart = (cIntervalStart - s.cx1) / s.cxdiff;
+      cIntervalEnd = (cIntervalEnd - s.cx1) / s.cxdiff;
+    }
+    s.cIntervalStart = cIntervalStart;
+    s.cIntervalEnd = cIntervalEnd;
+    s.neighborhoodStart = neighborhoodStart;
+    s.neighborhoodEnd = neighborhoodEnd;
+  }
+
+  /**
+   * Intersection of the eps-region of the edge with the curve segment when both are parallel, see
+   * Line.getTParallel(). Leaves the parameters on the curve segment in s.t0 <= s.t1.
+   *
+   * @return false when they don't intersect
+   */
+  private static boolean parallel(double cx2, double cy2, double eps, Region r,
+      Scratch s) {
+    double newm;
+    double x1, y1, x2, y2;
+    if (Math.abs(r.vtheta) == Math.PI / 2) {
+      newm = 0;
+      x1 = s.cx1;
+      y1 = r.vy1;
+      x2 = cx2;
+      y2 = r.vy2;
+    } else if (Math.abs(r.vtheta) == 0) {
+      newm = 0;
+      x1 = r.vx1;
+      y1 = s.cy1;
+      x2 = r.vx2;
+      y2 = cy2;
+    } else {
+      newm = 1 / r.vm;
+      double c1 = r.vy1 + newm * r.vx1;
+      double c2 = r.vy2 + newm * r.vx2;
+
+      x1 = (c1 - s.cc) / (s.cm + newm);
+      y1 = s.cm * x1 + s.cc;
+
+      x2 = (c2 - s.cc) / (s.cm + newm);
+      y2 = s.cm * x2 + s.cc;
+    }
+
+    if (Math.sqrt((r.vx1 - x1) * (r.vx1 - x1) + (r.vy1 - y1) * (r.vy1 - y1)) > eps) {
+      return false;
+    }
+
+    double intersection1;
+    double intersection2;
+
+    if (s.cxdiff != 0.0) {
+      intersection1 = (x1 - s.cx1) / s.cxdiff;
+      intersection2 = (x2 - s.cx1) / s.cxdiff;
+    } else {
+      intersection1 = (y1 - s.cy1) / s.cydiff;
+      intersection2 = (y2 - s.cy1) / s.cydiff;
+    }
+    double t0 = Math.min(intersection1, intersection2);
+    double t1 = Math.max(intersection1, intersection2);
+
+    if (t1 < 0 || t0 > 1) {
+      return false;
+    }
+
+    s.t0 = Math.max(t0, 0);
+    s.t1 = Math.min(t1, 1);
+    return true;
+  }
+
+  /**
+   * Computes the intersection of the curve segment from (x1, y1) to (x2, y2) with the eps-region
+   * around the edge from (ex1, ey1) to (ex2, ey2), like Line.pIntersection(Edge, double) does.
+   *
+   * @return true when they intersect, the interval is then in s.curveStart, s.curveEnd,
+   *         s.edgeStart and s.edgeEnd, or false when they don't
+   */
+  public static boolean intersect(double x1, double y1, double x2, double y2, double ex1,
+      double ey1, double ex2, double ey2, double eps, Scratch s) {
+    return intersect(x1, y1, x2, y2, new Region(ex1, ey1, ex2, ey2, eps), s);
+  }
+
+  /**
+   * Computes the intersection of the curve segment from (x1, y1) to (x2, y2) with region.
+   *
+   * @return true when they intersect, the interval is then in s.curveStart, s.curveEnd,
+   *         s.edgeStart and s.edgeEnd, or false when they don't
+   */
+  public static boolean intersect(double x1, double y1, double x2, double y2, Region r,
+      Scratch s) {
+    double xdiff = x2 - x1;
+    double ydiff = y2 - y1;
+    double m = slope(xdiff, ydiff);
+
+    return intersect(x1, y1, x2, y2, m, intercept(x1, y1, x2, y2, m, xdiff),
+        theta(xdiff, ydiff), r, s);
+  }
+
+  /**
+   * Same as intersect(x1, y1, x2, y2, r, s), for a curve segment whose slope m, y-intersect c and
+   * theta have already been computed with slope(), intercept() and theta().
+   */
+  public static boolean intersect(double x1, double y1, double x2, double y2, double m,
+      double c, double theta, Region r, Scratch s) {
+    double eps = r.eps;
+
+    s.cx1 = x1;
+    s.cy1 = y1;
+    s.cxdiff = x2 - x1;
+    s.cydiff = y2 - y1;
+    s.cm = m;
+    s.cc = c;
+    s.ctheta = theta;
+
+    double cIntervalStart;
+    double cIntervalEnd;
+    double neighborhoodStart;
+    double neighborhoodEnd;
+
+    double vstart = -1;
+    double vend = -1;
+
+    if (Math.abs(s.ctheta - r.vtheta) == 0
+        || Math.abs(s.ctheta - r.vtheta) == 180.0) {// For parallel lines
+
+      if (!parallel(x2, y2, eps, r, s)) {
+        return false;
+      }
+
+      cIntervalStart = s.t0;
+      cIntervalEnd = s.t1;
+
+      if (!edgeDisc(cIntervalStart, eps, r, s)) {
+        return false;
+      }
+      neighborhoodStart = (s.t0 + s.t1) / 2.0;
+      if (!edgeDisc(cIntervalEnd, eps, r, s)) {
+        return false;
+      }
+      neighborhoodEnd = (s.t0 + s.t1) / 2.0;
+
+    } else {
+      intervals(r, s);
+      cIntervalStart = s.cIntervalStart;
+      cIntervalEnd = s.cIntervalEnd;
+      neighborhoodStart = s.neighborhoodStart;
+      neighborhoodEnd = s.neighborhoodEnd;
+    }
+
+
+    if (cIntervalStart > cIntervalEnd) {
+      double temp = cIntervalStart;
+      cIntervalStart = cIntervalEnd;
+      cIntervalEnd = temp;
+
+      temp = neighborhoodStart;
+      neighborhoodStart = neighborhoodEnd;
+      neighborhoodEnd = temp;
+    }
+
+    // computing intersection with endpoint p1
+
+    boolean interval1 = disc(s.cx1, s.cy1, s.cxdiff, s.cydiff, r.vx1, r.vy1, eps, false, s);
+    double interval10 = s.t0;
+    double interval11 = s.t1;
+
+    // computing intersection with endpoint p2
+
+    boolean interval2 = disc(s.cx1, s.cy1, s.cxdiff, s.cydiff, r.vx2, r.vy2, eps, false, s);
+    double interval20 = s.t0;
+    double interval21 = s.t1;
+
+    double minInterval1 = 0;
+    double minInterval2 = 0;
+    double maxInterval1 = 1;
+    double maxInterval2 = 1;
+
+
+    // line doesn't intersect either of the eps-disc at end points
+
+    if (!interval1 && !interval2) {
+
+      // intersection of line and eps-neighborhood of e is non-empty
+      if (cIntervalStart > 1 || cIntervalEnd < 0) {
+        return false;
+      }
+
+      // intersection of line and eps-neighborhood of e is empty
+      if ((neighborhoodStart > 1 && neighborhoodEnd > 1)
+          || (neighborhoodStart < 0 && neighborhoodEnd < 0)) {
+        return false;
+      }
+
+      // intersection needs to be in the eps-region
+      if (neighborhoodStart >= 0 && neighborhoodStart <= 1 && neighborhoodEnd >= 0
+          && neighborhoodEnd <= 1) {
+        cIntervalStart = Math.max(0, cIntervalStart);
+        cIntervalEnd = Math.min(1, cIntervalEnd);
+      } else {
+        return false;
+      }
+    }
+    // line doesn't intersect with eps-disc of first endpoint
+
+    if (interval1) {
+      minInterval1 = Math.min(interval10, interval11);
+      maxInterval1 = Math.max(interval10, interval11);
+
+      if (((neighborhoodStart > 1 && neighborhoodEnd > 1)
+          || (neighborhoodStart < 0 && neighborhoodEnd < 0))
+          && (minInterval1 > 1 || maxInterval1 < 0)) {
+        return false;
+      }
+      if (neighborhoodStart < 0) {
+        if (minInterval1 <= 1) {
+          cIntervalStart = Math.max(cIntervalStart, minInterval1);
+        }
+        if (cIntervalStart == minInterval1) {
+          vstart = 0;
+        }
+      }
+
+      if (neighborhoodEnd < 0) {
+        if (maxInterval1 >= 0) {
+          cIntervalEnd = Math.min(cIntervalEnd, maxInterval1);
+        }
+        if (cIntervalEnd == maxInterval1) {
+          vend = 0;
+        }
+      }
+    }
+
+    // line doesn't intersect with eps-disc of second end point
+
+    if (interval2) {
+
+      minInterval2 = Math.min(interval20, interval21);
+      maxInterval2 = Math.max(interval20, interval21);
+
+      if (((neighborhoodStart > 1 && neighborhoodEnd > 1)
+          || (neighborhoodStart < 0 && neighborhoodEnd < 0))
+          && (minInterval2 > 1 || maxInterval2 < 0)) {
+        return false;
+      }
+
+      if (neighborhoodStart > 1) {
+        if (minInterval2 <= 1) {
+          cIntervalStart = Math.max(cIntervalStart, minInterval2);
+        }
+        if (cIntervalStart == minInterval2) {
+          vstart = 1;
+        }
+      }
+
+      if (neighborhoodEnd > 1) {
+        if (maxInterval2 >= 0) {
+          cIntervalEnd = Math.min(cIntervalEnd, maxInterval2);
+        }
+        if (cIntervalEnd == maxInterval2) {
+          vend = 1;
+        }
+      }
+    }
+
+    if (!interval1 && interval2) {
+      if (!(neighborhoodStart >= 0 && neighborhoodStart <= 1 && neighborhoodEnd >= 0
+          && neighborhoodEnd <= 1)) {
+        if (neighborhoodStart >= 0 && neighborhoodStart <= 1) {
+          if (cIntervalStart > 1 && minInterval2 > 1) {
+            return false;
+          }
+          if (cIntervalStart < 0 && maxInterval2 < 0) {
+            return false;
+          }
+        }
+        if (neighborhoodEnd >= 0 && neighborhoodEnd <= 1) {
+          if (cIntervalEnd > 1 && minInterval2 > 1) {
+            return false;
+          }
+          if (cIntervalEnd < 0 && maxInterval2 < 0) {
+            return false;
+          }
+        }
+      }
+    }
+    if (interval1 && !interval2) {
+      if (!(neighborhoodStart >= 0 && neighborhoodStart <= 1 && neighborhoodEnd >= 0
+          && neighborhoodEnd <= 1)) {
+
+        if (neighborhoodStart >= 0 && neighborhoodStart <= 1) {
+          if (cIntervalStart > 1 && minInterval1 > 1) {
+            return false;
+          }
+          if (cIntervalStart < 0 && maxInterval1 < 0) {
+            return false;
+          }
+        }
+        if (neighborhoodEnd >= 0 && neighborhoodEnd <= 1) {
+          if (cIntervalEnd > 1 && minInterval1 > 1) {
+            return false;
+          }
+          if (cIntervalEnd < 0 && maxInterval1 < 0) {
+            return false;
+          }
+        }
+      }
+    }
+
+    if (cIntervalStart > cIntervalEnd) {
+      double temp = cIntervalStart;
+      cIntervalStart = cIntervalEnd;
+      cIntervalEnd = temp;
+
+      temp = vend;
+      vend = vstart;
+      vstart = temp;
+    }
+
+    if (cIntervalStart > 1 || cIntervalEnd < 0) {
+      return false;
+    }
+
+    if (Math.max(maxInterval1, maxInterval2) < 0 || Math.min(minInterval1, minInterval2) > 1) {
+      return false;
+    }
+
+    setInterval(eps, cIntervalStart, cIntervalEnd, vstart, vend, r, s);
+
+    return true;
+  }
+
+  /**
+   * Computes the positions on the edge which correspond to the interval on the curve segment, see
+   * Line.setIntervalOnEdge().
+   */
+  private static void setInterval(double eps, double cIntervalStart, double cIntervalEnd,
+      double vstart, double vend, Region r, Scratch s) {
+    double interval0 = Math.max(0, cIntervalStart);
+
+    if (vstart == -1) {
+
+      if (!edgeDisc(interval0, eps, r, s)) {
+        throw new RuntimeException();
+      }
+
+      if (s.t0 >= 0 && s.t0 <= 1 && s.t1 >= 0 && s.t1 <= 1) {
+        vstart = (s.t0 + s.t1) / 2;
+      } else if (s.t0 >= 0 && s.t0 <= 1) {
+        vstart = s.t0;
+      } else if (s.t1 >= 0 && s.t1 <= 1) {
+        vstart = s.t1;
+      } else {
+        vstart = 0;
+      }
+    }
+
+    double interval1 = Math.min(1, cIntervalEnd);
+
+    if (vend == -1) {
+
+      if (!edgeDisc(interval1, eps, r, s)) {
+        throw new RuntimeException();
+      }
+
+      if (s.t0 >= 0 && s.t0 <= 1 && s.t1 >= 0 && s.t1 <= 1) {
+        vend = (s.t0 + s.t1) / 2;
+      } else if (s.t0 >= 0 && s.t0 <= 1) {
+        vend = s.t0;
+      } else if (s.t1 >= 0 && s.t1 <= 1) {
+        vend = s.t1;
+      } else {
+        vend = 1;
+      }
+    }
+
+    s.curveStart = interval0;
+    s.curveEnd = interval1;
+    s.edgeStart = vstart;
+    s.edgeEnd = vend;
+  }
+}
@@ -358,237 +358,22 @@ public class Line {
    */
   // TODO(mahmuda): Add unit test for this method.
   public boolean pIntersection(Edge e, double eps) {
+    return this.pIntersection(e, eps, new IntersectionKernel.Scratch());
+  }
 
-    /*
-     * Line 1: x1+(x2-x1)*t = x y1+(y2-y1)*t = y
-     *
-     * Line 2: y = mx + c
-     *
-     * y1+(y2-y1)*t = (x1+(x2-x1)*t)*m + c (y2-y1)*t - (x2-x1)*t*m = x1*m + c- y1
-     *
-     * t = (x1*m + c - y1)/((y2-y1)-(x2-x1)*m)
-     */
-
-    Line vline = e.getLine();
-
-    Line lines[] = Line.getEpsilonNeighborhood(vline, eps);
-    double cIntervalStart;
-    double cIntervalEnd;
-    double neighborhoodStart;
-    double neighborhoodEnd;
-
-    double vstart = -1;
-    double vend = -1;
-
-    if (Math.abs(this.theta - vline.getTheta()) == 0
-        || Math.abs(this.theta - vline.getTheta()) == 180.0) {// For parallel lines
-
-      double t[] = this.getTParallel(vline, eps);
-
-      if (t == null) {
-        return false;
-      }
-
-      cIntervalStart = t[0];
-      cIntervalEnd = t[1];
-
-      t = vline.pIntersection(this.getVertex(cIntervalStart), eps, true);
-      if (t == null) {
-        return false;
-      }
-      neighborhoodStart = (t[0] + t[1]) / 2.0;
-      t = vline.pIntersection(this.getVertex(cIntervalEnd), eps, true);
-      if (t == null) {
-        return false;
-      }
-      neighborhoodEnd = (t[0] + t[1]) / 2.0;
-
-    } else {
-      double[] temp = getIntervals(lines);
-      cIntervalStart = temp[0];
-      cIntervalEnd = temp[1];
-      neighborhoodStart = temp[2];
-      neighborhoodEnd = temp[3];
-    }
-
-
-    if (cIntervalStart > cIntervalEnd) {
-      double temp = cIntervalStart;
-      cIntervalStart = cIntervalEnd;
-      cIntervalEnd = temp;
-
-      temp = neighborhoodStart;
-      neighborhoodStart = neighborhoodEnd;
-      neighborhoodEnd = temp;
-    }
-
-
-    // computing intersection with endpoint p1
-
-    double[] interval1 = this.pIntersection(vline.getP1(), eps, false);
-
-    // computing intersection with endpoint p2
-
-    double[] interval2 = this.pIntersection(vline.getP2(), eps, false);
-
-    double minInterval1 = 0;
-    double minInterval2 = 0;
-    double maxInterval1 = 1;
-    double maxInterval2 = 1;
-
-
-    // line doesn't intersect either of the eps-disc at end points
-
-    if (interval1 == null && interval2 == null) {
-
-      // intersection of line and eps-neighborhood of e is non-empty
-      if (cIntervalStart > 1 || cIntervalEnd < 0) {
-        return false;
-      }
-
-      // intersection of line and eps-neighborhood of e is empty
-      if ((neighborhoodStart > 1 && neighborhoodEnd > 1)
-          || (neighborhoodStart < 0 && neighborhoodEnd < 0)) {
-        return false;
-      }
-
-      // intersection needs to be in the eps-region
-      if (neighborhoodStart >= 0 && neighborhoodStart <= 1 && neighborhoodEnd >= 0
-          && neighborhoodEnd <= 1) {
-        cIntervalStart = Math.max(0, cIntervalStart);
-        cIntervalEnd = Math.min(1, cIntervalEnd);
-      } else {
-        return false;
-      }
-    }
-    // line doesn't intersect with eps-disc of first endpoint
-
-    if (interval1 != null) {
-      minInterval1 = Math.min(interval1[0], interval1[1]);
-      maxInterval1 = Math.max(interval1[0], interval1[1]);
-
-      if (((neighborhoodStart > 1 && neighborhoodEnd > 1)
-          || (neighborhoodStart < 0 && neighborhoodEnd < 0))
-          && (minInterval1 > 1 || maxInterval1 < 0)) {
-        return false;
-      }
-      if (neighborhoodStart < 0) {
-        if (minInterval1 <= 1) {
-          cIntervalStart = Math.max(cIntervalStart, minInterval1);
-        }
-        if (cIntervalStart == minInterval1) {
-          vstart = 0;
-        }
-      }
-
-      if (neighborhoodEnd < 0) {
-        if (maxInterval1 >= 0) {
-          cIntervalEnd = Math.min(cIntervalEnd, maxInterval1);
-        }
-        if (cIntervalEnd == maxInterval1) {
-          vend = 0;
-        }
-      }
-    }
-
-    // line doesn't intersect with eps-disc of second end point
-
-    if (interval2 != null) {
-
-      minInterval2 = Math.min(interval2[0], interval2[1]);
-      maxInterval2 = Math.max(interval2[0], interval2[1]);
-
-      if (((neighborhoodStart > 1 && neighborhoodEnd > 1)
-          || (neighborhoodStart < 0 && neighborhoodEnd < 0))
-          && (minInterval2 > 1 || maxInterval2 < 0)) {
-        return false;
-      }
-
-      if (neighborhoodStart > 1) {
-        if (minInterval2 <= 1) {
-          cIntervalStart = Math.max(cIntervalStart, minInterval2);
-        }
-        if (cIntervalStart == minInterval2) {
-          vstart = 1;
-        }
-      }
-
-      if (neighborhoodEnd > 1) {
-        if (maxInterval2 >= 0) {
-          cIntervalEnd = Math.min(cIntervalEnd, maxInterval2);
-        }
-        if (cIntervalEnd == maxInterval2) {
-          vend = 1;
-        }
-      }
-    }
-
-    if (interval1 == null && interval2 != null) {
-      if (!(neighborhoodStart >= 0 && neighborhoodStart <= 1 && neighborhoodEnd >= 0
-          && neighborhoodEnd <= 1)) {
-        if (neighborhoodStart >= 0 && neighborhoodStart <= 1) {
-          if (cIntervalStart > 1 && minInterval2 > 1) {
-            return false;
-          }
-          if (cIntervalStart < 0 && maxInterval2 < 0) {
-            return false;
-          }
-        }
-        if (neighborhoodEnd >= 0 && neighborhoodEnd <= 1) {
-          if (cIntervalEnd > 1 && minInterval2 > 1) {
-            return false;
-          }
-          if (cIntervalEnd < 0 && maxInterval2 < 0) {
-            return false;
-          }
-        }
-      }
-    }
-    if (interval1 != null && interval2 == null) {
-      if (!(neighborhoodStart >= 0 && neighborhoodStart <= 1 && neighborhoodEnd >= 0
-          && neighborhoodEnd <= 1)) {
-
-        if (neighborhoodStart >= 0 && neighborhoodStart <= 1) {
-          if (cIntervalStart > 1 && minInterval1 > 1) {
-            return false;
-          }
-          if (cIntervalStart < 0 && maxInterval1 < 0) {
-            return false;
-          }
-        }
-        if (neighborhoodEnd >= 0 && neighborhoodEnd <= 1) {
-          if (cIntervalEnd > 1 && minInterval1 > 1) {
-            return false;
-          }
-          if (cIntervalEnd < 0 && maxInterval1 < 0) {
-            return false;
-          }
-        }
-      }
-    }
-
-    if (cIntervalStart > cIntervalEnd) {
-      double temp = cIntervalStart;
-      cIntervalStart = cIntervalEnd;
-      cIntervalEnd = temp;
-
-      temp = vend;
-      vend = vstart;
-      vstart = temp;
-    }
-
-    if (cIntervalStart > 1 || cIntervalEnd < 0) {
-      return false;
-    }
-
-    if (Math.max(maxInterval1, maxInterval2) < 0 || Math.min(minInterval1, minInterval2) > 1) {
+  /**
+   * Same as pIntersection(e, eps), using scratch for the intermediate values, see
+   * {@link IntersectionKernel}.
+   */
+  public boolean pIntersection(Edge e, double eps, IntersectionKernel.Scratch scratch) {
+    if (!IntersectionKernel.intersect(this.p1.getX(), this.p1.getY(), this.p2.getX(),
+        this.p2.getY(), e.getRegion(eps), scratch)) {
       return false;
     }
 
-    this.setIntervalOnEdge(e, eps, cIntervalStart, cIntervalEnd, vstart, vend);
+    scratch.applyTo(e);
 
     return true;
-
   }
 
   /**
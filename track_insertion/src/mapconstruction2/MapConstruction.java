@@ -27,11 +27,8 @@ package mapconstruction2;
  *
  */
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -39,165 +36,129 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
-import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * 
- * An object that represents a track.
- * 
+ * An object that takes a set of poses as input, construct graph and write two
+ * files one for vertices and one for edges.
  */
-class PoseFile {
-	String fileName;
-	ArrayList<Vertex> curve;
-	double minX;
-	double minY;
-	double maxX;
-	double maxY;
-
-	PoseFile() {
-		this.fileName = "";
-		this.curve = new ArrayList<Vertex>();
-
-		minX = minY = Double.POSITIVE_INFINITY;
-		maxX = maxY = Double.NEGATIVE_INFINITY;
-	}
+public class MapConstruction implements ParallelIntervals.Scanner {
 
-	PoseFile(String curveName, ArrayList<Vertex> curve) {
-		this.fileName = curveName;
-		this.curve = curve;
+	public static int curveid; // counter for pose
+	public static String curveName; // file name for the pose
 
-		minX = minY = Double.POSITIVE_INFINITY;
-		maxX = maxY = Double.NEGATIVE_INFINITY;
-	}
+	private static final Logger logger = Logger.getAnonymousLogger();
 
-	public String getFileName() {
-		return fileName;
-	}
+	private static final String LINE_FLUSH = "\r\033[K";
+
+	// scratch space of the eps-region intersections computed by isWhiteInterval
+	private final IntersectionKernel.Scratch scratch = new IntersectionKernel.Scratch();
+
+	// cheap tests run before the exact test in isWhiteInterval, with their counters
+	private final SegmentFilter filter = new SegmentFilter();
+
+	// runs the computation of the first white intervals of all edges
+	private ParallelIntervals intervals = new ParallelIntervals(
+			Runtime.getRuntime().availableProcessors());
 
-	public ArrayList<Vertex> getPose() {
-		return curve;
+	/**
+	 * Sets the number of threads computing the first white intervals, 1 to
+	 * compute them on the calling thread.
+	 */
+	public void setParallelism(int parallelism) {
+		this.intervals.shutdown();
+		this.intervals = new ParallelIntervals(parallelism);
 	}
 
-	public double getLength() {
-		double length = 0;
-		for (int i = 1; i < curve.size(); i++) {
-			length = length + curve.get(i - 1).dist(curve.get(i));
-		}
-		return length;
+	// number of track files read at the same time by readAllFiles
+	private int readParallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Sets the number of track files read at the same time, 1 to read them on
+	 * the calling thread.
+	 */
+	public void setReadParallelism(int readParallelism) {
+		this.readParallelism = readParallelism;
 	}
 
-	public boolean enclosesVertex(Vertex v) {
-		return (v.getX() >= minX) && (v.getX() <= maxX) && (v.getY() >= minY) && (v.getY() <= maxY);
+	// saves the map every few tracks, null not to save it
+	private Checkpoint checkpoint = null;
+	private boolean resume = false;
+
+	/**
+	 * Saves the map into checkpoint every few tracks while constructMapMain
+	 * runs, and starts from the saved map if resume and there is one.
+	 */
+	public void setCheckpoint(Checkpoint checkpoint, boolean resume) {
+		this.checkpoint = checkpoint;
+		this.resume = resume;
 	}
 
-	public static PoseFile readFile(File inputFile, boolean hasAltitude) {
-		PoseFile poseFile = new PoseFile();
-		poseFile.fileName = inputFile.getName();
-		String str = "";
+	// if constructMapMain skips the tracks that throw, which needs a checkpoint
+	private boolean skipFailingTracks = false;
 
-		try {
-			BufferedReader in = new BufferedReader(new FileReader(
-					inputFile.getAbsolutePath()));
-			double x, y, z;
-
-			while ((str = in.readLine()) != null) {
-				StringTokenizer strToken = new StringTokenizer(str);
-				// strToken.nextToken();
-				// track file in "x y timestamp" or "x y z timestamp" format
-
-				x = Double.parseDouble(strToken.nextToken());
-				y = Double.parseDouble(strToken.nextToken());
-
-				if (hasAltitude) {
-					z = Double.parseDouble(strToken.nextToken());
-				} else {
-					z = 0.0;
-				}
+	// names of the tracks skipped by the last constructMapMain
+	private final List<String> skippedTracks = new ArrayList<String>();
 
-				double timestamp = Double.parseDouble(strToken.nextToken());
-				boolean online = Boolean.parseBoolean(strToken.nextToken());
+	public void setSkipFailingTracks(boolean skipFailingTracks) {
+		this.skipFailingTracks = skipFailingTracks;
+	}
 
-				Vertex newPoint = new Vertex(x, y, z, timestamp);
-				newPoint.addEntry(online ? 1.0 : 0.0);
+	public List<String> getSkippedTracks() {
+		return skippedTracks;
+	}
 
-				if (poseFile.curve.size() > 0) {
-					Vertex lastPoint = poseFile.curve.get(poseFile.curve.size() - 1);
+	// index of the pose constructMapMain is inserting, for the JFR events; the
+	// static curveid is shared by all the instances running at the same time
+	private int track;
 
-					if (newPoint.dist(lastPoint) < 0.001) {
-						poseFile.curve.remove(poseFile.curve.size() - 1);
-						newPoint = (new Line(lastPoint, newPoint)).getVertex(0.5);
-					}
-				}
+	// if the pose is inserted again after going back to a checkpoint, which
+	// writes no metrics and emits no JFR events, as it did the first time
+	private boolean replaying = false;
 
-				poseFile.curve.add(newPoint);
+	// counters of every track inserted by constructMapMain, null not to count
+	private TrackMetrics metrics = null;
 
-				poseFile.minX = Math.min(poseFile.minX, newPoint.getX());
-		    poseFile.minY = Math.min(poseFile.minY, newPoint.getY());
-		    poseFile.maxX = Math.max(poseFile.maxX, newPoint.getX());
-		    poseFile.maxY = Math.max(poseFile.maxY, newPoint.getY());
-			}
+	public void setMetrics(TrackMetrics metrics) {
+		this.metrics = metrics;
+	}
 
-			poseFile.minX -= 0.1;
-			poseFile.minY -= 0.1;
-			poseFile.maxX += 0.1;
-			poseFile.maxY += 0.1;
+	// simplifies the poses before constructMapMain inserts them, null to insert
+	// them as they are read
+	private TrackSimplification simplification = null;
 
-			in.close();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		return poseFile;
+	public void setSimplification(TrackSimplification simplification) {
+		this.simplification = simplification;
 	}
-}
 
-/**
- * An object that takes a set of poses as input, construct graph and write two
- * files one for vertices and one for edges.
- */
-public class MapConstruction {
+	// if constructMapMain inserts one representative of every bundle of tracks
+	// within eps of each other instead of every track
+	private boolean bundling = false;
 
-	public static int curveid; // counter for pose
-	public static String curveName; // file name for the pose
+	public void setBundling(boolean bundling) {
+		this.bundling = bundling;
+	}
 
-	private static final Logger logger = Logger.getAnonymousLogger();
+	// if readAllFiles and constructMapMain print their progress on the console
+	private boolean showProgress = true;
 
-	private static final String LINE_FLUSH = "\r\033[K";
+	public void setShowProgress(boolean showProgress) {
+		this.showProgress = showProgress;
+	}
 
 	/**
 	 * Writes the constructed map into files.
 	 */
 
-	public static void writeToFile(List<Vertex> vList, String fileName) {
-
+	public static void writeToFile(MapGraph graph, String fileName) {
 		try {
-			int count = 0;
-			BufferedWriter bwedges = new BufferedWriter(new FileWriter(fileName
-					+ "/edges.txt"));
-			BufferedWriter bvertex = new BufferedWriter(new FileWriter(fileName
-					+ "/vertices.txt"));
-
-
-			for (int i = 0; i < vList.size(); i++) {
-				Vertex v = vList.get(i);
-				bvertex.write(i + "," + v.getX() + "," + v.getY() +","+ v.getZ() + "," + v.getOnlineAvg() + "\n");
-
-				for (int j = 0; j < v.getDegree(); j++) {
-
-					if (i != v.getAdjacentElementAt(j)) {
-
-						bwedges.write(count + "," + i + ","
-								+ v.getAdjacentElementAt(j) + "\n");
-
-						count++;
-					}
-				}
-			}
-
-
-			bwedges.close();
-			bvertex.close();
+			GraphFile.writeMap(graph, new File(fileName));
 		} catch (Exception ex) {
 			System.out.println(ex.toString());
 		}
@@ -209,15 +170,34 @@ public class MapConstruction {
 	 * if edge e has a part of white interval else false.
 	 */
 
-	public boolean isWhiteInterval(Edge edge, List<Vertex> pose,
+	public boolean isWhiteInterval(Edge edge, SegmentIndex segments,
 			int currentIndex, double eps, double altEps) {
-		Line line = new Line(pose.get(currentIndex - 1), pose.get(currentIndex));
+		return this.isWhiteInterval(edge, segments, currentIndex, eps, altEps,
+				scratch, filter);
+	}
 
-		if (Math.abs(line.avgAltitude() - edge.getLine().avgAltitude()) <= altEps) {
-			return line.pIntersection(edge, eps);
-		} else {
+	/**
+	 * Same as isWhiteInterval(edge, segments, currentIndex, eps, altEps), using
+	 * scratch for the intersection and counting in filter.
+	 */
+	public boolean isWhiteInterval(Edge edge, SegmentIndex segments,
+			int currentIndex, double eps, double altEps,
+			IntersectionKernel.Scratch scratch, SegmentFilter filter) {
+		int i = currentIndex;
+
+		if (!filter.accept(segments, i, edge, eps, altEps)) {
 			return false;
 		}
+
+		boolean white = IntersectionKernel.intersect(segments.getX1(i),
+				segments.getY1(i), segments.getX2(i), segments.getY2(i), segments.getM(i),
+				segments.getC(i), segments.getTheta(i), edge.getRegion(eps), scratch);
+
+		filter.countExact(white);
+		if (white) {
+			scratch.applyTo(edge);
+		}
+		return white;
 	}
 
 	/**
@@ -237,8 +217,20 @@ public class MapConstruction {
 	 * Scans for next white interval on an Edge starting from index newstart of
 	 * pose.
 	 */
-	public void computeNextInterval(Edge edge, List<Vertex> pose, int newstart,
+	public void computeNextInterval(Edge edge, SegmentIndex segments, int newstart,
 			double eps, double altEps) {
+		this.computeNextInterval(edge, segments, newstart, eps, altEps, scratch,
+				filter);
+	}
+
+	/**
+	 * Same as computeNextInterval(edge, segments, newstart, eps, altEps), using
+	 * scratch for the intersections and counting in filter.
+	 */
+	public void computeNextInterval(Edge edge, SegmentIndex segments, int newstart,
+			double eps, double altEps, IntersectionKernel.Scratch scratch,
+			SegmentFilter filter) {
+		IntersectionKernel.Region region = edge.getRegion(eps);
 
 		// Compute next white interval on edge.
 		boolean first = true;
@@ -247,14 +239,24 @@ public class MapConstruction {
 		int startIndex = 0;
 		double cstart = 0, vstart = 0;
 
-		if (newstart >= pose.size()) {
-			edge.setCurveEndIndex(pose.size());
+		if (newstart >= segments.size()) {
+			edge.setCurveEndIndex(segments.size());
 			edge.setDone(true);
 			return;
 		}
 
-		for (int i = newstart; i < pose.size(); i++) {
-			boolean result = isWhiteInterval(edge, pose, i, eps, altEps);
+		for (int i = newstart; i < segments.size(); i++) {
+			// a segment which doesn't come near the edge has no white interval,
+			// so the search for the first one skips straight to the next near one
+			if (first) {
+				i = segments.next(i, region);
+				if (i >= segments.size()) {
+					break;
+				}
+			}
+
+			boolean result = isWhiteInterval(edge, segments, i, eps, altEps,
+					scratch, filter);
 
 			// first = true means we are still looking for our first interval
 			// starting from newstart.
@@ -291,15 +293,15 @@ public class MapConstruction {
 		if (first) {
 			// if the last segment on the curve is the first segment of that
 			// interval
-			edge.setCurveEndIndex(pose.size());
+			edge.setCurveEndIndex(segments.size());
 			edge.setDone(true);
 		} else {
 			edge.setCurveStartIndex(startIndex);
 			edge.setCurveStart(startIndex + cstart);
 			edge.setEdgeStart(vstart);
 
-			edge.setCurveEnd(pose.size() - 2 + edge.getCurveEnd());
-			edge.setCurveEndIndex(pose.size() - 2);
+			edge.setCurveEnd(segments.size() - 2 + edge.getCurveEnd());
+			edge.setCurveEndIndex(segments.size() - 2);
 		}
 
 		return;
@@ -309,37 +311,29 @@ public class MapConstruction {
 	 * Updates constructedMap by adding an Edge. Detail description of the
 	 * algorithm is in the publication.
 	 */
-	public void updateMap(List<Vertex> constructedMap,
-			Map<String, Integer> map, Edge edge) {
+	public void updateMap(MapGraph constructedMap,
+			VertexRegistry map, EdgeIndex edgeIndex, Edge edge) {
 
 		// update the map by adding a new edge
 		Vertex v;
 		int parent = -1;
 		int child = -1;
 
-		String keyParent = edge.getVertex1().toString();
-		String keyChild = edge.getVertex2().toString();
-		// find the index of parent node
-		if (map.containsKey(keyParent)) {
-			parent = map.get(keyParent).intValue();
-
-			constructedMap.get(parent).addEntry(edge.getVertex1());
+		// find the index of parent node, a new vertex gets the next index
+		v = edge.getVertex1();
+		parent = map.putIfAbsent(v, constructedMap.size());
+		if (parent < constructedMap.size()) {
+			constructedMap.addEntry(parent, v);
 		} else {
-			v = edge.getVertex1();
-			constructedMap.add(v);
-			parent = constructedMap.indexOf(v);
-			map.put(keyParent, parent);
+			constructedMap.addVertex(v);
 		}
 		// find the index of child node
-		if (map.containsKey(keyChild)) {
-			child = map.get(keyChild).intValue();
-
-			constructedMap.get(child).addEntry(edge.getVertex2());
+		v = edge.getVertex2();
+		child = map.putIfAbsent(v, constructedMap.size());
+		if (child < constructedMap.size()) {
+			constructedMap.addEntry(child, v);
 		} else {
-			v = edge.getVertex2();
-			constructedMap.add(v);
-			child = constructedMap.indexOf(v);
-			map.put(keyChild, child);
+			constructedMap.addVertex(v);
 		}
 		// update the map
 		if (parent == -1 || child == -1) {
@@ -347,11 +341,14 @@ public class MapConstruction {
 					+ child + ", " + parent);
 		} else if (parent != child) {
 
-			constructedMap.get(parent).addElementAdjList(child);
-			constructedMap.get(child).addElementAdjList(parent);
+			constructedMap.addElementAdjList(parent, child);
+			constructedMap.addElementAdjList(child, parent);
+			edgeIndex.add(parent, child);
 
-			logger.log(Level.FINEST, "child, parent :" + child + ", " + parent);
-			logger.log(Level.FINEST, "child, parent :" + parent + ", " + child);
+			if (logger.isLoggable(Level.FINEST)) {
+				logger.log(Level.FINEST, "child, parent :" + child + ", " + parent);
+				logger.log(Level.FINEST, "child, parent :" + parent + ", " + child);
+			}
 
 		}
 	}
@@ -362,35 +359,32 @@ public class MapConstruction {
 	 * @param newVertexPosition
 	 *            represents position of a new Vertex
 	 */
-	public void edgeSplit(List<Vertex> constructedMap,
-			Map<String, Integer> map, Edge edge, double newVertexPosition) {
+	public void edgeSplit(MapGraph constructedMap,
+			VertexRegistry map, Edge edge, double newVertexPosition) {
 
-		Vertex v1 = edge.getVertex1();
-		Vertex v2 = edge.getVertex2();
+		// edge is always an edge of constructedMap, so its endpoints are
+		// already indexed.
+		int index1 = edge.getIndex1();
+		int index2 = edge.getIndex2();
 
-		String key1 = v1.toString();
-		String key2 = v2.toString();
-
-		// call of this method always after updateMap which ensures
-		// map.containsKey(key1) is
-		// always true.
-		int index1 = map.get(key1).intValue();
-		int index2 = map.get(key2).intValue();
+		if (metrics != null) {
+			metrics.edgeSplitCalls++;
+		}
 
-		Vertex v = edge.getLine().getVertex(newVertexPosition);
+		Vertex v = edge.getVertex(newVertexPosition);
 
 		// splitting an edge on split point vertex v
 
-		String key = v.toString();
-
-		int index = map.get(key).intValue();
+		int index = map.get(v);
 
 		if (index == index1 || index == index2) {
 			return;
 		}
 
-		logger.log(Level.FINER, "Index = " + index1 + " " + index2 + " "
-				+ index);
+		if (logger.isLoggable(Level.FINER)) {
+			logger.log(Level.FINER, "Index = " + index1 + " " + index2 + " "
+					+ index);
+		}
 
 		edge.addSplit(newVertexPosition, index);
 	}
@@ -399,8 +393,8 @@ public class MapConstruction {
 	 * Commits edge splitting listed in List<Integer> Edge.edgeSplitVertices.
 	 */
 
-	public void commitEdgeSplits(List<Edge> edges, Map<String, Integer> map,
-			List<Vertex> graph) {
+	public void commitEdgeSplits(List<Edge> edges, VertexRegistry map,
+			EdgeIndex edgeIndex, EdgeTable edgeTable, MapGraph graph) {
 		for (int e = 0; e < edges.size(); e++) {
 			Edge edge = edges.get(e);
 
@@ -415,37 +409,38 @@ public class MapConstruction {
 			int splitSize = edgeVertexSplits.size();
 
 			if (splitSize == 0) {
-				return;
+				continue;
+			}
+			if (metrics != null) {
+				metrics.committedSplits += splitSize;
 			}
 
-			Vertex v1 = edge.getVertex1();
-			Vertex v2 = edge.getVertex2();
-
-			String key1 = v1.toString();
-			String key2 = v2.toString();
-
-			int index1 = map.get(key1).intValue();
-			int index2 = map.get(key2).intValue();
+			int index1 = edge.getIndex1();
+			int index2 = edge.getIndex2();
 
 			boolean updateV1 = false, updateV2 = false;
 
-			logger.log(Level.FINER, "commitEdgeSplits " + splitSize);
+			if (logger.isLoggable(Level.FINER)) {
+				logger.log(Level.FINER, "commitEdgeSplits " + splitSize);
+			}
 
-			for (int i = 0; i < v1.getDegree(); i++) {
-				if (v1.getAdjacentElementAt(i) == index2) {
-					v1.setAdjacentElementAt(i, edgeVertexSplits.get(0).intValue());
-					graph.get(edgeVertexSplits.get(0).intValue())
-							.addElementAdjList(index1);
+			for (int i = 0; i < graph.getDegree(index1); i++) {
+				if (graph.getAdjacentElementAt(index1, i) == index2) {
+					graph.setAdjacentElementAt(index1, i, edgeVertexSplits.get(0).intValue());
+					graph.addElementAdjList(edgeVertexSplits.get(0).intValue(),
+							index1);
+					edgeIndex.add(index1, edgeVertexSplits.get(0).intValue());
 					updateV1 = true;
 				}
 			}
 
-			for (int i = 0; i < v2.getDegree(); i++) {
-				if (v2.getAdjacentElementAt(i) == index1) {
-					v2.setAdjacentElementAt(i, edgeVertexSplits.get(splitSize - 1)
+			for (int i = 0; i < graph.getDegree(index2); i++) {
+				if (graph.getAdjacentElementAt(index2, i) == index1) {
+					graph.setAdjacentElementAt(index2, i, edgeVertexSplits.get(splitSize - 1)
 							.intValue());
-					graph.get(edgeVertexSplits.get(splitSize - 1).intValue())
-							.addElementAdjList(index2);
+					graph.addElementAdjList(edgeVertexSplits.get(splitSize - 1).intValue(),
+							index2);
+					edgeIndex.add(index2, edgeVertexSplits.get(splitSize - 1).intValue());
 					updateV2 = true;
 				}
 			}
@@ -453,14 +448,23 @@ public class MapConstruction {
 			for (int i = 0; i < splitSize - 1; i++) {
 				int currentVertex = edgeVertexSplits.get(i).intValue();
 				int nextVertex = edgeVertexSplits.get(i + 1).intValue();
-				graph.get(currentVertex).addElementAdjList(nextVertex);
-				graph.get(nextVertex).addElementAdjList(currentVertex);
+				graph.addElementAdjList(currentVertex, nextVertex);
+				graph.addElementAdjList(nextVertex, currentVertex);
+				edgeIndex.add(currentVertex, nextVertex);
+			}
+			if (updateV1 || updateV2) {
+				edgeIndex.remove(index1, index2);
+				edgeTable.remove(index1, index2);
 			}
 			if (!(updateV1 && updateV2)) {
 				logger.log(Level.SEVERE, "inconsistent graph: (" + splitSize + ")"
 						+ index1 + " " + index2 + " "
-						+ v1.getAdjacencyList().toString() + " "
-						+ v2.getAdjacencyList().toString());
+						+ graph.adjacencyToString(index1) + " "
+						+ graph.adjacencyToString(index2));
+			}
+
+			if (!replaying) {
+				TraceEvents.edgeSplitCommitted(track, index1, index2, splitSize);
 			}
 		}
 	}
@@ -469,10 +473,11 @@ public class MapConstruction {
 	 * Adds a portion of a pose as edges into constructedMap.
 	 */
 
-	public void addToGraph(List<Vertex> constructedMap, List<Vertex> pose,
-			Map<String, Integer> map, int startIndex, int endIndex) {
+	public void addToGraph(MapGraph constructedMap, List<Vertex> pose,
+			VertexRegistry map, EdgeIndex edgeIndex, int startIndex,
+			int endIndex) {
 		for (int i = startIndex; i < endIndex; i++) {
-			this.updateMap(constructedMap, map,
+			this.updateMap(constructedMap, map, edgeIndex,
 					new Edge(pose.get(i), pose.get(i + 1)));
 		}
 
@@ -482,14 +487,44 @@ public class MapConstruction {
 	 * Update the map for a pose/curve. Definition of black and white interval.
 	 */
 	// @TODO(mahmuda): extract some shorter well-named methods.
-	public void mapConstruction(List<Vertex> constructedMap, List<Edge> edges,
-			Map<String, Integer> map, List<Vertex> pose, double eps,
-			double altEps) {
+	public void mapConstruction(MapGraph constructedMap, List<Edge> edges,
+			VertexRegistry map, EdgeIndex edgeIndex, List<Vertex> pose,
+			SegmentIndex segments, double eps, double altEps) {
+
+		long startTime = System.nanoTime();
+
+		// each edge only reads the pose and writes to itself, so the first
+		// white intervals of all edges are computed in parallel
+		this.intervals.computeFirstIntervals(this, edges, segments, eps, altEps,
+				filter);
+
+		if (metrics != null) {
+			long intervalTime = System.nanoTime();
+			metrics.intervalNanos += intervalTime - startTime;
+			try {
+				this.sweep(constructedMap, edges, map, edgeIndex, pose, segments, eps,
+						altEps);
+			} finally {
+				metrics.sweepNanos += System.nanoTime() - intervalTime;
+			}
+		} else {
+			this.sweep(constructedMap, edges, map, edgeIndex, pose, segments, eps,
+					altEps);
+		}
+	}
+
+	/**
+	 * Goes along pose through the white intervals of edges, once their first
+	 * ones are computed, and adds the black intervals to the map.
+	 */
+	private void sweep(MapGraph constructedMap, List<Edge> edges,
+			VertexRegistry map, EdgeIndex edgeIndex, List<Vertex> pose,
+			SegmentIndex segments, double eps, double altEps) {
 
 		PriorityQueue<Edge> pq = new PriorityQueue<Edge>();
 
+		// edges are queued in list order, as in a sequential run
 		for (int i = 0; i < edges.size(); i++) {
-			this.computeNextInterval(edges.get(i), pose, 1, eps, altEps);
 			if (!edges.get(i).getDone()) {
 				pq.add(edges.get(i));
 			}
@@ -501,17 +536,27 @@ public class MapConstruction {
 
 			if (pq.isEmpty()) {
 
-				logger.log(Level.FINER, MapConstruction.curveName
-						+ " inserted as an edge");
+				if (logger.isLoggable(Level.FINER)) {
+					logger.log(Level.FINER, MapConstruction.curveName
+							+ " inserted as an edge");
+				}
 
-				this.addToGraph(constructedMap, pose, map, 0, pose.size() - 1);
+				this.addToGraph(constructedMap, pose, map, edgeIndex, 0, pose.size() - 1);
 
-				logger.log(Level.FINER, MapConstruction.curveName
-						+ " inserted as an edge");
+				if (logger.isLoggable(Level.FINER)) {
+					logger.log(Level.FINER, MapConstruction.curveName
+							+ " inserted as an edge");
+				}
 				return;
 			}
 
 			Edge edge = pq.poll();
+			if (metrics != null) {
+				metrics.whiteIntervals++;
+			}
+			if (!replaying) {
+				TraceEvents.whiteIntervalFound(track, edge);
+			}
 
 			double cend = edge.getCurveEnd();
 			Edge cedge = edge;
@@ -524,22 +569,24 @@ public class MapConstruction {
 
 			if (edge.getCurveStart() > 0) {
 
-				logger.log(Level.FINER, MapConstruction.curveName
-						+ " inserted as an edge until " + edge.getCurveStart());
+				if (logger.isLoggable(Level.FINER)) {
+					logger.log(Level.FINER, MapConstruction.curveName
+							+ " inserted as an edge until " + edge.getCurveStart());
+				}
 
 				int index = (int) Math.floor(edge.getCurveStart());
 
-				this.addToGraph(constructedMap, pose, map, 0, index);
+				this.addToGraph(constructedMap, pose, map, edgeIndex, 0, index);
 
 				Line newLine = new Line(pose.get(index), pose.get(Math.min(poseLimit, index + 1)));
 				double t = edge.getCurveStart()
 						- Math.floor(edge.getCurveStart());
-				this.updateMap(constructedMap, map, new Edge(pose.get(index),
+				this.updateMap(constructedMap, map, edgeIndex, new Edge(pose.get(index),
 						newLine.getVertex(t)));
 
-				this.updateMap(constructedMap, map,
-						new Edge(newLine.getVertex(t), edge.getLine()
-								.getVertex(edge.getEdgeStart())));
+				this.updateMap(constructedMap, map, edgeIndex,
+						new Edge(newLine.getVertex(t),
+								edge.getVertex(edge.getEdgeStart())));
 				this.edgeSplit(constructedMap, map, edge, edge.getEdgeStart());
 			}
 
@@ -548,9 +595,11 @@ public class MapConstruction {
 
 			while (cend < pose.size()) {
 
-				logger.log(Level.FINEST, MapConstruction.curveName
-						+ " has white interval " + edge.getCurveStart() + " "
-						+ edge.getCurveEnd() + " " + cend);
+				if (logger.isLoggable(Level.FINEST)) {
+					logger.log(Level.FINEST, MapConstruction.curveName
+							+ " has white interval " + edge.getCurveStart() + " "
+							+ edge.getCurveEnd() + " " + cend);
+				}
 
 				if (cend < edge.getCurveEnd()) {
 					cend = edge.getCurveEnd();
@@ -559,35 +608,37 @@ public class MapConstruction {
 
 				// Add entry from curve Start
 				if (!first || (edge.getCurveStart() == 0)) {
-					Vertex v = (edge.getEdgeStart() > 0.5) ? edge.getVertex2() : edge.getVertex1();
+					int vertexIndex = (edge.getEdgeStart() > 0.5) ? edge.getIndex2() : edge.getIndex1();
 
 					int curveIndex = (int) Math.floor(edge.getCurveStart());
 
-					v.addEntry(
+					constructedMap.addEntry(vertexIndex,
 						new Line(pose.get(curveIndex), pose.get(Math.min(poseLimit, curveIndex + 1)))
 							.getVertex(edge.getCurveStart() - Math.floor(edge.getCurveStart()))
 					);
 				}
 
 				// Add entry from curve End
-				Vertex v = (edge.getEdgeEnd() > 0.5) ? edge.getVertex2() : edge.getVertex1();
+				int vertexIndex = (edge.getEdgeEnd() > 0.5) ? edge.getIndex2() : edge.getIndex1();
 
 				int curveIndex = (int) Math.ceil(edge.getCurveEnd());
 
-				v.addEntry(
+				constructedMap.addEntry(vertexIndex,
 					new Line(pose.get(Math.max(0, curveIndex - 1)), pose.get(curveIndex))
 						.getVertex(edge.getCurveEnd() - Math.floor(edge.getCurveEnd()))
 				);
 
 				if (edge.getCurveEnd() == pose.size() - 1) {
-					logger.log(Level.FINER, MapConstruction.curveName
-							+ " processing completed.");
+					if (logger.isLoggable(Level.FINER)) {
+						logger.log(Level.FINER, MapConstruction.curveName
+								+ " processing completed.");
+					}
 					return;
 				}
 
 				first = false;
 
-				this.computeNextInterval(edge, pose,
+				this.computeNextInterval(edge, segments,
 						edge.getCurveEndIndex() + 1, eps, altEps);
 
 				if (!edge.getDone()) {
@@ -595,8 +646,10 @@ public class MapConstruction {
 				}
 
 				if (pq.isEmpty()) {
-					logger.log(Level.FINER, MapConstruction.curveName
-							+ " inserted as an edge from " + cend + " to end");
+					if (logger.isLoggable(Level.FINER)) {
+						logger.log(Level.FINER, MapConstruction.curveName
+								+ " inserted as an edge from " + cend + " to end");
+					}
 
 					int index = (int) Math.floor(cend);
 					Line newLine = new Line(pose.get(index),
@@ -605,24 +658,33 @@ public class MapConstruction {
 					this.updateMap(
 							constructedMap,
 							map,
-							new Edge(cedge.getLine().getVertex(
+							edgeIndex,
+							new Edge(cedge.getVertex(
 									cedge.getEdgeEnd()), newLine.getVertex(t)));
 					this.edgeSplit(constructedMap, map, cedge,
 							cedge.getEdgeEnd());
-					this.updateMap(constructedMap, map,
+					this.updateMap(constructedMap, map, edgeIndex,
 							new Edge(newLine.getVertex(t), pose.get(Math.min(poseLimit, index + 1))));
-					this.addToGraph(constructedMap, pose, map, Math.min(poseLimit, index + 1),
+					this.addToGraph(constructedMap, pose, map, edgeIndex, Math.min(poseLimit, index + 1),
 							pose.size() - 1);
 
 					return;
 				}
 
 				edge = pq.poll();
+				if (metrics != null) {
+					metrics.whiteIntervals++;
+				}
+				if (!replaying) {
+					TraceEvents.whiteIntervalFound(track, edge);
+				}
 
 				if (edge.getCurveStart() > cend) {
-					logger.log(Level.FINER, MapConstruction.curveName
-							+ " inserted as an edge from " + cend + " to "
-							+ edge.getCurveStart());
+					if (logger.isLoggable(Level.FINER)) {
+						logger.log(Level.FINER, MapConstruction.curveName
+								+ " inserted as an edge from " + cend + " to "
+								+ edge.getCurveStart());
+					}
 
 					// need to add rest of the line segment
 
@@ -635,7 +697,8 @@ public class MapConstruction {
 					this.updateMap(
 							constructedMap,
 							map,
-							new Edge(cedge.getLine().getVertex(
+							edgeIndex,
+							new Edge(cedge.getVertex(
 									cedge.getEdgeEnd()), newLine.getVertex(t)));
 					this.edgeSplit(constructedMap, map, cedge,
 							cedge.getEdgeEnd());
@@ -644,6 +707,7 @@ public class MapConstruction {
 						this.updateMap(
 								constructedMap,
 								map,
+								edgeIndex,
 								new Edge(newLine.getVertex(t),
 										newLine.getVertex(edge.getCurveStart()
 												- index)));
@@ -655,22 +719,23 @@ public class MapConstruction {
 						this.updateMap(
 								constructedMap,
 								map,
+								edgeIndex,
 								new Edge(newLine.getVertex(t), pose
 										.get(Math.min(poseLimit, index + 1))));
 
-						this.addToGraph(constructedMap, pose, map, Math.min(poseLimit, index + 1),
+						this.addToGraph(constructedMap, pose, map, edgeIndex, Math.min(poseLimit, index + 1),
 								(int) Math.floor(edge.getCurveStart()));
 						index = (int) Math.floor(edge.getCurveStart());
 						newLine = new Line(pose.get(index), pose.get(Math.min(poseLimit, index + 1)));
 						t = edge.getCurveStart()
 								- Math.floor(edge.getCurveStart());
-						this.updateMap(constructedMap, map,
+						this.updateMap(constructedMap, map, edgeIndex,
 								new Edge(pose.get(index), newLine.getVertex(t)));
 
 					}
-					this.updateMap(constructedMap, map,
-							new Edge(newLine.getVertex(t), edge.getLine()
-									.getVertex(edge.getEdgeStart())));
+					this.updateMap(constructedMap, map, edgeIndex,
+							new Edge(newLine.getVertex(t),
+									edge.getVertex(edge.getEdgeStart())));
 					this.edgeSplit(constructedMap, map, edge,
 							edge.getEdgeStart());
 				}
@@ -683,11 +748,72 @@ public class MapConstruction {
 	}
 
 	public List<PoseFile> readAllFiles(File folder, boolean hasAltitude) {
-		System.out.print(LINE_FLUSH + "Reading tracks...");
+		if (showProgress) {
+			System.out.print(LINE_FLUSH + "Reading tracks...");
+		}
+
+		List<PoseFile> poseFiles = new ArrayList<PoseFile>();
+
+		// a trackset packed into a TrackContainer holds all of its tracks
+		File container = new File(folder, TrackContainer.FILE_NAME);
+		if (container.isFile()) {
+			try {
+				TrackContainer tracks = TrackContainer.open(container);
+				for (int i = 0; i < tracks.size(); i++) {
+					poseFiles.add(new PoseFile(tracks.get(i)));
+				}
+			} catch (IOException ex) {
+				logger.log(Level.SEVERE, ex.toString());
+				throw new RuntimeException(ex);
+			}
+			return poseFiles;
+		}
+
+		return readFiles(folder.listFiles(), hasAltitude);
+	}
 
+	/**
+	 * Reads the track files files, setReadParallelism() of them at the same
+	 * time.
+	 *
+	 * @return the poses, in the order of files
+	 */
+	public List<PoseFile> readFiles(File[] files, final boolean hasAltitude) {
 		List<PoseFile> poseFiles = new ArrayList<PoseFile>();
-		for (File file : folder.listFiles()) {
-			poseFiles.add(PoseFile.readFile(file, hasAltitude));
+
+		if (readParallelism <= 1 || files.length < 2) {
+			for (File file : files) {
+				poseFiles.add(PoseFile.readFile(file, hasAltitude));
+			}
+			return poseFiles;
+		}
+
+		// the files are read concurrently, but the poses keep the order of the
+		// listing
+		List<Callable<PoseFile>> tasks = new ArrayList<Callable<PoseFile>>();
+		for (final File file : files) {
+			tasks.add(new Callable<PoseFile>() {
+				@Override
+				public PoseFile call() {
+					return PoseFile.readFile(file, hasAltitude);
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(
+				readParallelism, files.length));
+		try {
+			for (Future<PoseFile> future : pool.invokeAll(tasks)) {
+				poseFiles.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e
+					.getCause() : new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
 		}
 		return poseFiles;
 	}
@@ -696,68 +822,183 @@ public class MapConstruction {
 	 * Constructs map from poses and returns string representation of the map.
 	 */
 
-	public List<Vertex> constructMapMain(List<PoseFile> poseFiles, double eps,
+	public MapGraph constructMapMain(List<PoseFile> poseFiles, double eps,
 			double altEps) {
+		return constructMapMain(new MapGraph(), new VertexRegistry(), poseFiles,
+				eps, altEps);
+	}
 
-		List<Vertex> constructedMap = new ArrayList<Vertex>();
-		// map contains mapping between vertex keys and their indices in
-		// constructedMap
-		Map<String, Integer> map = new HashMap<String, Integer>();
+	/**
+	 * Inserts poses into constructedMap and returns it. map contains mapping
+	 * between vertex keys and their indices in constructedMap.
+	 *
+	 * With a checkpoint, the map is saved every few tracks, and the run starts
+	 * from the saved map when it resumes. A run that skips failing tracks goes
+	 * back to the saved map when a track throws and inserts the tracks after it
+	 * again, without the failing one; the returned map is then a new one.
+	 *
+	 * With a simplification, all poses are simplified first, and the ones
+	 * inserted are the simplified ones, at the same indices. With bundling, the
+	 * poses are then bundled and only the representatives are inserted, with
+	 * their indices in the list of representatives.
+	 */
+	public MapGraph constructMapMain(MapGraph constructedMap, VertexRegistry map,
+			List<PoseFile> poseFiles, double eps, double altEps) {
+		skippedTracks.clear();
 		try {
+			if (simplification != null) {
+				if (showProgress) {
+					System.out.print(LINE_FLUSH + "Simplifying tracks...");
+				}
+				poseFiles = simplification.simplifyAll(poseFiles, eps, altEps);
+			}
+			if (bundling) {
+				if (showProgress) {
+					System.out.print(LINE_FLUSH + "Bundling tracks...");
+				}
+				poseFiles = new TrackBundling().bundle(poseFiles, eps, altEps);
+			}
+
+			int k = 0;
+
+			if (checkpoint != null && resume && checkpoint.exists()) {
+				constructedMap = new MapGraph();
+				map = new VertexRegistry();
+				k = checkpoint.load(constructedMap, map, poseFiles.size());
+
+				logger.info("resuming from track " + k + " of " + poseFiles.size());
+			} else if (checkpoint != null && skipFailingTracks) {
+				// the state a failing track goes back to
+				checkpoint.save(constructedMap, 0, poseFiles.size());
+			}
+
+			// edgeIndex contains the edges of constructedMap in a spatial grid
+			EdgeIndex edgeIndex = EdgeIndex.build(constructedMap,
+					EdgeIndex.CELL_SIZE_IN_EPS * eps);
+			// edgeTable keeps the Edge objects of constructedMap across poses
+			EdgeTable edgeTable = new EdgeTable(constructedMap);
 			double length = 0;
 
+			// the tracks before it are inserted again after a track is skipped
+			int replayedUntil = 0;
+
 			// generate list of files in the folder to process
-			for (int k = 0; k < poseFiles.size(); k++) {
+			for (; k < poseFiles.size(); k++) {
+				if (checkpoint != null && checkpoint.isDue(k)) {
+					checkpoint.save(constructedMap, k, poseFiles.size());
+				}
+				if (checkpoint != null && checkpoint.getSkipped().contains(k)) {
+					continue;
+				}
+
 				PoseFile poseFile = poseFiles.get(k);
 				Long startTime = System.currentTimeMillis();
 				MapConstruction.curveid = k;
 				MapConstruction.curveName = poseFile.getFileName();
+				this.track = k;
+				this.replaying = k < replayedUntil;
 
-				length += poseFile.getLength();
+				try {
+					length += poseFile.getLength();
 
-				if (poseFile.getPose().size() < 2) {
-					continue;
-				}
+					if (poseFile.getPose().size() < 2) {
+						continue;
+					}
+
+					if (metrics != null) {
+						metrics.start(k, poseFile.getFileName(), poseFile.getPose().size());
+						metrics.whiteIntervalCalls = -filter.getPairs();
+						metrics.whiteIntervalHits = -filter.getExactMatched();
+						metrics.newVertices = -constructedMap.size();
+						metrics.newEdges = -edgeIndex.getEdgeCount();
+					}
 
-				List<Edge> edges = new ArrayList<Edge>();
+					// the map size before the track, for the JFR event
+					TraceEvents.TrackInserted event = new TraceEvents.TrackInserted();
+					event.begin();
+					int vertices = constructedMap.size();
+					int edgeCount = edgeIndex.getEdgeCount();
 
-				List<Integer> vertexHistory = new ArrayList<Integer>();
+					long selectionTime = System.nanoTime();
 
-				for (int i = 0; i < constructedMap.size(); i++) {
-					Vertex v = constructedMap.get(i);
+					// only edges crossing the bounding box of the pose, expanded by
+					// eps, can contain a white interval
+					List<Edge> edges = edgeIndex.getEdges(edgeTable, poseFile.minX - eps,
+							poseFile.minY - eps, poseFile.maxX + eps, poseFile.maxY + eps);
 
-					for (int j = 0; j < v.getDegree(); j++) {
-						int index = v.getAdjacentElementAt(j);
+					long constructionTime = System.nanoTime();
 
-						if ((index == i) || vertexHistory.contains(index)) continue;
+					this.mapConstruction(constructedMap, edges, map, edgeIndex, poseFile.getPose(),
+							poseFile.getSegmentIndex(), eps, altEps);
 
-						Vertex w = constructedMap.get(index);
+					long commitTime = System.nanoTime();
 
-						if (!poseFile.enclosesVertex(v) && !poseFile.enclosesVertex(w)) continue;
+					this.commitEdgeSplits(edges, map, edgeIndex, edgeTable, constructedMap);
 
-						edges.add(new Edge(v, w));
+					if (metrics != null) {
+						metrics.candidateEdges = edges.size();
+						metrics.whiteIntervalCalls += filter.getPairs();
+						metrics.whiteIntervalHits += filter.getExactMatched();
+						metrics.newVertices += constructedMap.size();
+						metrics.newEdges += edgeIndex.getEdgeCount();
+						metrics.selectionNanos = constructionTime - selectionTime;
+						metrics.commitNanos = System.nanoTime() - commitTime;
+
+						if (!replaying) {
+							metrics.write();
+						}
 					}
 
-					vertexHistory.add(i);
-				}
+					if (!replaying && event.shouldCommit()) {
+						event.track = k;
+						event.name = poseFile.getFileName();
+						event.points = poseFile.getPose().size();
+						event.candidateEdges = edges.size();
+						event.newVertices = constructedMap.size() - vertices;
+						event.newEdges = edgeIndex.getEdgeCount() - edgeCount;
+						event.commit();
+					}
+				} catch (RuntimeException e) {
+					if (checkpoint == null || !skipFailingTracks) {
+						throw e;
+					}
 
-				this.mapConstruction(constructedMap, edges, map, poseFile.getPose(), eps, altEps);
-				this.commitEdgeSplits(edges, map, constructedMap);
+					// the track may have left the map half updated
+					logger.log(Level.SEVERE, "skipping track " + k + " "
+							+ poseFile.getFileName(), e);
+					skippedTracks.add(poseFile.getFileName());
+					checkpoint.skip(k);
+					replayedUntil = Math.max(replayedUntil, k);
+
+					constructedMap = new MapGraph();
+					map = new VertexRegistry();
+					k = checkpoint.load(constructedMap, map, poseFiles.size()) - 1;
+					edgeIndex = EdgeIndex.build(constructedMap,
+							EdgeIndex.CELL_SIZE_IN_EPS * eps);
+					edgeTable = new EdgeTable(constructedMap);
+					continue;
+				}
 
 				logger.info("k :" + k + " " + MapConstruction.curveName + " "
 						+ length + " :"
 						+ (System.currentTimeMillis() - startTime) / 60000.00);
 
-				System.out.print(LINE_FLUSH + "Rebuilding map: " + k + "/" + poseFiles.size() + " tracks");
+				if (showProgress) {
+					System.out.print(LINE_FLUSH + "Rebuilding map: " + k + "/" + poseFiles.size() + " tracks");
+				}
 			}
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, e.toString());
 			throw new RuntimeException(e);
+		} finally {
+			// the threads of the pool would otherwise stay until the JVM exits
+			this.intervals.shutdown();
 		}
+		logger.info("white interval tests: " + filter);
 		return constructedMap;
 	}
 
-	public static void main(String args[]) {
+	public static void main(String args[]) throws IOException {
 		MapConstruction mapConstruction = new MapConstruction();
 
 		// path to the folder that contains input tracks.
@@ -780,13 +1021,87 @@ public class MapConstruction {
 			altEps = 4.0;
 		}
 
-		List<Vertex> constructedMap = mapConstruction.constructMapMain(
+		// number of threads computing the first white intervals of the edges
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		if (args.length > 5) {
+			parallelism = Integer.parseInt(args[5]);
+			mapConstruction.setParallelism(parallelism);
+		}
+
+		// folder where the map is saved every few tracks, "-" not to save it,
+		// and if the run resumes from the map saved there
+		Checkpoint checkpoint = null;
+		boolean resume = false;
+		if (args.length > 6 && !args[6].equals("-")) {
+			checkpoint = new Checkpoint(new File(args[6]));
+			resume = args.length > 7 && Boolean.parseBoolean(args[7])
+					&& checkpoint.exists();
+			mapConstruction.setCheckpoint(checkpoint, resume);
+		}
+
+		// if tracks that throw are skipped and logged instead of ending the run
+		if (args.length > 8) {
+			mapConstruction.setSkipFailingTracks(Boolean.parseBoolean(args[8]));
+		}
+
+		// file where the counters of every track are written, CSV or JSONL, "-"
+		// not to write them
+		TrackMetrics metrics = null;
+		if (args.length > 9 && !args[9].equals("-")) {
+			try {
+				// a resumed run keeps the lines of the tracks inserted before
+				metrics = resume ? TrackMetrics.append(new File(args[9]))
+						: TrackMetrics.create(new File(args[9]));
+				mapConstruction.setMetrics(metrics);
+			} catch (IOException ex) {
+				logger.log(Level.WARNING, ex.toString());
+			}
+		}
+
+		// tolerance of the simplification of the tracks, as a multiple of eps
+		// and altEps; 0 not to simplify them
+		if (args.length > 10 && Double.parseDouble(args[10]) > 0) {
+			mapConstruction.setSimplification(new TrackSimplification(
+					Double.parseDouble(args[10]), parallelism));
+		}
+
+		// if tracks within eps of each other are inserted once, with the
+		// entries of all of them
+		if (args.length > 11) {
+			mapConstruction.setBundling(Boolean.parseBoolean(args[11]));
+		}
+
+		MapGraph constructedMap = mapConstruction.constructMapMain(
 				mapConstruction.readAllFiles(new File(inputPath), hasAltitude),
 				eps, altEps);
 
+		if (metrics != null) {
+			try {
+				metrics.close();
+			} catch (IOException ex) {
+				logger.log(Level.WARNING, ex.toString());
+			}
+		}
+
 		System.out.print(LINE_FLUSH + "Exporting rebuilt map...");
 
-		MapConstruction.writeToFile(constructedMap, outputpath);
+		// a failed export ends the run before the checkpoint is deleted, so
+		// that a run with resume can export the map again
+		GraphFile.writeMap(constructedMap, new File(outputpath));
+
+		if (checkpoint != null) {
+			try {
+				checkpoint.delete();
+			} catch (IOException ex) {
+				logger.log(Level.WARNING, ex.toString());
+			}
+		}
+
+		if (!mapConstruction.getSkippedTracks().isEmpty()) {
+			System.out.print(LINE_FLUSH + "Skipped "
+					+ mapConstruction.getSkippedTracks().size() + " tracks: "
+					+ mapConstruction.getSkippedTracks() + "\n");
+		}
 
 		System.out.print(LINE_FLUSH + "Rebuilt map!\n");
 	}
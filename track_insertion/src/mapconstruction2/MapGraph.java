@@ -0,0 +1,348 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: MapGraph.java
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * The vertices and edges of a constructed map, stored in primitive arrays indexed by vertex.
+ *
+ * Adjacency lists live in one shared int pool: vertex v owns the block starting at
+ * adjacencyStart[v], holding getDegree(v) indices out of adjacencyCapacity[v] slots. A full block
+ * is moved to the end of the pool with twice the capacity. snapshot() returns a read-only copy in
+ * which the blocks are packed in vertex order, i.e. in compressed sparse row form.
+ */
+public class MapGraph {
+
+  private static final int MIN_CAPACITY = 16;
+  private static final int MIN_ADJACENCY_CAPACITY = 2;
+
+  private int size; // # of vertices
+
+  // coordinates, same units as Vertex
+  private double[] x;
+  private double[] y;
+  private double[] z;
+
+  private double[] onlineSum; // sum of online entries values
+  private double[] entryCount; // # of entries
+
+  private int[] adjacencyStart;
+  private int[] adjacencyCapacity;
+  private int[] degree;
+  private int[] adjacencyPool;
+  private int poolSize;
+
+  private boolean readOnly;
+
+  public MapGraph() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize the number of vertices expected to be added
+   */
+  public MapGraph(int expectedSize) {
+    int capacity = Math.max(MIN_CAPACITY, expectedSize);
+
+    this.x = new double[capacity];
+    this.y = new double[capacity];
+    this.z = new double[capacity];
+    this.onlineSum = new double[capacity];
+    this.entryCount = new double[capacity];
+    this.adjacencyStart = new int[capacity];
+    this.adjacencyCapacity = new int[capacity];
+    this.degree = new int[capacity];
+    this.adjacencyPool = new int[capacity * MIN_ADJACENCY_CAPACITY];
+    this.size = 0;
+    this.poolSize = 0;
+    this.readOnly = false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  public double getX(int v) {
+    return x[v];
+  }
+
+  public double getY(int v) {
+    return y[v];
+  }
+
+  public double getZ(int v) {
+    return z[v];
+  }
+
+  public double getOnlineSum(int v) {
+    return onlineSum[v];
+  }
+
+  public double getEntryCount(int v) {
+    return entryCount[v];
+  }
+
+  public double getOnlineAvg(int v) {
+    return onlineSum[v] / entryCount[v];
+  }
+
+  /**
+   * @return a new Vertex with the coordinates and entries of vertex v
+   */
+  public Vertex getVertex(int v) {
+    Vertex vertex = new Vertex(x[v], y[v], z[v]);
+
+    vertex.addEntry(onlineSum[v], entryCount[v]);
+
+    return vertex;
+  }
+
+  private void checkWritable() {
+    if (readOnly) {
+      throw new UnsupportedOperationException("MapGraph snapshot is read-only");
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= x.length) {
+      return;
+    }
+
+    int newCapacity = Math.max(capacity, x.length * 2);
+
+    x = Arrays.copyOf(x, newCapacity);
+    y = Arrays.copyOf(y, newCapacity);
+    z = Arrays.copyOf(z, newCapacity);
+    onlineSum = Arrays.copyOf(onlineSum, newCapacity);
+    entryCount = Arrays.copyOf(entryCount, newCapacity);
+    adjacencyStart = Arrays.copyOf(adjacencyStart, newCapacity);
+    adjacencyCapacity = Arrays.copyOf(adjacencyCapacity, newCapacity);
+    degree = Arrays.copyOf(degree, newCapacity);
+  }
+
+  /**
+   * Reserves a block of capacity slots at the end of the adjacency pool.
+   *
+   * @return the start of the block
+   */
+  private int allocateBlock(int capacity) {
+    if (poolSize + capacity > adjacencyPool.length) {
+      adjacencyPool = Arrays.copyOf(adjacencyPool,
+          Math.max(poolSize + capacity, adjacencyPool.length * 2));
+    }
+
+    int start = poolSize;
+    poolSize += capacity;
+    return start;
+  }
+
+  /**
+   * Adds a vertex without edges.
+   *
+   * @return the index of the new vertex
+   */
+  public int addVertex(double x, double y, double z, double onlineSum, double entryCount) {
+    checkWritable();
+    ensureCapacity(size + 1);
+
+    int v = size++;
+
+    this.x[v] = x;
+    this.y[v] = y;
+    this.z[v] = z;
+    this.onlineSum[v] = onlineSum;
+    this.entryCount[v] = entryCount;
+    this.degree[v] = 0;
+    this.adjacencyCapacity[v] = MIN_ADJACENCY_CAPACITY;
+    this.adjacencyStart[v] = allocateBlock(MIN_ADJACENCY_CAPACITY);
+
+    return v;
+  }
+
+  /**
+   * Adds a vertex with the coordinates and entries of vertex.
+   *
+   * @return the index of the new vertex
+   */
+  public int addVertex(Vertex vertex) {
+    return addVertex(vertex.getX(),
+        vertex.getY(),
+        vertex.getZ(),
+        vertex.getOnlineSum(),
+        vertex.getEntryCount());
+  }
+
+  public void addEntry(int v, double online, double count) {
+    checkWritable();
+    entryCount[v] += count;
+    onlineSum[v] += online;
+  }
+
+  public void addEntry(int v, Vertex entry) {
+    addEntry(v, entry.getOnlineSum(), entry.getEntryCount());
+  }
+
+  public int getDegree(int v) {
+    return degree[v];
+  }
+
+  /**
+   * Returns the value in the adjacency list of vertex v at index k.
+   */
+  public int getAdjacentElementAt(int v, int k) {
+    return adjacencyPool[adjacencyStart[v] + k];
+  }
+
+  /**
+   * Returns the index of vertex w in the adjacency list of vertex v, or -1 if it is not there.
+   */
+  public int getIndexAdjacent(int v, int w) {
+    int start = adjacencyStart[v];
+
+    for (int k = 0; k < degree[v]; k++) {
+      if (adjacencyPool[start + k] == w) {
+        return k;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Adds w to the adjacency list of v, unless it is already there.
+   */
+  public void addElementAdjList(int v, int w) {
+    checkWritable();
+
+    if (getIndexAdjacent(v, w) != -1) {
+      return;
+    }
+
+    if (degree[v] == adjacencyCapacity[v]) {
+      int capacity = adjacencyCapacity[v] * 2;
+      int start = allocateBlock(capacity);
+
+      System.arraycopy(adjacencyPool, adjacencyStart[v], adjacencyPool, start, degree[v]);
+      adjacencyStart[v] = start;
+      adjacencyCapacity[v] = capacity;
+    }
+
+    adjacencyPool[adjacencyStart[v] + degree[v]] = w;
+    degree[v]++;
+  }
+
+  /**
+   * Sets the value in the adjacency list of vertex v at index k.
+   */
+  public void setAdjacentElementAt(int v, int k, int w) {
+    checkWritable();
+    adjacencyPool[adjacencyStart[v] + k] = w;
+  }
+
+  /**
+   * @return the adjacency list of vertex v, formatted as List.toString() would
+   */
+  public String adjacencyToString(int v) {
+    StringBuilder builder = new StringBuilder("[");
+
+    for (int k = 0; k < degree[v]; k++) {
+      if (k > 0) {
+        builder.append(", ");
+      }
+      builder.append(getAdjacentElementAt(v, k));
+    }
+    return builder.append("]").toString();
+  }
+
+  /**
+   * Returns a read-only graph of size vertices using the given arrays, with the neighbours of
+   * vertex v in adjacency from offsets[v] until offsets[v + 1].
+   */
+  static MapGraph fromCompressed(int size, double[] x, double[] y, double[] z,
+      double[] onlineSum, double[] entryCount, int[] offsets, int[] adjacency) {
+    MapGraph graph = new MapGraph(0);
+
+    graph.size = size;
+    graph.x = x;
+    graph.y = y;
+    graph.z = z;
+    graph.onlineSum = onlineSum;
+    graph.entryCount = entryCount;
+    graph.adjacencyStart = Arrays.copyOf(offsets, size);
+    graph.degree = new int[size];
+
+    for (int v = 0; v < size; v++) {
+      graph.degree[v] = offsets[v + 1] - offsets[v];
+    }
+
+    graph.adjacencyCapacity = Arrays.copyOf(graph.degree, size);
+    graph.adjacencyPool = adjacency;
+    graph.poolSize = adjacency.length;
+    graph.readOnly = true;
+    return graph;
+  }
+
+  /**
+   * Returns a read-only copy of this graph with the adjacency lists packed in vertex order and
+   * all arrays trimmed to size, for the phases which only read a map.
+   */
+  public MapGraph snapshot() {
+    MapGraph graph = new MapGraph(0);
+
+    int edgeSlots = 0;
+
+    for (int v = 0; v < size; v++) {
+      edgeSlots += degree[v];
+    }
+
+    graph.size = size;
+    graph.x = Arrays.copyOf(x, size);
+    graph.y = Arrays.copyOf(y, size);
+    graph.z = Arrays.copyOf(z, size);
+    graph.onlineSum = Arrays.copyOf(onlineSum, size);
+    graph.entryCount = Arrays.copyOf(entryCount, size);
+    graph.degree = Arrays.copyOf(degree, size);
+    graph.adjacencyCapacity = Arrays.copyOf(degree, size);
+    graph.adjacencyStart = new int[size];
+    graph.adjacencyPool = new int[edgeSlots];
+
+    for (int v = 0; v < size; v++) {
+      graph.adjacencyStart[v] = graph.poolSize;
+      System.arraycopy(adjacencyPool, adjacencyStart[v], graph.adjacencyPool, graph.poolSize,
+          degree[v]);
+      graph.poolSize += degree[v];
+    }
+
+    graph.readOnly = true;
+    return graph;
+  }
+}
@@ -28,100 +28,26 @@ package mapconstruction2;
  */
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.OutputStreamWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
-import java.util.Scanner;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-/**
- *
- * An object that represents a track.
- *
- */
-class CurveFile {
-  String fileName;
-  ArrayList<Vertex> curve;
-  double minX;
-  double minY;
-  double maxX;
-  double maxY;
-
-  CurveFile() {
-    this.fileName = "";
-    this.curve = new ArrayList<Vertex>();
-
-    minX = minY = Double.POSITIVE_INFINITY;
-    maxX = maxY = Double.NEGATIVE_INFINITY;
-  }
-
-  CurveFile(String curveName, ArrayList<Vertex> curve) {
-    this.fileName = curveName;
-    this.curve = curve;
-
-    minX = minY = Double.POSITIVE_INFINITY;
-    maxX = maxY = Double.NEGATIVE_INFINITY;
-  }
-
-  public String getFileName() {
-    return fileName;
-  }
-
-  public ArrayList<Vertex> getPose() {
-    return curve;
-  }
-
-  public double getLength() {
-    double length = 0;
-    for (int i = 1; i < curve.size(); i++) {
-      length = length + curve.get(i - 1).dist(curve.get(i));
-    }
-    return length;
-  }
-
-  public boolean enclosesVertex(Vertex v) {
-    return (v.getX() >= minX) && (v.getX() <= maxX) && (v.getY() >= minY) && (v.getY() <= maxY);
-  }
-
-  public static CurveFile readTrack(List<Vertex> track) {
-    CurveFile poseFile = new CurveFile();
-    poseFile.fileName = "";
-
-    for (int i = 0; i < track.size(); i++) {
-      Vertex point = track.get(i);
-
-      poseFile.curve.add(point);
-
-      poseFile.minX = Math.min(poseFile.minX, point.getX());
-      poseFile.minY = Math.min(poseFile.minY, point.getY());
-      poseFile.maxX = Math.max(poseFile.maxX, point.getX());
-      poseFile.maxY = Math.max(poseFile.maxY, point.getY());
-    }
-
-    poseFile.minX -= 0.1;
-    poseFile.minY -= 0.1;
-    poseFile.maxX += 0.1;
-    poseFile.maxY += 0.1;
-
-    return poseFile;
-  }
-}
-
 /**
  * An object that takes a set of poses as input, construct graph and write two
  * files one for vertices and one for edges.
  */
-public class MapMerging {
+public class MapMerging implements ParallelIntervals.Scanner {
 
   public static int curveid; // counter for pose
   public static String curveName; // file name for the pose
@@ -130,87 +56,98 @@ public class MapMerging {
 
   private static final String LINE_FLUSH = "\r\033[K";
 
-  /**
-   * Writes the constructed map into files.
-   */
-
-  public static void writeToFile(List<Vertex> vList, String fileName) {
-
-    try {
-      int count = 0;
-      BufferedWriter bwedges = new BufferedWriter(new FileWriter(fileName
-          + "/edges.txt"));
-      BufferedWriter bvertex = new BufferedWriter(new FileWriter(fileName
-          + "/vertices.txt"));
+  // scratch space of the eps-region intersections computed by isWhiteInterval
+  private final IntersectionKernel.Scratch scratch = new IntersectionKernel.Scratch();
 
+  // cheap tests run before the exact test in isWhiteInterval, with their counters
+  private final SegmentFilter filter = new SegmentFilter();
 
-      for (int i = 0; i < vList.size(); i++) {
-        Vertex v = vList.get(i);
-        bvertex.write(i + "," + v.getX() + "," + v.getY() +","+ v.getZ() + "," + v.getOnlineAvg() + "\n");
+  // runs the computation of the first white intervals of all edges
+  private ParallelIntervals intervals = new ParallelIntervals(
+      Runtime.getRuntime().availableProcessors());
 
-        for (int j = 0; j < v.getDegree(); j++) {
-
-          if (i != v.getAdjacentElementAt(j)) {
+  /**
+   * Sets the number of threads computing the first white intervals, 1 to
+   * compute them on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    this.intervals.shutdown();
+    this.intervals = new ParallelIntervals(parallelism);
+  }
 
-            bwedges.write(count + "," + i + ","
-                + v.getAdjacentElementAt(j) + "\n");
+  // if constructMapMain prints its progress on the console
+  private boolean showProgress = true;
 
-            count++;
-          }
-        }
-      }
+  public void setShowProgress(boolean showProgress) {
+    this.showProgress = showProgress;
+  }
 
+  /**
+   * Writes the constructed map into files.
+   */
 
-      bwedges.close();
-      bvertex.close();
+  public static void writeToFile(MapGraph graph, String fileName) {
+    try {
+      GraphFile.writeMap(graph, new File(fileName));
     } catch (Exception ex) {
       System.out.println(ex.toString());
     }
   }
 
-  public static void readFromFile(List<Vertex> constructedMap, Map<String, Integer> map, String fileName) {
+  public static void readFromFile(MapGraph constructedMap, VertexRegistry map, String fileName) {
     try {
-      Scanner vertexScanner = new Scanner(new File(fileName + "/vertices.txt")).useDelimiter("[\\s,]");
-      Scanner edgeScanner = new Scanner(new File(fileName + "/edges.txt")).useDelimiter("[\\s,]");
+      GraphFile.readMap(constructedMap, map, new File(fileName));
+    } catch (Exception ex) {
+      System.out.println(ex.toString());
+    }
+  }
 
-      int from = -1;
-      int to = -1;
+  /**
+   * Copies partialMap into constructedMap as writing it with writeToFile()
+   * and reading it back with readFromFile() would: every vertex keeps its
+   * online average as a single entry and self-loops are dropped.
+   */
+  public static void readFromMap(MapGraph constructedMap, VertexRegistry map, MapGraph partialMap) {
+    int base = constructedMap.size();
 
-      while (vertexScanner.hasNext()) {
-        int id = vertexScanner.nextInt();
-        double x = vertexScanner.nextDouble();
-        double y = vertexScanner.nextDouble();
-        double z = vertexScanner.nextDouble();
-        double online = vertexScanner.nextDouble();
+    for (int i = 0; i < partialMap.size(); i++) {
+      int index = constructedMap.addVertex(partialMap.getX(i), partialMap.getY(i),
+          partialMap.getZ(i), partialMap.getOnlineAvg(i), 1);
 
-        Vertex vertex = new Vertex(x, y, z);
+      map.put(constructedMap.getVertex(index), index);
 
-        vertex.addEntry(online);
+      for (int j = 0; j < partialMap.getDegree(i); j++) {
+        int adjIndex = partialMap.getAdjacentElementAt(i, j);
 
-        constructedMap.add(vertex);
+        if (adjIndex != i) {
+          constructedMap.addElementAdjList(index, base + adjIndex);
+        }
+      }
+    }
+  }
 
-        map.put(vertex.toString(), constructedMap.indexOf(vertex));
+  /**
+   * Copies partialMap into constructedMap with the entries of its vertices, as
+   * GraphFile.readMapWithEntries() reads them from graph.bin. Self-loops are
+   * dropped.
+   */
+  public static void readFromMapWithEntries(MapGraph constructedMap, VertexRegistry map,
+      MapGraph partialMap) {
+    int base = constructedMap.size();
 
-        while (true) {
-          if (from == id) {
-            vertex.addElementAdjList(to);
-          }
+    for (int i = 0; i < partialMap.size(); i++) {
+      int index = constructedMap.addVertex(partialMap.getX(i), partialMap.getY(i),
+          partialMap.getZ(i), partialMap.getOnlineSum(i), partialMap.getEntryCount(i));
 
-          if (!edgeScanner.hasNext()) break;
+      map.put(constructedMap.getVertex(index), index);
 
-          int edgeId = edgeScanner.nextInt();
-          from = edgeScanner.nextInt();
-          to = edgeScanner.nextInt();
+      for (int j = 0; j < partialMap.getDegree(i); j++) {
+        int adjIndex = partialMap.getAdjacentElementAt(i, j);
 
-          if (from != id) break;
+        if (adjIndex != i) {
+          constructedMap.addElementAdjList(index, base + adjIndex);
         }
       }
-
-
-      vertexScanner.close();
-      edgeScanner.close();
-    } catch (Exception ex) {
-      System.out.println(ex.toString());
     }
   }
 
@@ -220,15 +157,34 @@ public class MapMerging {
    * if edge e has a part of white interval else false.
    */
 
-  public boolean isWhiteInterval(Edge edge, List<Vertex> pose,
+  public boolean isWhiteInterval(Edge edge, SegmentIndex segments,
       int currentIndex, double eps, double altEps) {
-    Line line = new Line(pose.get(currentIndex - 1), pose.get(currentIndex));
+    return this.isWhiteInterval(edge, segments, currentIndex, eps, altEps,
+        scratch, filter);
+  }
 
-    if (Math.abs(line.avgAltitude() - edge.getLine().avgAltitude()) <= altEps) {
-      return line.pIntersection(edge, eps);
-    } else {
+  /**
+   * Same as isWhiteInterval(edge, segments, currentIndex, eps, altEps), using
+   * scratch for the intersection and counting in filter.
+   */
+  public boolean isWhiteInterval(Edge edge, SegmentIndex segments,
+      int currentIndex, double eps, double altEps,
+      IntersectionKernel.Scratch scratch, SegmentFilter filter) {
+    int i = currentIndex;
+
+    if (!filter.accept(segments, i, edge, eps, altEps)) {
       return false;
     }
+
+    boolean white = IntersectionKernel.intersect(segments.getX1(i),
+        segments.getY1(i), segments.getX2(i), segments.getY2(i), segments.getM(i),
+        segments.getC(i), segments.getTheta(i), edge.getRegion(eps), scratch);
+
+    filter.countExact(white);
+    if (white) {
+      scratch.applyTo(edge);
+    }
+    return white;
   }
 
   /**
@@ -248,8 +204,20 @@ public class MapMerging {
    * Scans for next white interval on an Edge starting from index newstart of
    * pose.
    */
-  public void computeNextInterval(Edge edge, List<Vertex> pose, int newstart,
+  public void computeNextInterval(Edge edge, SegmentIndex segments, int newstart,
       double eps, double altEps) {
+    this.computeNextInterval(edge, segments, newstart, eps, altEps, scratch,
+        filter);
+  }
+
+  /**
+   * Same as computeNextInterval(edge, segments, newstart, eps, altEps), using
+   * scratch for the intersections and counting in filter.
+   */
+  public void computeNextInterval(Edge edge, SegmentIndex segments, int newstart,
+      double eps, double altEps, IntersectionKernel.Scratch scratch,
+      SegmentFilter filter) {
+    IntersectionKernel.Region region = edge.getRegion(eps);
 
     // Compute next white interval on edge.
     boolean first = true;
@@ -258,14 +226,24 @@ public class MapMerging {
     int startIndex = 0;
     double cstart = 0, vstart = 0;
 
-    if (newstart >= pose.size()) {
-      edge.setCurveEndIndex(pose.size());
+    if (newstart >= segments.size()) {
+      edge.setCurveEndIndex(segments.size());
       edge.setDone(true);
       return;
     }
 
-    for (int i = newstart; i < pose.size(); i++) {
-      boolean result = isWhiteInterval(edge, pose, i, eps, altEps);
+    for (int i = newstart; i < segments.size(); i++) {
+      // a segment which doesn't come near the edge has no white interval,
+      // so the search for the first one skips straight to the next near one
+      if (first) {
+        i = segments.next(i, region);
+        if (i >= segments.size()) {
+          break;
+        }
+      }
+
+      boolean result = isWhiteInterval(edge, segments, i, eps, altEps,
+          scratch, filter);
 
       // first = true means we are still looking for our first interval
       // starting from newstart.
@@ -302,15 +280,15 @@ public class MapMerging {
     if (first) {
       // if the last segment on the curve is the first segment of that
       // interval
-      edge.setCurveEndIndex(pose.size());
+      edge.setCurveEndIndex(segments.size());
       edge.setDone(true);
     } else {
       edge.setCurveStartIndex(startIndex);
       edge.setCurveStart(startIndex + cstart);
       edge.setEdgeStart(vstart);
 
-      edge.setCurveEnd(pose.size() - 2 + edge.getCurveEnd());
-      edge.setCurveEndIndex(pose.size() - 2);
+      edge.setCurveEnd(segments.size() - 2 + edge.getCurveEnd());
+      edge.setCurveEndIndex(segments.size() - 2);
     }
 
     return;
@@ -320,37 +298,29 @@ public class MapMerging {
    * Updates constructedMap by adding an Edge. Detail description of the
    * algorithm is in the publication.
    */
-  public void updateMap(List<Vertex> constructedMap,
-      Map<String, Integer> map, Edge edge) {
+  public void updateMap(MapGraph constructedMap,
+      VertexRegistry map, EdgeIndex edgeIndex, Edge edge) {
 
     // update the map by adding a new edge
     Vertex v;
     int parent = -1;
     int child = -1;
 
-    String keyParent = edge.getVertex1().toString();
-    String keyChild = edge.getVertex2().toString();
-    // find the index of parent node
-    if (map.containsKey(keyParent)) {
-      parent = map.get(keyParent).intValue();
-
-      constructedMap.get(parent).addEntry(edge.getVertex1());
+    // find the index of parent node, a new vertex gets the next index
+    v = edge.getVertex1();
+    parent = map.putIfAbsent(v, constructedMap.size());
+    if (parent < constructedMap.size()) {
+      constructedMap.addEntry(parent, v);
     } else {
-      v = edge.getVertex1();
-      constructedMap.add(v);
-      parent = constructedMap.indexOf(v);
-      map.put(keyParent, parent);
+      constructedMap.addVertex(v);
     }
     // find the index of child node
-    if (map.containsKey(keyChild)) {
-      child = map.get(keyChild).intValue();
-
-      constructedMap.get(child).addEntry(edge.getVertex2());
+    v = edge.getVertex2();
+    child = map.putIfAbsent(v, constructedMap.size());
+    if (child < constructedMap.size()) {
+      constructedMap.addEntry(child, v);
     } else {
-      v = edge.getVertex2();
-      constructedMap.add(v);
-      child = constructedMap.indexOf(v);
-      map.put(keyChild, child);
+      constructedMap.addVertex(v);
     }
     // update the map
     if (parent == -1 || child == -1) {
@@ -358,11 +328,14 @@ public class MapMerging {
           + child + ", " + parent);
     } else if (parent != child) {
 
-      constructedMap.get(parent).addElementAdjList(child);
-      constructedMap.get(child).addElementAdjList(parent);
+      constructedMap.addElementAdjList(parent, child);
+      constructedMap.addElementAdjList(child, parent);
+      edgeIndex.add(parent, child);
 
-      logger.log(Level.FINEST, "child, parent :" + child + ", " + parent);
-      logger.log(Level.FINEST, "child, parent :" + parent + ", " + child);
+      if (logger.isLoggable(Level.FINEST)) {
+        logger.log(Level.FINEST, "child, parent :" + child + ", " + parent);
+        logger.log(Level.FINEST, "child, parent :" + parent + ", " + child);
+      }
 
     }
   }
@@ -373,35 +346,28 @@ public class MapMerging {
    * @param newVertexPosition
    *            represents position of a new Vertex
    */
-  public void edgeSplit(List<Vertex> constructedMap,
-      Map<String, Integer> map, Edge edge, double newVertexPosition) {
-
-    Vertex v1 = edge.getVertex1();
-    Vertex v2 = edge.getVertex2();
-
-    String key1 = v1.toString();
-    String key2 = v2.toString();
+  public void edgeSplit(MapGraph constructedMap,
+      VertexRegistry map, Edge edge, double newVertexPosition) {
 
-    // call of this method always after updateMap which ensures
-    // map.containsKey(key1) is
-    // always true.
-    int index1 = map.get(key1).intValue();
-    int index2 = map.get(key2).intValue();
+    // edge is always an edge of constructedMap, so its endpoints are
+    // already indexed.
+    int index1 = edge.getIndex1();
+    int index2 = edge.getIndex2();
 
-    Vertex v = edge.getLine().getVertex(newVertexPosition);
+    Vertex v = edge.getVertex(newVertexPosition);
 
     // splitting an edge on split point vertex v
 
-    String key = v.toString();
-
-    int index = map.get(key).intValue();
+    int index = map.get(v);
 
     if (index == index1 || index == index2) {
       return;
     }
 
-    logger.log(Level.FINER, "Index = " + index1 + " " + index2 + " "
-        + index);
+    if (logger.isLoggable(Level.FINER)) {
+      logger.log(Level.FINER, "Index = " + index1 + " " + index2 + " "
+          + index);
+    }
 
     edge.addSplit(newVertexPosition, index);
   }
@@ -410,8 +376,8 @@ public class MapMerging {
    * Commits edge splitting listed in List<Integer> Edge.edgeSplitVertices.
    */
 
-  public void commitEdgeSplits(List<Edge> edges, Map<String, Integer> map,
-      List<Vertex> graph) {
+  public void commitEdgeSplits(List<Edge> edges, VertexRegistry map,
+      EdgeIndex edgeIndex, EdgeTable edgeTable, MapGraph graph) {
     for (int e = 0; e < edges.size(); e++) {
       Edge edge = edges.get(e);
 
@@ -426,37 +392,35 @@ public class MapMerging {
       int splitSize = edgeVertexSplits.size();
 
       if (splitSize == 0) {
-        return;
+        continue;
       }
 
-      Vertex v1 = edge.getVertex1();
-      Vertex v2 = edge.getVertex2();
-
-      String key1 = v1.toString();
-      String key2 = v2.toString();
-
-      int index1 = map.get(key1).intValue();
-      int index2 = map.get(key2).intValue();
+      int index1 = edge.getIndex1();
+      int index2 = edge.getIndex2();
 
       boolean updateV1 = false, updateV2 = false;
 
-      logger.log(Level.FINER, "commitEdgeSplits " + splitSize);
+      if (logger.isLoggable(Level.FINER)) {
+        logger.log(Level.FINER, "commitEdgeSplits " + splitSize);
+      }
 
-      for (int i = 0; i < v1.getDegree(); i++) {
-        if (v1.getAdjacentElementAt(i) == index2) {
-          v1.setAdjacentElementAt(i, edgeVertexSplits.get(0).intValue());
-          graph.get(edgeVertexSplits.get(0).intValue())
-              .addElementAdjList(index1);
+      for (int i = 0; i < graph.getDegree(index1); i++) {
+        if (graph.getAdjacentElementAt(index1, i) == index2) {
+          graph.setAdjacentElementAt(index1, i, edgeVertexSplits.get(0).intValue());
+          graph.addElementAdjList(edgeVertexSplits.get(0).intValue(),
+              index1);
+          edgeIndex.add(index1, edgeVertexSplits.get(0).intValue());
           updateV1 = true;
         }
       }
 
-      for (int i = 0; i < v2.getDegree(); i++) {
-        if (v2.getAdjacentElementAt(i) == index1) {
-          v2.setAdjacentElementAt(i, edgeVertexSplits.get(splitSize - 1)
+      for (int i = 0; i < graph.getDegree(index2); i++) {
+        if (graph.getAdjacentElementAt(index2, i) == index1) {
+          graph.setAdjacentElementAt(index2, i, edgeVertexSplits.get(splitSize - 1)
               .intValue());
-          graph.get(edgeVertexSplits.get(splitSize - 1).intValue())
-              .addElementAdjList(index2);
+          graph.addElementAdjList(edgeVertexSplits.get(splitSize - 1).intValue(),
+              index2);
+          edgeIndex.add(index2, edgeVertexSplits.get(splitSize - 1).intValue());
           updateV2 = true;
         }
       }
@@ -464,14 +428,19 @@ public class MapMerging {
       for (int i = 0; i < splitSize - 1; i++) {
         int currentVertex = edgeVertexSplits.get(i).intValue();
         int nextVertex = edgeVertexSplits.get(i + 1).intValue();
-        graph.get(currentVertex).addElementAdjList(nextVertex);
-        graph.get(nextVertex).addElementAdjList(currentVertex);
+        graph.addElementAdjList(currentVertex, nextVertex);
+        graph.addElementAdjList(nextVertex, currentVertex);
+        edgeIndex.add(currentVertex, nextVertex);
+      }
+      if (updateV1 || updateV2) {
+        edgeIndex.remove(index1, index2);
+        edgeTable.remove(index1, index2);
       }
       if (!(updateV1 && updateV2)) {
         logger.log(Level.SEVERE, "inconsistent graph: (" + splitSize + ")"
             + index1 + " " + index2 + " "
-            + v1.getAdjacencyList().toString() + " "
-            + v2.getAdjacencyList().toString());
+            + graph.adjacencyToString(index1) + " "
+            + graph.adjacencyToString(index2));
       }
     }
   }
@@ -480,10 +449,11 @@ public class MapMerging {
    * Adds a portion of a pose as edges into constructedMap.
    */
 
-  public void addToGraph(List<Vertex> constructedMap, List<Vertex> pose,
-      Map<String, Integer> map, int startIndex, int endIndex) {
+  public void addToGraph(MapGraph constructedMap, List<Vertex> pose,
+      VertexRegistry map, EdgeIndex edgeIndex, int startIndex,
+      int endIndex) {
     for (int i = startIndex; i < endIndex; i++) {
-      this.updateMap(constructedMap, map,
+      this.updateMap(constructedMap, map, edgeIndex,
           new Edge(pose.get(i), pose.get(i + 1)));
     }
 
@@ -493,14 +463,19 @@ public class MapMerging {
    * Update the map for a pose/curve. Definition of black and white interval.
    */
   // @TODO(mahmuda): extract some shorter well-named methods.
-  public void mapConstruction(List<Vertex> constructedMap, List<Edge> edges,
-      Map<String, Integer> map, List<Vertex> pose, double eps,
-      double altEps) {
+  public void mapConstruction(MapGraph constructedMap, List<Edge> edges,
+      VertexRegistry map, EdgeIndex edgeIndex, List<Vertex> pose,
+      SegmentIndex segments, double eps, double altEps) {
+
+    // each edge only reads the pose and writes to itself, so the first
+    // white intervals of all edges are computed in parallel
+    this.intervals.computeFirstIntervals(this, edges, segments, eps, altEps,
+        filter);
 
     PriorityQueue<Edge> pq = new PriorityQueue<Edge>();
 
+    // edges are queued in list order, as in a sequential run
     for (int i = 0; i < edges.size(); i++) {
-      this.computeNextInterval(edges.get(i), pose, 1, eps, altEps);
       if (!edges.get(i).getDone()) {
         pq.add(edges.get(i));
       }
@@ -512,13 +487,17 @@ public class MapMerging {
 
       if (pq.isEmpty()) {
 
-        logger.log(Level.FINER, MapMerging.curveName
-            + " inserted as an edge");
+        if (logger.isLoggable(Level.FINER)) {
+          logger.log(Level.FINER, MapMerging.curveName
+              + " inserted as an edge");
+        }
 
-        this.addToGraph(constructedMap, pose, map, 0, pose.size() - 1);
+        this.addToGraph(constructedMap, pose, map, edgeIndex, 0, pose.size() - 1);
 
-        logger.log(Level.FINER, MapMerging.curveName
-            + " inserted as an edge");
+        if (logger.isLoggable(Level.FINER)) {
+          logger.log(Level.FINER, MapMerging.curveName
+              + " inserted as an edge");
+        }
         return;
       }
 
@@ -535,22 +514,24 @@ public class MapMerging {
 
       if (edge.getCurveStart() > 0) {
 
-        logger.log(Level.FINER, MapMerging.curveName
-            + " inserted as an edge until " + edge.getCurveStart());
+        if (logger.isLoggable(Level.FINER)) {
+          logger.log(Level.FINER, MapMerging.curveName
+              + " inserted as an edge until " + edge.getCurveStart());
+        }
 
         int index = (int) Math.floor(edge.getCurveStart());
 
-        this.addToGraph(constructedMap, pose, map, 0, index);
+        this.addToGraph(constructedMap, pose, map, edgeIndex, 0, index);
 
         Line newLine = new Line(pose.get(index), pose.get(Math.min(poseLimit, index + 1)));
         double t = edge.getCurveStart()
             - Math.floor(edge.getCurveStart());
-        this.updateMap(constructedMap, map, new Edge(pose.get(index),
+        this.updateMap(constructedMap, map, edgeIndex, new Edge(pose.get(index),
             newLine.getVertex(t)));
 
-        this.updateMap(constructedMap, map,
-            new Edge(newLine.getVertex(t), edge.getLine()
-                .getVertex(edge.getEdgeStart())));
+        this.updateMap(constructedMap, map, edgeIndex,
+            new Edge(newLine.getVertex(t),
+                edge.getVertex(edge.getEdgeStart())));
         this.edgeSplit(constructedMap, map, edge, edge.getEdgeStart());
       }
 
@@ -559,9 +540,11 @@ public class MapMerging {
 
       while (cend < pose.size()) {
 
-        logger.log(Level.FINEST, MapMerging.curveName
-            + " has white interval " + edge.getCurveStart() + " "
-            + edge.getCurveEnd() + " " + cend);
+        if (logger.isLoggable(Level.FINEST)) {
+          logger.log(Level.FINEST, MapMerging.curveName
+              + " has white interval " + edge.getCurveStart() + " "
+              + edge.getCurveEnd() + " " + cend);
+        }
 
         if (cend < edge.getCurveEnd()) {
           cend = edge.getCurveEnd();
@@ -570,35 +553,37 @@ public class MapMerging {
 
         // Add entry from curve Start
         if (!first || (edge.getCurveStart() == 0)) {
-          Vertex v = (edge.getEdgeStart() > 0.5) ? edge.getVertex2() : edge.getVertex1();
+          int vertexIndex = (edge.getEdgeStart() > 0.5) ? edge.getIndex2() : edge.getIndex1();
 
           int curveIndex = (int) Math.floor(edge.getCurveStart());
 
-          v.addEntry(
+          constructedMap.addEntry(vertexIndex,
             new Line(pose.get(curveIndex), pose.get(Math.min(poseLimit, curveIndex + 1)))
               .getVertex(edge.getCurveStart() - Math.floor(edge.getCurveStart()))
           );
         }
 
         // Add entry from curve End
-        Vertex v = (edge.getEdgeEnd() > 0.5) ? edge.getVertex2() : edge.getVertex1();
+        int vertexIndex = (edge.getEdgeEnd() > 0.5) ? edge.getIndex2() : edge.getIndex1();
 
         int curveIndex = (int) Math.ceil(edge.getCurveEnd());
 
-        v.addEntry(
+        constructedMap.addEntry(vertexIndex,
           new Line(pose.get(Math.max(0, curveIndex - 1)), pose.get(curveIndex))
             .getVertex(edge.getCurveEnd() - Math.floor(edge.getCurveEnd()))
         );
 
         if (edge.getCurveEnd() == pose.size() - 1) {
-          logger.log(Level.FINER, MapMerging.curveName
-              + " processing completed.");
+          if (logger.isLoggable(Level.FINER)) {
+            logger.log(Level.FINER, MapMerging.curveName
+                + " processing completed.");
+          }
           return;
         }
 
         first = false;
 
-        this.computeNextInterval(edge, pose,
+        this.computeNextInterval(edge, segments,
             edge.getCurveEndIndex() + 1, eps, altEps);
 
         if (!edge.getDone()) {
@@ -606,8 +591,10 @@ public class MapMerging {
         }
 
         if (pq.isEmpty()) {
-          logger.log(Level.FINER, MapMerging.curveName
-              + " inserted as an edge from " + cend + " to end");
+          if (logger.isLoggable(Level.FINER)) {
+            logger.log(Level.FINER, MapMerging.curveName
+                + " inserted as an edge from " + cend + " to end");
+          }
 
           int index = (int) Math.floor(cend);
           Line newLine = new Line(pose.get(index),
@@ -616,13 +603,14 @@ public class MapMerging {
           this.updateMap(
               constructedMap,
               map,
-              new Edge(cedge.getLine().getVertex(
+              edgeIndex,
+              new Edge(cedge.getVertex(
                   cedge.getEdgeEnd()), newLine.getVertex(t)));
           this.edgeSplit(constructedMap, map, cedge,
               cedge.getEdgeEnd());
-          this.updateMap(constructedMap, map,
+          this.updateMap(constructedMap, map, edgeIndex,
               new Edge(newLine.getVertex(t), pose.get(Math.min(poseLimit, index + 1))));
-          this.addToGraph(constructedMap, pose, map, Math.min(poseLimit, index + 1),
+          this.addToGraph(constructedMap, pose, map, edgeIndex, Math.min(poseLimit, index + 1),
               pose.size() - 1);
 
           return;
@@ -631,9 +619,11 @@ public class MapMerging {
         edge = pq.poll();
 
         if (edge.getCurveStart() > cend) {
-          logger.log(Level.FINER, MapMerging.curveName
-              + " inserted as an edge from " + cend + " to "
-              + edge.getCurveStart());
+          if (logger.isLoggable(Level.FINER)) {
+            logger.log(Level.FINER, MapMerging.curveName
+                + " inserted as an edge from " + cend + " to "
+                + edge.getCurveStart());
+          }
 
           // need to add rest of the line segment
 
@@ -646,7 +636,8 @@ public class MapMerging {
           this.updateMap(
               constructedMap,
               map,
-              new Edge(cedge.getLine().getVertex(
+              edgeIndex,
+              new Edge(cedge.getVertex(
                   cedge.getEdgeEnd()), newLine.getVertex(t)));
           this.edgeSplit(constructedMap, map, cedge,
               cedge.getEdgeEnd());
@@ -655,6 +646,7 @@ public class MapMerging {
             this.updateMap(
                 constructedMap,
                 map,
+                edgeIndex,
                 new Edge(newLine.getVertex(t),
                     newLine.getVertex(edge.getCurveStart()
                         - index)));
@@ -666,22 +658,23 @@ public class MapMerging {
             this.updateMap(
                 constructedMap,
                 map,
+                edgeIndex,
                 new Edge(newLine.getVertex(t), pose
                     .get(Math.min(poseLimit, index + 1))));
 
-            this.addToGraph(constructedMap, pose, map, Math.min(poseLimit, index + 1),
+            this.addToGraph(constructedMap, pose, map, edgeIndex, Math.min(poseLimit, index + 1),
                 (int) Math.floor(edge.getCurveStart()));
             index = (int) Math.floor(edge.getCurveStart());
             newLine = new Line(pose.get(index), pose.get(Math.min(poseLimit, index + 1)));
             t = edge.getCurveStart()
                 - Math.floor(edge.getCurveStart());
-            this.updateMap(constructedMap, map,
+            this.updateMap(constructedMap, map, edgeIndex,
                 new Edge(pose.get(index), newLine.getVertex(t)));
 
           }
-          this.updateMap(constructedMap, map,
-              new Edge(newLine.getVertex(t), edge.getLine()
-                  .getVertex(edge.getEdgeStart())));
+          this.updateMap(constructedMap, map, edgeIndex,
+              new Edge(newLine.getVertex(t),
+                  edge.getVertex(edge.getEdgeStart())));
           this.edgeSplit(constructedMap, map, edge,
               edge.getEdgeStart());
         }
@@ -693,77 +686,109 @@ public class MapMerging {
     return;
   }
 
-  public static void poseFromMap(List<CurveFile> poseFiles, List<Vertex> constructedMap, int startIndex, List<Integer> vertexHistory) {
-    List<Vertex> curve = new ArrayList<Vertex>();
-
-    Vertex vertex = constructedMap.get(startIndex);
-
-    curve.add(new Vertex(vertex));
-
-    vertexHistory.add(startIndex);
-
-    double minX = vertex.getX(), maxX = vertex.getX(), minY = vertex.getY(), maxY = vertex.getY();
-
-    int currIndex = startIndex;
-
-    while (true) {
-      vertex = constructedMap.get(currIndex);
+  /**
+   * A curve followed through a map by poseFromMap(), with the position
+   * reached in the adjacency list of its current vertex.
+   */
+  private static class Chain {
+    final ArrayList<Vertex> curve = new ArrayList<Vertex>();
+    double minX, minY, maxX, maxY;
+    int current; // the vertex whose neighbours are being looked at
+    int position; // next index in the adjacency list of current
+    int next = -1; // the vertex the curve goes on with, -1 if none yet
+
+    Chain(MapGraph constructedMap, int startIndex) {
+      minX = minY = Double.POSITIVE_INFINITY;
+      maxX = maxY = Double.NEGATIVE_INFINITY;
+
+      add(constructedMap, startIndex);
+      current = startIndex;
+    }
 
-      boolean next = false;
-      int nextIndex = 0;
+    void add(MapGraph constructedMap, int index) {
+      curve.add(constructedMap.getVertex(index));
 
-      for (int i = 0; i < vertex.getDegree(); i++) {
-        int adjIndex = vertex.getAdjacentElementAt(i);
+      minX = Math.min(minX, constructedMap.getX(index));
+      maxX = Math.max(maxX, constructedMap.getX(index));
+      minY = Math.min(minY, constructedMap.getY(index));
+      maxY = Math.max(maxY, constructedMap.getY(index));
+    }
 
-        if (vertexHistory.contains(adjIndex)) continue;
+    /**
+     * Checks if vertex index lies in the bounding box of the curve, in which
+     * case the curve would return into itself.
+     */
+    boolean encloses(MapGraph constructedMap, int index) {
+      double x = constructedMap.getX(index);
+      double y = constructedMap.getY(index);
 
-        Vertex nextVertex = new Vertex(constructedMap.get(adjIndex));
+      return (x >= minX) && (x <= maxX) && (y >= minY) && (y <= maxY);
+    }
+  }
 
-        boolean returned = (nextVertex.getX() >= minX) && (nextVertex.getX() <= maxX) && (nextVertex.getY() >= minY) && (nextVertex.getY() <= maxY);
+  /**
+   * Splits the part of constructedMap reachable from startIndex into curves
+   * and adds them to poseFiles. A curve goes on with the first unvisited
+   * neighbour of its last vertex which lies outside its bounding box. Every
+   * other unvisited neighbour starts a new curve from that vertex, which is
+   * completed before the curve it branches off. Visited vertices are set in
+   * visited.
+   */
+  public static void poseFromMap(List<CurveFile> poseFiles, MapGraph constructedMap, int startIndex, BitSet visited) {
+    // the curves being followed, the innermost branch on top
+    ArrayDeque<Chain> stack = new ArrayDeque<Chain>();
 
-        if (!next && !returned) {
-          curve.add(nextVertex);
+    visited.set(startIndex);
+    stack.push(new Chain(constructedMap, startIndex));
 
-          vertexHistory.add(adjIndex);
+    while (!stack.isEmpty()) {
+      Chain chain = stack.peek();
 
-          next = true;
+      if (chain.position < constructedMap.getDegree(chain.current)) {
+        int adjIndex = constructedMap.getAdjacentElementAt(chain.current, chain.position++);
 
-          nextIndex = adjIndex;
+        if (visited.get(adjIndex)) continue;
 
-          minX = Math.min(minX, nextVertex.getX());
-          maxX = Math.max(maxX, nextVertex.getX());
-          minY = Math.min(minY, nextVertex.getY());
-          maxY = Math.max(maxY, nextVertex.getY());
+        if (chain.next == -1 && !chain.encloses(constructedMap, adjIndex)) {
+          chain.add(constructedMap, adjIndex);
+          visited.set(adjIndex);
+          chain.next = adjIndex;
         } else {
-          MapMerging.poseFromMap(poseFiles, constructedMap, currIndex, vertexHistory);
+          stack.push(new Chain(constructedMap, chain.current));
         }
+      } else if (chain.next != -1) {
+        chain.current = chain.next;
+        chain.position = 0;
+        chain.next = -1;
+      } else {
+        stack.pop();
+        poseFiles.add(CurveFile.readTrack(chain.curve));
       }
-
-      if (!next) break;
-
-      currIndex = nextIndex;
     }
-
-    poseFiles.add(CurveFile.readTrack(curve));
   }
 
   public static void readMapFiles(List<CurveFile> poseFiles, File folder) {
     System.out.print(LINE_FLUSH + "Reading partial map...");
 
-    List<Vertex> constructedMap = new ArrayList<Vertex>();
+    MapGraph partialMap = new MapGraph();
 
-    MapMerging.readFromFile(constructedMap, new HashMap<String, Integer>(), folder.getAbsolutePath());
+    MapMerging.readFromFile(partialMap, new VertexRegistry(), folder.getAbsolutePath());
 
-    List<Integer> vertexHistory = new ArrayList<Integer>();
+    MapMerging.readMap(poseFiles, partialMap);
+  }
 
-    int startIndex = 0;
+  /**
+   * Splits partialMap into curves and adds them to poseFiles.
+   */
+  public static void readMap(List<CurveFile> poseFiles, MapGraph partialMap) {
+    // the partial map is only read from now on
+    MapGraph constructedMap = partialMap.isReadOnly() ? partialMap : partialMap.snapshot();
 
-    while (vertexHistory.size() < constructedMap.size()) {
-      MapMerging.poseFromMap(poseFiles, constructedMap, startIndex, vertexHistory);
+    BitSet visited = new BitSet(constructedMap.size());
 
-      while (vertexHistory.contains(startIndex)) {
-        startIndex++;
-      }
+    for (int startIndex = visited.nextClearBit(0); startIndex < constructedMap.size();
+        startIndex = visited.nextClearBit(startIndex + 1)) {
+      MapMerging.poseFromMap(poseFiles, constructedMap, startIndex, visited);
     }
   }
 
@@ -771,7 +796,12 @@ public class MapMerging {
    * Constructs map from poses and returns string representation of the map.
    */
 
-  public List<Vertex> constructMapMain(List<Vertex> constructedMap, Map<String, Integer> map, List<CurveFile> poseFiles, double eps, double altEps) {
+  public MapGraph constructMapMain(MapGraph constructedMap, VertexRegistry map, List<CurveFile> poseFiles, double eps, double altEps) {
+    // edgeIndex contains the edges of constructedMap in a spatial grid
+    EdgeIndex edgeIndex = EdgeIndex.build(constructedMap,
+        EdgeIndex.CELL_SIZE_IN_EPS * eps);
+    // edgeTable keeps the Edge objects of constructedMap across poses
+    EdgeTable edgeTable = new EdgeTable(constructedMap);
     try {
       double length = 0;
 
@@ -788,41 +818,31 @@ public class MapMerging {
           continue;
         }
 
-        List<Edge> edges = new ArrayList<Edge>();
-
-        List<Integer> vertexHistory = new ArrayList<Integer>();
-
-        for (int i = 0; i < constructedMap.size(); i++) {
-          Vertex v = constructedMap.get(i);
-
-          for (int j = 0; j < v.getDegree(); j++) {
-            int index = v.getAdjacentElementAt(j);
-
-            if ((index == i) || vertexHistory.contains(index)) continue;
-
-            Vertex w = constructedMap.get(index);
+        // only edges crossing the bounding box of the pose, expanded by eps,
+        // can contain a white interval
+        List<Edge> edges = edgeIndex.getEdges(edgeTable, poseFile.minX - eps,
+            poseFile.minY - eps, poseFile.maxX + eps, poseFile.maxY + eps);
 
-            if (!poseFile.enclosesVertex(v) && !poseFile.enclosesVertex(w)) continue;
-
-            edges.add(new Edge(v, w));
-          }
-
-          vertexHistory.add(i);
-        }
-
-        this.mapConstruction(constructedMap, edges, map, poseFile.getPose(), eps, altEps);
-        this.commitEdgeSplits(edges, map, constructedMap);
+        this.mapConstruction(constructedMap, edges, map, edgeIndex, poseFile.getPose(),
+            poseFile.getSegmentIndex(), eps, altEps);
+        this.commitEdgeSplits(edges, map, edgeIndex, edgeTable, constructedMap);
 
         logger.info("k :" + k + " " + MapMerging.curveName + " "
             + length + " :"
             + (System.currentTimeMillis() - startTime) / 60000.00);
 
-        System.out.print(LINE_FLUSH + "Rebuilding map: " + k + "/" + poseFiles.size() + " tracks");
+        if (showProgress) {
+          System.out.print(LINE_FLUSH + "Rebuilding map: " + k + "/" + poseFiles.size() + " tracks");
+        }
       }
     } catch (Exception e) {
       logger.log(Level.SEVERE, e.toString());
       throw new RuntimeException(e);
+    } finally {
+      // the threads of the pool would otherwise stay until the JVM exits
+      this.intervals.shutdown();
     }
+    logger.info("white interval tests: " + filter);
     return constructedMap;
   }
 
@@ -849,12 +869,17 @@ public class MapMerging {
       altEps = 4.0;
     }
 
+    // number of threads computing the first white intervals of the edges
+    if (args.length > 5) {
+      mapConstruction.setParallelism(Integer.parseInt(args[5]));
+    }
+
     List<CurveFile> poseFiles = new ArrayList<CurveFile>();
 
-    List<Vertex> constructedMap = new ArrayList<Vertex>();
+    MapGraph constructedMap = new MapGraph();
     // map contains mapping between vertex keys and their indices in
     // constructedMap
-    Map<String, Integer> map = new HashMap<String, Integer>();
+    VertexRegistry map = new VertexRegistry();
 
     boolean first = false;
 
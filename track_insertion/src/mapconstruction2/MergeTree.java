@@ -0,0 +1,258 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: MergeTree.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Merges partial maps as a balanced binary reduction tree instead of inserting all of them into
+ * one growing map. On each level the maps are sorted by size and merged in pairs, the smallest
+ * two together and so on, and the pairs of a level are merged concurrently. A pair is merged as
+ * MapMerging merges two map folders, with the larger map as the base map. When a level has an
+ * odd number of maps, the largest one moves up to the next level unchanged.
+ *
+ * The base map of a pair keeps the entries it accumulated on the levels below, as the growing
+ * base map of MapMerging keeps the entries of the maps inserted into it, while the other map
+ * gets one entry per vertex, its online average, as a map MapMerging reads from its folder. The
+ * partial maps start with one entry per vertex too.
+ *
+ * The result doesn't depend on the number of threads.
+ */
+public class MergeTree {
+
+  private static final Logger logger = Logger.getAnonymousLogger();
+
+  private static final String LINE_FLUSH = "\r\033[K";
+
+  private final double eps;
+  private final double altEps;
+  private final int parallelism;
+
+  /**
+   * @param parallelism the number of threads shared by the merges of a level
+   */
+  public MergeTree(double eps, double altEps, int parallelism) {
+    this.eps = eps;
+    this.altEps = altEps;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  // if merge prints its progress on the console
+  private boolean showProgress = true;
+
+  public void setShowProgress(boolean showProgress) {
+    this.showProgress = showProgress;
+  }
+
+  /**
+   * Merges other into base as MapMerging inserts a map read from its folder into its base map,
+   * which keeps its entries.
+   *
+   * @param parallelism the number of threads computing the first white intervals
+   */
+  public MapGraph mergePair(MapGraph base, MapGraph other, int parallelism) {
+    TraceEvents.PartialMapMerged event = new TraceEvents.PartialMapMerged();
+    event.begin();
+
+    MapGraph constructedMap = new MapGraph();
+    // map contains mapping between vertex keys and their indices in
+    // constructedMap
+    VertexRegistry map = new VertexRegistry();
+
+    MapMerging.readFromMapWithEntries(constructedMap, map, base);
+
+    // the curves get the entries they would get from the files
+    MapGraph partialMap = new MapGraph();
+    MapMerging.readFromMap(partialMap, new VertexRegistry(), other);
+
+    List<CurveFile> poseFiles = new ArrayList<CurveFile>();
+    MapMerging.readMap(poseFiles, partialMap);
+
+    MapMerging mapMerging = new MapMerging();
+    mapMerging.setParallelism(parallelism);
+    mapMerging.setShowProgress(false);
+
+    MapGraph merged = mapMerging.constructMapMain(constructedMap, map, poseFiles, eps, altEps)
+        .snapshot();
+
+    if (event.shouldCommit()) {
+      event.baseVertices = base.size();
+      event.otherVertices = other.size();
+      event.curves = poseFiles.size();
+      event.vertices = merged.size();
+      event.threads = parallelism;
+      event.commit();
+    }
+    return merged;
+  }
+
+  /**
+   * Sorts maps by size, keeping the order of maps of the same size.
+   */
+  private static void sortBySize(List<MapGraph> maps) {
+    Collections.sort(maps, new Comparator<MapGraph>() {
+      @Override
+      public int compare(MapGraph m1, MapGraph m2) {
+        return Integer.compare(m1.size(), m2.size());
+      }
+    });
+  }
+
+  /**
+   * Merges all partialMaps into one map.
+   */
+  public MapGraph merge(List<MapGraph> partialMaps) {
+    if (partialMaps.isEmpty()) {
+      return new MapGraph();
+    }
+
+    List<MapGraph> level = new ArrayList<MapGraph>();
+
+    // the entries the partial maps would have when read from their folders
+    for (MapGraph partialMap : partialMaps) {
+      MapGraph leaf = new MapGraph();
+
+      MapMerging.readFromMap(leaf, new VertexRegistry(), partialMap);
+      level.add(leaf.snapshot());
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    int depth = 0;
+
+    try {
+      while (level.size() > 1) {
+        sortBySize(level);
+
+        final int pairs = level.size() / 2;
+        // threads left over by the pairs go to the interval computations
+        final int innerParallelism = Math.max(1, parallelism / pairs);
+        final List<MapGraph> maps = level;
+
+        List<Callable<MapGraph>> tasks = new ArrayList<Callable<MapGraph>>();
+
+        for (int i = 0; i < pairs; i++) {
+          final int index = 2 * i;
+
+          tasks.add(new Callable<MapGraph>() {
+            @Override
+            public MapGraph call() {
+              // the larger map is the base, the smaller one is split into curves
+              return mergePair(maps.get(index + 1), maps.get(index), innerParallelism);
+            }
+          });
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<MapGraph> next = new ArrayList<MapGraph>();
+
+        for (Future<MapGraph> future : pool.invokeAll(tasks)) {
+          next.add(future.get());
+        }
+        if (level.size() % 2 == 1) {
+          next.add(level.get(level.size() - 1));
+        }
+
+        depth++;
+        logger.info("merge level " + depth + ": " + level.size() + " maps into " + next.size()
+            + " :" + (System.currentTimeMillis() - startTime) / 60000.00);
+
+        if (showProgress) {
+          System.out.print(LINE_FLUSH + "Merging maps: level " + depth + ", " + next.size()
+              + " maps left");
+        }
+
+        level = next;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    return level.get(0);
+  }
+
+  public static void main(String args[]) throws IOException {
+    // path to the folder that contains one folder per partial map.
+    String inputPath = args[0];
+
+    // path to the folder where the output will be written.
+    String outputpath = args[1];
+
+    // epsilon; see the paper for detail
+    double eps = Double.parseDouble(args[2]);
+
+    // args[3], if the tracks had altitude information, is not needed to read
+    // maps and only kept for the same arguments as MapMerging
+
+    // minimum altitude difference between two streets.
+    double altEps = 4.0;
+    if (args.length > 4) {
+      altEps = Double.parseDouble(args[4]);
+    }
+
+    // number of threads merging maps at the same time
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    if (args.length > 5) {
+      parallelism = Integer.parseInt(args[5]);
+    }
+
+    List<MapGraph> partialMaps = new ArrayList<MapGraph>();
+
+    for (File folder : FullRebuild.listTracksets(new File(inputPath))) {
+      System.out.print(LINE_FLUSH + "Reading partial map...");
+
+      MapGraph partialMap = new MapGraph();
+      MapMerging.readFromFile(partialMap, new VertexRegistry(), folder.getAbsolutePath());
+      partialMaps.add(partialMap.snapshot());
+    }
+
+    MapGraph constructedMap = new MergeTree(eps, altEps, parallelism).merge(partialMaps);
+
+    System.out.print(LINE_FLUSH + "Exporting merged map...");
+
+    // a failed export ends the run with an error instead of reporting success
+    GraphFile.writeMap(constructedMap, new File(outputpath));
+
+    System.out.print(LINE_FLUSH + "Merged maps!\n");
+  }
+}
@@ -0,0 +1,149 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: ParallelIntervals.java
+ *
+ */
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the first white interval of every candidate edge of a pose on a fork-join pool. A scan
+ * only reads the pose and writes to its own edge, so the edges are split into chunks which run
+ * independently, each with its own Scratch and SegmentFilter.
+ *
+ * The pool is created by the first computation which needs it, and its threads stay until
+ * shutdown(). Its owner calls shutdown() once it has inserted its poses.
+ */
+public class ParallelIntervals {
+
+  /**
+   * Number of edges below which a chunk is not split any further.
+   */
+  public static final int CHUNK_SIZE = 32;
+
+  /**
+   * Scans a pose for the next white interval on an edge, see computeNextInterval() in
+   * MapConstruction, MapMerging and TrackIsolation.
+   */
+  interface Scanner {
+    void computeNextInterval(Edge edge, SegmentIndex segments, int newstart, double eps,
+        double altEps, IntersectionKernel.Scratch scratch, SegmentFilter filter);
+  }
+
+  private final int parallelism;
+  private ForkJoinPool pool; // null until a computation needs it
+
+  /**
+   * @param parallelism the number of threads, 1 to run on the calling thread
+   */
+  public ParallelIntervals(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  private class Chunk extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Scanner scanner;
+    private final List<Edge> edges;
+    private final int from;
+    private final int to;
+    private final SegmentIndex segments;
+    private final double eps;
+    private final double altEps;
+    private final SegmentFilter filter; // receives the counters of this chunk
+
+    Chunk(Scanner scanner, List<Edge> edges, int from, int to, SegmentIndex segments,
+        double eps, double altEps, SegmentFilter filter) {
+      this.scanner = scanner;
+      this.edges = edges;
+      this.from = from;
+      this.to = to;
+      this.segments = segments;
+      this.eps = eps;
+      this.altEps = altEps;
+      this.filter = filter;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > CHUNK_SIZE) {
+        int middle = (from + to) >>> 1;
+
+        invokeAll(new Chunk(scanner, edges, from, middle, segments, eps, altEps, filter),
+            new Chunk(scanner, edges, middle, to, segments, eps, altEps, filter));
+        return;
+      }
+
+      IntersectionKernel.Scratch scratch = new IntersectionKernel.Scratch();
+      SegmentFilter chunkFilter = new SegmentFilter();
+
+      for (int i = from; i < to; i++) {
+        scanner.computeNextInterval(edges.get(i), segments, 1, eps, altEps, scratch,
+            chunkFilter);
+      }
+
+      synchronized (filter) {
+        filter.add(chunkFilter);
+      }
+    }
+  }
+
+  /**
+   * Computes the first white interval of every edge in edges, like calling
+   * scanner.computeNextInterval(edge, segments, 1, ...) for each of them in turn.
+   *
+   * @param filter receives the counters of all scans
+   */
+  void computeFirstIntervals(Scanner scanner, List<Edge> edges, SegmentIndex segments,
+      double eps, double altEps, SegmentFilter filter) {
+    Chunk chunk = new Chunk(scanner, edges, 0, edges.size(), segments, eps, altEps, filter);
+
+    if (parallelism == 1 || edges.size() <= CHUNK_SIZE) {
+      chunk.compute();
+    } else {
+      if (pool == null) {
+        pool = new ForkJoinPool(parallelism);
+      }
+      pool.invoke(chunk);
+    }
+  }
+
+  /**
+   * Stops the threads of the pool, if there are any. A later computation starts a new pool.
+   */
+  void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Author: Mahmuda Ahmed Filename: PoseFile.java
+ *
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * 
+ * An object that represents a track.
+ * 
+ */
+class PoseFile {
+	String fileName;
+	ArrayList<Vertex> curve;
+	double minX;
+	double minY;
+	double maxX;
+	double maxY;
+	SegmentIndex segmentIndex; // built on first use
+
+	// the track the curve is decoded from on first use, if it comes from a
+	// TrackContainer; curve and the bounding box are only set afterwards
+	private TrackContainer.Track track;
+
+	PoseFile() {
+		this.fileName = "";
+		this.curve = new ArrayList<Vertex>();
+
+		minX = minY = Double.POSITIVE_INFINITY;
+		maxX = maxY = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Creates a pose from the vertices of curve, with a bounding box computed
+	 * as readFile() does.
+	 */
+	PoseFile(String curveName, ArrayList<Vertex> curve) {
+		this.fileName = curveName;
+		this.curve = curve;
+
+		minX = minY = Double.POSITIVE_INFINITY;
+		maxX = maxY = Double.NEGATIVE_INFINITY;
+
+		for (Vertex v : curve) {
+			minX = Math.min(minX, v.getX());
+			minY = Math.min(minY, v.getY());
+			maxX = Math.max(maxX, v.getX());
+			maxY = Math.max(maxY, v.getY());
+		}
+
+		expandBoundingBox();
+	}
+
+	/**
+	 * Creates a pose of track, decoded on first use as readFile() parses a track
+	 * file.
+	 */
+	PoseFile(TrackContainer.Track track) {
+		this();
+		this.fileName = track.getName();
+		this.curve = null;
+		this.track = track;
+	}
+
+	/**
+	 * Decodes the points of track into curve, if not done yet.
+	 */
+	private void decode() {
+		if (curve != null) {
+			return;
+		}
+
+		curve = new ArrayList<Vertex>(track.getPointCount());
+
+		TrackContainer.Cursor cursor = track.cursor();
+
+		while (cursor.next()) {
+			Vertex newPoint = new Vertex(cursor.x, cursor.y, cursor.z,
+					cursor.timestamp);
+			newPoint.addEntry(cursor.online ? 1.0 : 0.0);
+
+			addPoint(newPoint);
+		}
+
+		expandBoundingBox();
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public ArrayList<Vertex> getPose() {
+		decode();
+		return curve;
+	}
+
+	/**
+	 * Returns the segment index of the pose, built on the first call. The pose
+	 * must not be changed afterwards.
+	 */
+	public SegmentIndex getSegmentIndex() {
+		if (segmentIndex == null) {
+			segmentIndex = new SegmentIndex(getPose());
+		}
+		return segmentIndex;
+	}
+
+	/**
+	 * Drops the segment index and, if the pose comes from a TrackContainer, the
+	 * decoded curve and its bounding box, which are built again on next use.
+	 */
+	void release() {
+		segmentIndex = null;
+
+		if (track != null) {
+			curve = null;
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	public double getLength() {
+		decode();
+		double length = 0;
+		for (int i = 1; i < curve.size(); i++) {
+			length = length + curve.get(i - 1).dist(curve.get(i));
+		}
+		return length;
+	}
+
+	public boolean enclosesVertex(Vertex v) {
+		decode();
+		return (v.getX() >= minX) && (v.getX() <= maxX) && (v.getY() >= minY) && (v.getY() <= maxY);
+	}
+
+	/**
+	 * Appends newPoint to the pose and grows the bounding box. A point closer
+	 * than 0.001 to the last point replaces it by their midpoint.
+	 */
+	void addPoint(Vertex newPoint) {
+		if (curve.size() > 0) {
+			Vertex lastPoint = curve.get(curve.size() - 1);
+
+			if (newPoint.dist(lastPoint) < 0.001) {
+				curve.remove(curve.size() - 1);
+				newPoint = (new Line(lastPoint, newPoint)).getVertex(0.5);
+			}
+		}
+
+		curve.add(newPoint);
+
+		minX = Math.min(minX, newPoint.getX());
+		minY = Math.min(minY, newPoint.getY());
+		maxX = Math.max(maxX, newPoint.getX());
+		maxY = Math.max(maxY, newPoint.getY());
+	}
+
+	/**
+	 * Expands the bounding box by 0.1 on each side, once all points are added.
+	 */
+	void expandBoundingBox() {
+		minX -= 0.1;
+		minY -= 0.1;
+		maxX += 0.1;
+		maxY += 0.1;
+	}
+
+	public static PoseFile readFile(File inputFile, boolean hasAltitude) {
+		PoseFile poseFile = new PoseFile();
+		poseFile.fileName = inputFile.getName();
+
+		try {
+			TrackParser in = TrackParser.open(inputFile);
+			double x, y, z;
+
+			while (in.nextLine()) {
+				// track file in "x y timestamp" or "x y z timestamp" format
+
+				x = in.nextDouble();
+				y = in.nextDouble();
+
+				if (hasAltitude) {
+					z = in.nextDouble();
+				} else {
+					z = 0.0;
+				}
+
+				double timestamp = in.nextDouble();
+				boolean online = in.nextBoolean();
+
+				Vertex newPoint = new Vertex(x, y, z, timestamp);
+				newPoint.addEntry(online ? 1.0 : 0.0);
+
+				poseFile.addPoint(newPoint);
+			}
+
+			poseFile.expandBoundingBox();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return poseFile;
+	}
+}
@@ -0,0 +1,181 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: SegmentFilter.java
+ *
+ */
+
+/**
+ * Cheap tests run before the exact white interval test of a curve segment and an edge, in order
+ * of cost: the altitude band, the overlap of the bounding boxes and the distance between both
+ * segments. Each test only rejects pairs the exact test would reject too. The filter counts how
+ * many pairs each test rejects and how many reach the exact test.
+ */
+public class SegmentFilter {
+
+  private long pairs; // # of pairs given to accept()
+  private long altitudeRejected;
+  private long boxRejected;
+  private long distanceRejected;
+  private long exactTested; // # of pairs accepted by all tests
+  private long exactMatched; // # of accepted pairs which have a white interval
+
+  public long getPairs() {
+    return pairs;
+  }
+
+  public long getAltitudeRejected() {
+    return altitudeRejected;
+  }
+
+  public long getBoxRejected() {
+    return boxRejected;
+  }
+
+  public long getDistanceRejected() {
+    return distanceRejected;
+  }
+
+  public long getExactTested() {
+    return exactTested;
+  }
+
+  public long getExactMatched() {
+    return exactMatched;
+  }
+
+  /**
+   * Squared distance between point (px, py) and the segment from (x1, y1) to (x2, y2).
+   */
+  static double pointSegmentDistanceSq(double px, double py, double x1, double y1, double x2,
+      double y2) {
+    double xdiff = x2 - x1;
+    double ydiff = y2 - y1;
+    double lengthSq = xdiff * xdiff + ydiff * ydiff;
+    double t = 0;
+
+    if (lengthSq > 0) {
+      t = ((px - x1) * xdiff + (py - y1) * ydiff) / lengthSq;
+      t = Math.max(0, Math.min(1, t));
+    }
+
+    double dx = x1 + xdiff * t - px;
+    double dy = y1 + ydiff * t - py;
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * Returns on which side of the line through a and b the point c lies: 1 for left, -1 for right
+   * and 0 when it is on the line.
+   */
+  private static int side(double ax, double ay, double bx, double by, double cx, double cy) {
+    return (int) Math.signum((bx - ax) * (cy - ay) - (by - ay) * (cx - ax));
+  }
+
+  /**
+   * Squared distance between the segment from (x1, y1) to (x2, y2) and the segment from (x3, y3)
+   * to (x4, y4).
+   */
+  static double segmentDistanceSq(double x1, double y1, double x2, double y2, double x3,
+      double y3, double x4, double y4) {
+    if (side(x1, y1, x2, y2, x3, y3) * side(x1, y1, x2, y2, x4, y4) < 0
+        && side(x3, y3, x4, y4, x1, y1) * side(x3, y3, x4, y4, x2, y2) < 0) {
+      // the segments cross
+      return 0;
+    }
+
+    return Math.min(
+        Math.min(pointSegmentDistanceSq(x1, y1, x3, y3, x4, y4),
+            pointSegmentDistanceSq(x2, y2, x3, y3, x4, y4)),
+        Math.min(pointSegmentDistanceSq(x3, y3, x1, y1, x2, y2),
+            pointSegmentDistanceSq(x4, y4, x1, y1, x2, y2)));
+  }
+
+  /**
+   * Checks if segment i of segments may have a white interval on edge.
+   *
+   * @return false when one of the tests rejects the pair
+   */
+  public boolean accept(SegmentIndex segments, int i, Edge edge, double eps, double altEps) {
+    pairs++;
+
+    if (!(Math.abs(segments.getAvgAltitude(i) - edge.getAvgAltitude()) <= altEps)) {
+      altitudeRejected++;
+      return false;
+    }
+
+    IntersectionKernel.Region region = edge.getRegion(eps);
+
+    double x1 = segments.getX1(i);
+    double y1 = segments.getY1(i);
+    double x2 = segments.getX2(i);
+    double y2 = segments.getY2(i);
+
+    if (Math.max(x1, x2) < region.getMinX() || Math.min(x1, x2) > region.getMaxX()
+        || Math.max(y1, y2) < region.getMinY() || Math.min(y1, y2) > region.getMaxY()) {
+      boxRejected++;
+      return false;
+    }
+
+    double margin = eps * (1 + IntersectionKernel.BOX_SLACK);
+
+    if (segmentDistanceSq(x1, y1, x2, y2, region.vx1, region.vy1, region.vx2, region.vy2)
+        > margin * margin) {
+      distanceRejected++;
+      return false;
+    }
+
+    exactTested++;
+    return true;
+  }
+
+  /**
+   * Records the result of the exact test of a pair accepted by accept().
+   */
+  public void countExact(boolean matched) {
+    if (matched) {
+      exactMatched++;
+    }
+  }
+
+  /**
+   * Adds the counters of other to this filter.
+   */
+  public void add(SegmentFilter other) {
+    pairs += other.pairs;
+    altitudeRejected += other.altitudeRejected;
+    boxRejected += other.boxRejected;
+    distanceRejected += other.distanceRejected;
+    exactTested += other.exactTested;
+    exactMatched += other.exactMatched;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "pairs %d, rejected by altitude %d, box %d, distance %d, exact tests %d, matched %d",
+        pairs, altitudeRejected, boxRejected, distanceRejected, exactTested, exactMatched);
+  }
+}
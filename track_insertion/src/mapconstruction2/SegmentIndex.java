@@ -0,0 +1,237 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: SegmentIndex.java
+ *
+ */
+
+import java.util.List;
+
+/**
+ * The segments of a pose with their line coefficients, and a bounding volume hierarchy over them.
+ *
+ * Segment i goes from vertex i-1 to vertex i, as in isWhiteInterval(). Consecutive segments are
+ * grouped into leaves of LEAF_SIZE segments, and the leaves are the bottom level of a complete
+ * binary tree stored in an array: node k has children 2k and 2k+1 and the root is node 1. Each
+ * node keeps the bounding box of its segments. Since a pose is spatially coherent, runs of
+ * segments have tight boxes and next() can skip most of a long pose.
+ */
+public class SegmentIndex {
+
+  /**
+   * Number of consecutive segments in a leaf of the hierarchy.
+   */
+  public static final int LEAF_SIZE = 8;
+
+  private final int size; // # of vertices of the pose
+
+  // segment table, indexed by segment
+  private final double[] x1;
+  private final double[] y1;
+  private final double[] x2;
+  private final double[] y2;
+  private final double[] m;
+  private final double[] c;
+  private final double[] theta;
+  private final double[] avgAltitude;
+
+  // bounding boxes, indexed by node
+  private final int leafStart; // node index of the first leaf
+  private final double[] minX;
+  private final double[] minY;
+  private final double[] maxX;
+  private final double[] maxY;
+
+  /**
+   * Builds the index of the segments of pose. Later changes of the vertex coordinates are not
+   * seen by the index.
+   */
+  public SegmentIndex(List<Vertex> pose) {
+    this.size = pose.size();
+
+    int segments = Math.max(size, 1);
+
+    x1 = new double[segments];
+    y1 = new double[segments];
+    x2 = new double[segments];
+    y2 = new double[segments];
+    m = new double[segments];
+    c = new double[segments];
+    theta = new double[segments];
+    avgAltitude = new double[segments];
+
+    for (int i = 1; i < size; i++) {
+      Vertex p1 = pose.get(i - 1);
+      Vertex p2 = pose.get(i);
+
+      double xdiff = p2.getX() - p1.getX();
+      double ydiff = p2.getY() - p1.getY();
+
+      x1[i] = p1.getX();
+      y1[i] = p1.getY();
+      x2[i] = p2.getX();
+      y2[i] = p2.getY();
+      m[i] = IntersectionKernel.slope(xdiff, ydiff);
+      c[i] = IntersectionKernel.intercept(x1[i], y1[i], x2[i], y2[i], m[i], xdiff);
+      theta[i] = IntersectionKernel.theta(xdiff, ydiff);
+      avgAltitude[i] = (p1.getZ() + p2.getZ()) / 2.0;
+    }
+
+    int leaves = (segments + LEAF_SIZE - 1) / LEAF_SIZE;
+    int start = 1;
+
+    while (start < leaves) {
+      start <<= 1;
+    }
+    leafStart = start;
+
+    minX = new double[2 * start];
+    minY = new double[2 * start];
+    maxX = new double[2 * start];
+    maxY = new double[2 * start];
+
+    for (int node = 1; node < 2 * start; node++) {
+      minX[node] = minY[node] = Double.POSITIVE_INFINITY;
+      maxX[node] = maxY[node] = Double.NEGATIVE_INFINITY;
+    }
+
+    for (int i = 1; i < size; i++) {
+      int node = leafStart + i / LEAF_SIZE;
+
+      minX[node] = Math.min(minX[node], Math.min(x1[i], x2[i]));
+      minY[node] = Math.min(minY[node], Math.min(y1[i], y2[i]));
+      maxX[node] = Math.max(maxX[node], Math.max(x1[i], x2[i]));
+      maxY[node] = Math.max(maxY[node], Math.max(y1[i], y2[i]));
+    }
+
+    for (int node = leafStart - 1; node >= 1; node--) {
+      minX[node] = Math.min(minX[2 * node], minX[2 * node + 1]);
+      minY[node] = Math.min(minY[2 * node], minY[2 * node + 1]);
+      maxX[node] = Math.max(maxX[2 * node], maxX[2 * node + 1]);
+      maxY[node] = Math.max(maxY[2 * node], maxY[2 * node + 1]);
+    }
+  }
+
+  /**
+   * @return the number of vertices of the pose
+   */
+  public int size() {
+    return size;
+  }
+
+  public double getX1(int i) {
+    return x1[i];
+  }
+
+  public double getY1(int i) {
+    return y1[i];
+  }
+
+  public double getX2(int i) {
+    return x2[i];
+  }
+
+  public double getY2(int i) {
+    return y2[i];
+  }
+
+  public double getM(int i) {
+    return m[i];
+  }
+
+  public double getC(int i) {
+    return c[i];
+  }
+
+  public double getTheta(int i) {
+    return theta[i];
+  }
+
+  public double getAvgAltitude(int i) {
+    return avgAltitude[i];
+  }
+
+  private boolean nodeIntersects(int node, IntersectionKernel.Region region) {
+    return minX[node] <= region.getMaxX() && maxX[node] >= region.getMinX()
+        && minY[node] <= region.getMaxY() && maxY[node] >= region.getMinY();
+  }
+
+  /**
+   * Checks if segment i crosses the bounding box of region. A segment which doesn't can't have a
+   * white interval on the edge of region.
+   */
+  public boolean isNear(int i, IntersectionKernel.Region region) {
+    return EdgeIndex.segmentIntersectsBox(x1[i], y1[i], x2[i], y2[i], region.getMinX(),
+        region.getMinY(), region.getMaxX(), region.getMaxY());
+  }
+
+  /**
+   * Returns the first segment at or after from which is near region, or size() if there is none.
+   */
+  public int next(int from, IntersectionKernel.Region region) {
+    if (from < 1) {
+      from = 1;
+    }
+    if (from >= size) {
+      return size;
+    }
+
+    // the rest of the leaf holding from
+    int node = leafStart + from / LEAF_SIZE;
+
+    for (int i = from; i < Math.min(size, (node - leafStart + 1) * LEAF_SIZE); i++) {
+      if (isNear(i, region)) {
+        return i;
+      }
+    }
+
+    while (true) {
+      // step to the next subtree on the right
+      while ((node & 1) == 1) {
+        node >>= 1;
+      }
+      if (node == 0) {
+        return size;
+      }
+      node++;
+
+      // descend to its leftmost leaf whose box meets the region
+      while (node < leafStart && nodeIntersects(node, region)) {
+        node = 2 * node;
+      }
+      if (!nodeIntersects(node, region)) {
+        continue;
+      }
+
+      int first = (node - leafStart) * LEAF_SIZE;
+
+      for (int i = Math.max(first, 1); i < Math.min(size, first + LEAF_SIZE); i++) {
+        if (isNear(i, region)) {
+          return i;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,473 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TiledConstruction.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Constructs a map by splitting the region of the poses into square tiles. Every pose is clipped
+ * to each tile, grown by a halo of at least eps, which it crosses, and the tiles are constructed
+ * concurrently, each by its own MapConstruction.
+ *
+ * The tile maps are stitched into one map in tile order. A tile keeps the edges whose midpoint
+ * lies in the tile itself, the halo only makes sure those edges saw every pose which could match
+ * them. Edges with both endpoints in their own tile are added first. An endpoint of a remaining
+ * edge lies in a neighbouring tile and is moved to the closest vertex within eps that the
+ * neighbour added, so the roads crossing a tile border are connected.
+ *
+ * The result only depends on the tile size and halo, not on the number of threads.
+ */
+public class TiledConstruction {
+
+  /**
+   * Default side of a tile as a multiple of eps.
+   */
+  public static final double TILE_SIZE_IN_EPS = 100.0;
+
+  /**
+   * Default halo around a tile as a multiple of eps.
+   */
+  public static final double HALO_IN_EPS = 2.0;
+
+  private static final Logger logger = Logger.getAnonymousLogger();
+
+  private static final String LINE_FLUSH = "\r\033[K";
+
+  private final double tileSize;
+  private final double halo;
+  private final int parallelism;
+
+  /**
+   * A tile of the grid with the pieces of poses crossing it, grown by the halo.
+   */
+  private static class Tile {
+    final int index;
+    List<PoseFile> pieces = new ArrayList<PoseFile>();
+    long work; // # of vertices of the pieces
+    MapGraph graph;
+
+    Tile(int index) {
+      this.index = index;
+    }
+  }
+
+  /**
+   * A run of consecutive pose vertices whose segments cross a tile.
+   */
+  private static class Run {
+    final ArrayList<Vertex> curve = new ArrayList<Vertex>();
+    int lastSegment;
+  }
+
+  // the tile grid, set by constructMap()
+  private double minX;
+  private double minY;
+  private int columns;
+  private int rows;
+
+  /**
+   * @param tileSize the side of a tile
+   *
+   * @param halo the margin around each tile, raised to eps if it is smaller
+   *
+   * @param parallelism the number of tiles constructed at the same time
+   */
+  public TiledConstruction(double tileSize, double halo, int parallelism) {
+    if (!(tileSize > 0)) {
+      throw new IllegalArgumentException("tile size must be positive: " + tileSize);
+    }
+    this.tileSize = tileSize;
+    this.halo = halo;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  private int column(double x) {
+    return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / tileSize)));
+  }
+
+  private int row(double y) {
+    return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / tileSize)));
+  }
+
+  private int tileOf(double x, double y) {
+    return row(y) * columns + column(x);
+  }
+
+  /**
+   * Clips poseFile to every tile it crosses and adds the pieces to the tiles.
+   */
+  private void clip(PoseFile poseFile, Tile[] tiles, double halo) {
+    List<Vertex> pose = poseFile.getPose();
+    Map<Integer, Run> runs = new HashMap<Integer, Run>();
+
+    for (int i = 1; i < pose.size(); i++) {
+      double x1 = pose.get(i - 1).getX();
+      double y1 = pose.get(i - 1).getY();
+      double x2 = pose.get(i).getX();
+      double y2 = pose.get(i).getY();
+
+      for (int r = row(Math.min(y1, y2) - halo); r <= row(Math.max(y1, y2) + halo); r++) {
+        for (int c = column(Math.min(x1, x2) - halo); c <= column(Math.max(x1, x2) + halo); c++) {
+          double tileX = minX + c * tileSize;
+          double tileY = minY + r * tileSize;
+
+          if (!EdgeIndex.segmentIntersectsBox(x1, y1, x2, y2, tileX - halo, tileY - halo,
+              tileX + tileSize + halo, tileY + tileSize + halo)) {
+            continue;
+          }
+
+          int index = r * columns + c;
+          Run run = runs.get(index);
+
+          if (run != null && run.lastSegment != i - 1) {
+            addPiece(tiles, index, poseFile, run);
+            run = null;
+          }
+          if (run == null) {
+            run = new Run();
+            run.curve.add(pose.get(i - 1));
+            runs.put(index, run);
+          }
+          run.curve.add(pose.get(i));
+          run.lastSegment = i;
+        }
+      }
+    }
+
+    for (Map.Entry<Integer, Run> entry : runs.entrySet()) {
+      addPiece(tiles, entry.getKey(), poseFile, entry.getValue());
+    }
+  }
+
+  private static void addPiece(Tile[] tiles, int index, PoseFile poseFile, Run run) {
+    if (tiles[index] == null) {
+      tiles[index] = new Tile(index);
+    }
+    tiles[index].pieces.add(new PoseFile(poseFile.getFileName(), run.curve));
+    tiles[index].work += run.curve.size();
+  }
+
+  /**
+   * Constructs the map of each tile on a thread pool.
+   */
+  private void constructTiles(List<Tile> tiles, final double eps, final double altEps) {
+    // the largest tiles first, so the last running tiles are small ones
+    List<Tile> byWork = new ArrayList<Tile>(tiles);
+    Collections.sort(byWork, new Comparator<Tile>() {
+      @Override
+      public int compare(Tile t1, Tile t2) {
+        return (t1.work != t2.work) ? Long.compare(t2.work, t1.work)
+            : Integer.compare(t1.index, t2.index);
+      }
+    });
+
+    final int count = tiles.size();
+    final AtomicInteger done = new AtomicInteger();
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+    for (final Tile tile : byWork) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          long startTime = System.currentTimeMillis();
+
+          MapConstruction construction = new MapConstruction();
+          construction.setParallelism(1);
+          construction.setShowProgress(false);
+
+          tile.graph = construction.constructMapMain(tile.pieces, eps, altEps);
+
+          logger.info("tile " + tile.index + ": " + tile.pieces.size() + " pieces, "
+              + tile.graph.size() + " vertices :"
+              + (System.currentTimeMillis() - startTime) / 60000.00);
+          tile.pieces = null;
+
+          System.out.print(LINE_FLUSH + "Rebuilding map: " + done.incrementAndGet() + "/"
+              + count + " tiles");
+          return null;
+        }
+      });
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+
+    try {
+      for (Future<Void> future : pool.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * The map being stitched from the tile maps.
+   */
+  private static class Stitching {
+    final MapGraph graph = new MapGraph();
+    final VertexRegistry registry = new VertexRegistry();
+    int[] origin = new int[16]; // the tile which added each vertex
+    EdgeIndex interior; // the interior edges, built after they are all added
+
+    /**
+     * Adds vertex v of the map of tile, unless a vertex with the same coordinates is already
+     * there, which then keeps its entries.
+     *
+     * @return the index of the vertex in graph
+     */
+    int addVertex(Tile tile, int v) {
+      Vertex vertex = tile.graph.getVertex(v);
+      int index = registry.putIfAbsent(vertex, graph.size());
+
+      if (index == graph.size()) {
+        graph.addVertex(vertex);
+
+        if (index == origin.length) {
+          origin = Arrays.copyOf(origin, origin.length * 2);
+        }
+        origin[index] = tile.index;
+      }
+      return index;
+    }
+
+    /**
+     * Returns the vertex added by another tile than tile which is closest to (x, y), or -1 if
+     * there is none within eps.
+     */
+    int closestVertex(Tile tile, double x, double y, double eps) {
+      long keys[] = interior.query(x - eps, y - eps, x + eps, y + eps);
+      int closest = -1;
+      double closestDist = Double.POSITIVE_INFINITY;
+
+      for (int i = 0; i < keys.length; i++) {
+        int ends[] = { (int) (keys[i] >>> 32), (int) keys[i] };
+
+        for (int v : ends) {
+          double dist = Math.hypot(graph.getX(v) - x, graph.getY(v) - y);
+
+          if (origin[v] != tile.index && dist <= eps && dist < closestDist) {
+            closest = v;
+            closestDist = dist;
+          }
+        }
+      }
+      return closest;
+    }
+
+    void addEdge(int a, int b) {
+      if (a != b) {
+        graph.addElementAdjList(a, b);
+        graph.addElementAdjList(b, a);
+      }
+    }
+  }
+
+  private boolean owns(Tile tile, MapGraph graph, int a, int b) {
+    return tileOf((graph.getX(a) + graph.getX(b)) / 2, (graph.getY(a) + graph.getY(b)) / 2)
+        == tile.index;
+  }
+
+  /**
+   * Stitches the tile maps into one map.
+   */
+  private MapGraph stitch(List<Tile> tiles, double eps) {
+    Stitching stitching = new Stitching();
+
+    for (Tile tile : tiles) {
+      MapGraph graph = tile.graph;
+
+      for (int a = 0; a < graph.size(); a++) {
+        for (int j = 0; j < graph.getDegree(a); j++) {
+          int b = graph.getAdjacentElementAt(a, j);
+
+          if (b > a && owns(tile, graph, a, b)
+              && tileOf(graph.getX(a), graph.getY(a)) == tile.index
+              && tileOf(graph.getX(b), graph.getY(b)) == tile.index) {
+            stitching.addEdge(stitching.addVertex(tile, a), stitching.addVertex(tile, b));
+          }
+        }
+      }
+    }
+
+    stitching.interior = EdgeIndex.build(stitching.graph, EdgeIndex.CELL_SIZE_IN_EPS * eps);
+
+    int moved = 0;
+
+    for (Tile tile : tiles) {
+      MapGraph graph = tile.graph;
+
+      for (int a = 0; a < graph.size(); a++) {
+        for (int j = 0; j < graph.getDegree(a); j++) {
+          int b = graph.getAdjacentElementAt(a, j);
+
+          if (b <= a || !owns(tile, graph, a, b)) {
+            continue;
+          }
+
+          int ends[] = { a, b };
+          int stitched[] = new int[2];
+
+          for (int k = 0; k < 2; k++) {
+            int v = ends[k];
+            stitched[k] = -1;
+
+            if (tileOf(graph.getX(v), graph.getY(v)) != tile.index) {
+              stitched[k] = stitching.closestVertex(tile, graph.getX(v), graph.getY(v), eps);
+            }
+            if (stitched[k] == -1) {
+              stitched[k] = stitching.addVertex(tile, v);
+            } else {
+              moved++;
+            }
+          }
+          stitching.addEdge(stitched[0], stitched[1]);
+        }
+      }
+    }
+
+    logger.info("stitched " + tiles.size() + " tiles, " + moved + " border endpoints moved");
+    return stitching.graph;
+  }
+
+  /**
+   * Constructs the map of poseFiles tile by tile.
+   */
+  public MapGraph constructMap(List<PoseFile> poseFiles, double eps, double altEps) {
+    double halo = Math.max(this.halo, eps);
+
+    minX = minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+
+    for (PoseFile poseFile : poseFiles) {
+      for (Vertex v : poseFile.getPose()) {
+        minX = Math.min(minX, v.getX());
+        minY = Math.min(minY, v.getY());
+        maxX = Math.max(maxX, v.getX());
+        maxY = Math.max(maxY, v.getY());
+      }
+    }
+
+    if (minX > maxX) {
+      return new MapGraph();
+    }
+
+    columns = (int) Math.floor((maxX - minX) / tileSize) + 1;
+    rows = (int) Math.floor((maxY - minY) / tileSize) + 1;
+
+    System.out.print(LINE_FLUSH + "Clipping tracks to " + columns + "x" + rows + " tiles...");
+
+    Tile[] grid = new Tile[columns * rows];
+
+    for (PoseFile poseFile : poseFiles) {
+      if (poseFile.getPose().size() >= 2) {
+        clip(poseFile, grid, halo);
+      }
+    }
+
+    List<Tile> tiles = new ArrayList<Tile>();
+
+    for (Tile tile : grid) {
+      if (tile != null) {
+        tiles.add(tile);
+      }
+    }
+
+    this.constructTiles(tiles, eps, altEps);
+
+    System.out.print(LINE_FLUSH + "Stitching tiles...");
+
+    return this.stitch(tiles, eps);
+  }
+
+  public static void main(String args[]) throws IOException {
+    // path to the folder that contains input tracks.
+    String inputPath = args[0];
+
+    // path to the folder where the output will be written.
+    String outputpath = args[1];
+
+    // epsilon; see the paper for detail
+    double eps = Double.parseDouble(args[2]);
+
+    // if the input files contains altitude information
+    boolean hasAltitude = Boolean.parseBoolean(args[3]);
+
+    // minimum altitude difference between two streets.
+    double altEps = 4.0;
+    if (args.length > 4) {
+      altEps = Double.parseDouble(args[4]);
+    }
+
+    // side of a tile, in the unit of the coordinates
+    double tileSize = TILE_SIZE_IN_EPS * eps;
+    if (args.length > 5) {
+      tileSize = Double.parseDouble(args[5]);
+    }
+
+    // number of tiles constructed at the same time
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    if (args.length > 6) {
+      parallelism = Integer.parseInt(args[6]);
+    }
+
+    TiledConstruction tiledConstruction = new TiledConstruction(tileSize, HALO_IN_EPS * eps,
+        parallelism);
+
+    MapGraph constructedMap = tiledConstruction.constructMap(
+        new MapConstruction().readAllFiles(new File(inputPath), hasAltitude), eps, altEps);
+
+    System.out.print(LINE_FLUSH + "Exporting rebuilt map...");
+
+    // a failed export ends the run with an error instead of reporting success
+    GraphFile.writeMap(constructedMap, new File(outputpath));
+
+    System.out.print(LINE_FLUSH + "Rebuilt map!\n");
+  }
+}
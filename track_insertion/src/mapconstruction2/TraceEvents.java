@@ -0,0 +1,188 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TraceEvents.java
+ *
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of map construction, recorded with the JFR events of the JVM by a
+ * run with -XX:StartFlightRecording and read with jfr print or JDK Mission Control.
+ *
+ * TrackInserted and PartialMapMerged happen once per track and per merge, and are on by default.
+ * WhiteIntervalFound and EdgeSplitCommitted happen many times per track and are off by default;
+ * they are turned on with e.g.
+ * -XX:StartFlightRecording:+mapconstruction2.WhiteIntervalFound#enabled=true
+ *
+ * An event which is off is neither filled nor committed.
+ */
+final class TraceEvents {
+
+  private TraceEvents() {
+  }
+
+  @Name("mapconstruction2.TrackInserted")
+  @Label("Track Inserted")
+  @Category("Map Construction")
+  @Description("A track inserted into the map by MapConstruction")
+  static class TrackInserted extends Event {
+
+    @Label("Track")
+    int track;
+
+    @Label("Name")
+    String name;
+
+    @Label("Points")
+    int points;
+
+    @Label("Candidate Edges")
+    @Description("Edges of the map near the track, which may contain a white interval")
+    int candidateEdges;
+
+    @Label("New Vertices")
+    int newVertices;
+
+    @Label("New Edges")
+    int newEdges;
+  }
+
+  @Name("mapconstruction2.WhiteIntervalFound")
+  @Label("White Interval Found")
+  @Category("Map Construction")
+  @Description("A white interval taken from the queue while a track is inserted")
+  @Enabled(false)
+  @StackTrace(false)
+  static class WhiteIntervalFound extends Event {
+
+    @Label("Track")
+    int track;
+
+    @Label("Curve Start")
+    double curveStart;
+
+    @Label("Curve End")
+    double curveEnd;
+
+    @Label("Edge Start")
+    double edgeStart;
+
+    @Label("Edge End")
+    double edgeEnd;
+
+    @Label("Vertex 1")
+    int vertex1;
+
+    @Label("Vertex 2")
+    int vertex2;
+  }
+
+  @Name("mapconstruction2.EdgeSplitCommitted")
+  @Label("Edge Split Committed")
+  @Category("Map Construction")
+  @Description("An edge of the map replaced by a path through its split vertices")
+  @Enabled(false)
+  @StackTrace(false)
+  static class EdgeSplitCommitted extends Event {
+
+    @Label("Track")
+    int track;
+
+    @Label("Vertex 1")
+    int vertex1;
+
+    @Label("Vertex 2")
+    int vertex2;
+
+    @Label("Splits")
+    int splits;
+  }
+
+  @Name("mapconstruction2.PartialMapMerged")
+  @Label("Partial Map Merged")
+  @Category("Map Construction")
+  @Description("A partial map merged into a base map by MergeTree")
+  static class PartialMapMerged extends Event {
+
+    @Label("Base Vertices")
+    int baseVertices;
+
+    @Label("Other Vertices")
+    int otherVertices;
+
+    @Label("Curves")
+    @Description("Curves the other map is split into")
+    int curves;
+
+    @Label("Vertices")
+    @Description("Vertices of the merged map")
+    int vertices;
+
+    @Label("Threads")
+    int threads;
+  }
+
+  /**
+   * Records that the white interval of edge was taken from the queue while track is inserted.
+   */
+  static void whiteIntervalFound(int track, Edge edge) {
+    WhiteIntervalFound event = new WhiteIntervalFound();
+
+    if (event.isEnabled()) {
+      event.track = track;
+      event.curveStart = edge.getCurveStart();
+      event.curveEnd = edge.getCurveEnd();
+      event.edgeStart = edge.getEdgeStart();
+      event.edgeEnd = edge.getEdgeEnd();
+      event.vertex1 = edge.getIndex1();
+      event.vertex2 = edge.getIndex2();
+      event.commit();
+    }
+  }
+
+  /**
+   * Records that the edge between vertex1 and vertex2 was split at splits vertices while track
+   * is inserted.
+   */
+  static void edgeSplitCommitted(int track, int vertex1, int vertex2, int splits) {
+    EdgeSplitCommitted event = new EdgeSplitCommitted();
+
+    if (event.isEnabled()) {
+      event.track = track;
+      event.vertex1 = vertex1;
+      event.vertex2 = vertex2;
+      event.splits = splits;
+      event.commit();
+    }
+  }
+}
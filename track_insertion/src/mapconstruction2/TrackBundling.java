@@ -0,0 +1,242 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TrackBundling.java
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Bundles tracks that follow the same route, so that each bundle is inserted once. Tracks are
+ * taken in order, and a track joins the first bundle whose representative is within eps of it
+ * in both directions: every vertex of the track is within eps of a segment of the
+ * representative, at an altitude within altEps of that segment, and the other way around. A
+ * track that joins no bundle starts a new one as its representative.
+ *
+ * The online entries of every vertex of a member are added to the nearest end of the segment of
+ * the representative it matched, so that the representative brings the entries of its whole
+ * bundle into the map. The tracks passed in are not changed: a representative with members is
+ * a copy.
+ */
+public class TrackBundling {
+
+  private static final Logger logger = Logger.getAnonymousLogger();
+
+  /**
+   * Returns the distance between the point (x, y) and segment i of segments.
+   */
+  private static double distance(double x, double y, SegmentIndex segments, int i) {
+    double x1 = segments.getX1(i);
+    double y1 = segments.getY1(i);
+    double xdiff = segments.getX2(i) - x1;
+    double ydiff = segments.getY2(i) - y1;
+    double length = xdiff * xdiff + ydiff * ydiff;
+    double t = 0;
+
+    if (length > 0) {
+      t = ((x - x1) * xdiff + (y - y1) * ydiff) / length;
+      t = Math.max(0, Math.min(1, t));
+    }
+
+    double dx = x1 + t * xdiff - x;
+    double dy = y1 + t * ydiff - y;
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Finds for every vertex of pose a segment of segments within eps of it and altEps of its
+   * altitude.
+   *
+   * @param matches where the segment matched by each vertex is written, null not to keep them
+   * @return false as soon as a vertex matches no segment
+   */
+  static boolean matches(List<Vertex> pose, SegmentIndex segments, double eps, double altEps,
+      int[] matches) {
+    for (int k = 0; k < pose.size(); k++) {
+      Vertex v = pose.get(k);
+      IntersectionKernel.Region region = new IntersectionKernel.Region(v.getX(), v.getY(),
+          v.getX(), v.getY(), eps);
+      int match = -1;
+      double minDistance = eps;
+
+      for (int i = segments.next(1, region); i < segments.size();
+          i = segments.next(i + 1, region)) {
+        double distance = distance(v.getX(), v.getY(), segments, i);
+
+        if (distance <= minDistance
+            && Math.abs(segments.getAvgAltitude(i) - v.getZ()) <= altEps) {
+          minDistance = distance;
+          match = i;
+        }
+      }
+
+      if (match == -1) {
+        return false;
+      }
+      if (matches != null) {
+        matches[k] = match;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks if the bounding box of p1 and box, the minX, minY, maxX and maxY of a representative,
+   * are within eps of each other on every side, as they are when p1 and the representative are
+   * within eps of each other.
+   */
+  private static boolean boxesMatch(PoseFile p1, double[] box, double eps) {
+    return Math.abs(p1.minX - box[0]) <= eps && Math.abs(p1.minY - box[1]) <= eps
+        && Math.abs(p1.maxX - box[2]) <= eps && Math.abs(p1.maxY - box[3]) <= eps;
+  }
+
+  private static long cellKey(long cx, long cy) {
+    return (cx << 32) | (cy & 0xffffffffL);
+  }
+
+  private static long cellOf(double coordinate, double cellSize) {
+    return (long) Math.floor(coordinate / cellSize);
+  }
+
+  /**
+   * Returns the representatives of the bundles of poseFiles, in the order of the tracks that
+   * start them. Tracks of fewer than 2 vertices are kept as they are.
+   *
+   * The representatives are registered in a grid of cells of side eps by the lower corner of
+   * their bounding box, so a track is only compared with the representatives in the 3 x 3 cells
+   * around the lower corner of its own box. A track is released once it has been compared, and a
+   * representative once a track has been compared with it, so that the tracks of a
+   * TrackContainer are only decoded while they are used.
+   */
+  public List<PoseFile> bundle(List<PoseFile> poseFiles, double eps, double altEps) {
+    List<PoseFile> representatives = new ArrayList<PoseFile>();
+    // the copy of each representative holding the entries of its members, null while it has none
+    List<ArrayList<Vertex>> bundles = new ArrayList<ArrayList<Vertex>>();
+    // the bounding box of each representative, which is reset when it is released
+    List<double[]> boxes = new ArrayList<double[]>();
+
+    // the indices of the representatives of at least 2 vertices, by the cell of their lower corner
+    double cellSize = Math.max(eps, Double.MIN_NORMAL);
+    Map<Long, List<Integer>> cells = new HashMap<Long, List<Integer>>();
+
+    for (PoseFile poseFile : poseFiles) {
+      List<Vertex> pose = poseFile.getPose();
+      boolean bundled = false;
+
+      long cx = cellOf(poseFile.minX, cellSize);
+      long cy = cellOf(poseFile.minY, cellSize);
+
+      if (pose.size() >= 2) {
+        int[] matched = new int[pose.size()];
+        List<Integer> candidates = new ArrayList<Integer>();
+
+        for (long x = cx - 1; x <= cx + 1; x++) {
+          for (long y = cy - 1; y <= cy + 1; y++) {
+            List<Integer> cell = cells.get(cellKey(x, y));
+
+            if (cell != null) {
+              candidates.addAll(cell);
+            }
+          }
+        }
+        // the first matching representative in the order of the tracks wins
+        Collections.sort(candidates);
+
+        for (int i = 0; i < candidates.size() && !bundled; i++) {
+          int r = candidates.get(i);
+          PoseFile representative = representatives.get(r);
+
+          if (!boxesMatch(poseFile, boxes.get(r), eps)) {
+            continue;
+          }
+
+          boolean matches = matches(pose, representative.getSegmentIndex(), eps, altEps, matched)
+              && matches(representative.getPose(), poseFile.getSegmentIndex(), eps, altEps, null);
+
+          if (matches) {
+            ArrayList<Vertex> bundle = bundles.get(r);
+
+            if (bundle == null) {
+              bundle = new ArrayList<Vertex>();
+
+              for (Vertex v : representative.getPose()) {
+                bundle.add(new Vertex(v));
+              }
+              bundles.set(r, bundle);
+            }
+
+            // segment i goes from vertex i - 1 to vertex i
+            for (int k = 0; k < pose.size(); k++) {
+              Vertex v = pose.get(k);
+              Vertex start = bundle.get(matched[k] - 1);
+              Vertex end = bundle.get(matched[k]);
+
+              (v.dist(start) <= v.dist(end) ? start : end).addEntry(v);
+            }
+            bundled = true;
+          }
+          representative.release();
+        }
+      }
+
+      if (!bundled) {
+        if (pose.size() >= 2) {
+          Long key = cellKey(cx, cy);
+          List<Integer> cell = cells.get(key);
+
+          if (cell == null) {
+            cell = new ArrayList<Integer>();
+            cells.put(key, cell);
+          }
+          cell.add(representatives.size());
+        }
+
+        representatives.add(poseFile);
+        bundles.add(null);
+        boxes.add(new double[] {poseFile.minX, poseFile.minY, poseFile.maxX, poseFile.maxY});
+      }
+      poseFile.release();
+    }
+
+    List<PoseFile> bundledFiles = new ArrayList<PoseFile>();
+
+    for (int r = 0; r < representatives.size(); r++) {
+      if (bundles.get(r) == null) {
+        bundledFiles.add(representatives.get(r));
+      } else {
+        bundledFiles.add(new PoseFile(representatives.get(r).getFileName(), bundles.get(r)));
+      }
+    }
+
+    logger.info("bundled " + poseFiles.size() + " tracks into " + bundledFiles.size());
+    return bundledFiles;
+  }
+}
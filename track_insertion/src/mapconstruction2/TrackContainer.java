@@ -0,0 +1,572 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TrackContainer.java
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * All tracks of a trackset in one file, tracks.bin, in place of one text file per track. The
+ * file is mapped into memory and the tracks are decoded from it in place, when they are used.
+ *
+ * tracks.bin is little endian and holds, in this order:
+ *
+ * - a header of HEADER_SIZE bytes: int MAGIC, int VERSION, int # of tracks n, int flags
+ * (HAS_ALTITUDE), long # of points, long offset of the names
+ *
+ * - an index of n entries of ENTRY_SIZE bytes: long offset of the track, int # of points, int
+ * offsets of the y, z, timestamp and online columns from the offset of the track, int offset and
+ * length of the name in the names, int 0
+ *
+ * - the columns of each track: x, y, z (only with HAS_ALTITUDE) and timestamp, each as the
+ * differences between the bits of consecutive doubles (the first one from 0), zigzag-encoded
+ * in variable length quantities of 7 bits, low bits first; then the online flags, 8 per byte,
+ * the first one in the lowest bit
+ *
+ * - the names of the tracks, in UTF-8
+ *
+ * Like the points of a track file, the points hold the values as parsed, before readFile()
+ * merges close points.
+ *
+ * The file is mapped in windows of 1 << WINDOW_BITS bytes, as a buffer holds at most 2 GB; each
+ * window overlaps the next one by WINDOW_OVERLAP bytes so that any int or long of the header and
+ * the index lies in the window of its first byte.
+ */
+public class TrackContainer {
+
+  public static final String FILE_NAME = "tracks.bin";
+
+  public static final int MAGIC = 0x4b54434d; // "MCTK" in little endian
+  public static final int VERSION = 1;
+
+  public static final int HEADER_SIZE = 32;
+  public static final int ENTRY_SIZE = 40;
+
+  public static final int HAS_ALTITUDE = 1;
+
+  private static final int WINDOW_BITS = 30;
+  private static final long WINDOW_MASK = (1L << WINDOW_BITS) - 1;
+  private static final int WINDOW_OVERLAP = 8;
+
+  // size of the data buffers of a Builder, and of the buffer it writes the file through
+  private static final int CHUNK_SIZE = 1 << 30;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final ByteBuffer[] windows;
+  private final int trackCount;
+  private final boolean hasAltitude;
+  private final long namesOffset;
+
+  private TrackContainer(ByteBuffer[] windows, int trackCount, boolean hasAltitude,
+      long namesOffset) {
+    this.windows = windows;
+    this.trackCount = trackCount;
+    this.hasAltitude = hasAltitude;
+    this.namesOffset = namesOffset;
+  }
+
+  public int size() {
+    return trackCount;
+  }
+
+  public boolean hasAltitude() {
+    return hasAltitude;
+  }
+
+  private byte get(long position) {
+    return windows[(int) (position >>> WINDOW_BITS)].get((int) (position & WINDOW_MASK));
+  }
+
+  private int getInt(long position) {
+    return windows[(int) (position >>> WINDOW_BITS)].getInt((int) (position & WINDOW_MASK));
+  }
+
+  private long getLong(long position) {
+    return windows[(int) (position >>> WINDOW_BITS)].getLong((int) (position & WINDOW_MASK));
+  }
+
+  /**
+   * Returns track index, a view of the container.
+   */
+  public Track get(int index) {
+    if (index < 0 || index >= trackCount) {
+      throw new IndexOutOfBoundsException("track " + index + " of " + trackCount);
+    }
+    return new Track(index);
+  }
+
+  /**
+   * Returns the track named name, or null.
+   */
+  public Track find(String name) {
+    for (int i = 0; i < trackCount; i++) {
+      if (get(i).getName().equals(name)) {
+        return get(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A track of the container. Its points are decoded by a Cursor.
+   */
+  public class Track {
+    private final long offset;
+    private final int pointCount;
+    private final long[] columns = new long[4]; // offsets of y, z, timestamp and online
+    private final int nameOffset;
+    private final int nameLength;
+
+    private Track(int index) {
+      long entry = HEADER_SIZE + (long) index * ENTRY_SIZE;
+
+      this.offset = getLong(entry);
+      this.pointCount = getInt(entry + 8);
+
+      for (int k = 0; k < 4; k++) {
+        columns[k] = offset + getInt(entry + 12 + 4 * k);
+      }
+      this.nameOffset = getInt(entry + 28);
+      this.nameLength = getInt(entry + 32);
+    }
+
+    public String getName() {
+      byte[] name = new byte[nameLength];
+
+      for (int k = 0; k < nameLength; k++) {
+        name[k] = get(namesOffset + nameOffset + k);
+      }
+      return new String(name, StandardCharsets.UTF_8);
+    }
+
+    public int getPointCount() {
+      return pointCount;
+    }
+
+    public boolean hasAltitude() {
+      return hasAltitude;
+    }
+
+    public Cursor cursor() {
+      return new Cursor(this);
+    }
+  }
+
+  /**
+   * Decodes the points of a track one after the other. After next() returned true, the fields
+   * hold the point.
+   */
+  public class Cursor {
+    public double x;
+    public double y;
+    public double z;
+    public double timestamp;
+    public boolean online;
+
+    private final Track track;
+    private int index = -1;
+
+    // the positions in and the last bits of the x, y, z and timestamp columns
+    private final long[] positions = new long[4];
+    private final long[] bits = new long[4];
+
+    private Cursor(Track track) {
+      this.track = track;
+      positions[0] = track.offset;
+      positions[1] = track.columns[0];
+      positions[2] = track.columns[1];
+      positions[3] = track.columns[2];
+    }
+
+    private double nextDouble(int column) {
+      long position = positions[column];
+      long value = 0;
+      int shift = 0;
+      byte b;
+
+      do {
+        b = get(position++);
+        value |= (long) (b & 0x7f) << shift;
+        shift += 7;
+      } while (b < 0);
+
+      positions[column] = position;
+      bits[column] += (value >>> 1) ^ -(value & 1);
+      return Double.longBitsToDouble(bits[column]);
+    }
+
+    public boolean next() {
+      if (index + 1 >= track.pointCount) {
+        return false;
+      }
+      index++;
+
+      x = nextDouble(0);
+      y = nextDouble(1);
+      z = hasAltitude ? nextDouble(2) : 0.0;
+      timestamp = nextDouble(3);
+      online = (get(track.columns[3] + index / 8) & (1 << (index % 8))) != 0;
+      return true;
+    }
+  }
+
+  /**
+   * Maps file into memory, in windows, and returns the container it holds.
+   */
+  public static TrackContainer open(File file) throws IOException {
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+
+    try {
+      FileChannel channel = in.getChannel();
+      long length = channel.size();
+
+      if (length < HEADER_SIZE) {
+        throw new IOException(file + " is not a track container");
+      }
+
+      ByteBuffer[] windows = new ByteBuffer[(int) ((length - 1) >>> WINDOW_BITS) + 1];
+
+      for (int k = 0; k < windows.length; k++) {
+        long start = (long) k << WINDOW_BITS;
+
+        windows[k] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+            Math.min(length - start, (1L << WINDOW_BITS) + WINDOW_OVERLAP));
+        windows[k].order(ByteOrder.LITTLE_ENDIAN);
+      }
+      ByteBuffer buffer = windows[0];
+
+      if (buffer.getInt(0) != MAGIC) {
+        throw new IOException(file + " is not a track container");
+      }
+
+      int version = buffer.getInt(4);
+
+      if (version != VERSION) {
+        throw new IOException(file + " has unsupported version " + version);
+      }
+
+      int trackCount = buffer.getInt(8);
+      int flags = buffer.getInt(12);
+      long namesOffset = buffer.getLong(24);
+
+      if (trackCount < 0 || namesOffset < HEADER_SIZE + (long) trackCount * ENTRY_SIZE
+          || namesOffset > length) {
+        throw new IOException(file + " is truncated or corrupt");
+      }
+
+      // the mapping stays valid after the channel is closed
+      return new TrackContainer(windows, trackCount, (flags & HAS_ALTITUDE) != 0, namesOffset);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Collects tracks and writes them into a container.
+   */
+  public static class Builder {
+    private final boolean hasAltitude;
+
+    // the data of the tracks, in chunks of at most CHUNK_SIZE bytes: the full ones, then data
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private long chunksLength = 0;
+    private ByteBuffer data = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer names = ByteBuffer.allocate(1 << 12);
+    private final List<long[]> entries = new ArrayList<long[]>();
+    private long pointCount = 0;
+
+    public Builder(boolean hasAltitude) {
+      this.hasAltitude = hasAltitude;
+    }
+
+    private static ByteBuffer reserve(ByteBuffer buffer, int bytes) {
+      if (buffer.remaining() >= bytes) {
+        return buffer;
+      }
+
+      ByteBuffer larger = ByteBuffer.allocate(
+          Math.max((int) Math.min(2L * buffer.capacity(), CHUNK_SIZE), buffer.position() + bytes));
+
+      buffer.flip();
+      larger.put(buffer);
+      return larger;
+    }
+
+    /**
+     * Makes room for bytes more in data, in a new chunk if they don't fit in CHUNK_SIZE.
+     */
+    private void reserveData(int bytes) {
+      if (data.remaining() < bytes && data.position() + (long) bytes > CHUNK_SIZE) {
+        data.flip();
+        chunks.add(data);
+        chunksLength += data.limit();
+        data = ByteBuffer.allocate(Math.max(1 << 16, bytes));
+      }
+      data = reserve(data, bytes);
+    }
+
+    private long dataPosition() {
+      return chunksLength + data.position();
+    }
+
+    private void putColumn(double[] values) {
+      long last = 0;
+
+      for (double v : values) {
+        long bits = Double.doubleToRawLongBits(v);
+        long difference = bits - last;
+        long value = (difference << 1) ^ (difference >> 63);
+
+        reserveData(10);
+        while ((value & ~0x7fL) != 0) {
+          data.put((byte) ((value & 0x7f) | 0x80));
+          value >>>= 7;
+        }
+        data.put((byte) value);
+        last = bits;
+      }
+    }
+
+    /**
+     * Adds a track of points (x[i], y[i], z[i]) at timestamp[i], online or not. z is only
+     * written with altitude.
+     */
+    public void addTrack(String name, double[] x, double[] y, double[] z, double[] timestamp,
+        boolean[] online) {
+      int n = x.length;
+      long[] entry = new long[8];
+
+      entry[0] = dataPosition();
+      entry[1] = n;
+
+      putColumn(x);
+      entry[2] = dataPosition() - entry[0];
+      putColumn(y);
+      entry[3] = dataPosition() - entry[0];
+      if (hasAltitude) {
+        putColumn(z);
+      }
+      entry[4] = dataPosition() - entry[0];
+      putColumn(timestamp);
+      entry[5] = dataPosition() - entry[0];
+
+      byte[] flags = new byte[(n + 7) / 8];
+
+      for (int i = 0; i < n; i++) {
+        if (online[i]) {
+          flags[i / 8] |= 1 << (i % 8);
+        }
+      }
+      reserveData(flags.length);
+      data.put(flags);
+
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+      entry[6] = names.position();
+      entry[7] = bytes.length;
+      names = reserve(names, bytes.length);
+      names.put(bytes);
+
+      entries.add(entry);
+      pointCount += n;
+    }
+
+    /**
+     * Writes the tracks added so far into file.
+     */
+    public void write(File file) throws IOException {
+      long dataOffset = HEADER_SIZE + (long) entries.size() * ENTRY_SIZE;
+      long namesOffset = dataOffset + dataPosition();
+      long length = namesOffset + names.position();
+
+      RandomAccessFile out = new RandomAccessFile(file, "rw");
+
+      try {
+        out.setLength(length);
+
+        FileChannel channel = out.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(entries.size());
+        buffer.putInt(hasAltitude ? HAS_ALTITUDE : 0);
+        buffer.putLong(pointCount);
+        buffer.putLong(namesOffset);
+
+        for (long[] entry : entries) {
+          if (buffer.remaining() < ENTRY_SIZE) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+          }
+          buffer.putLong(dataOffset + entry[0]);
+          for (int k = 1; k < 8; k++) {
+            buffer.putInt((int) entry[k]);
+          }
+          buffer.putInt(0);
+        }
+        buffer.flip();
+        writeFully(channel, buffer);
+
+        for (ByteBuffer chunk : chunks) {
+          writeFully(channel, chunk.duplicate());
+        }
+        data.flip();
+        writeFully(channel, data);
+        names.flip();
+        writeFully(channel, names);
+
+        channel.force(false);
+      } finally {
+        out.close();
+      }
+    }
+
+    /**
+     * Writes buffer, from its position to its limit, to channel.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Reads a track file, in "x y timestamp online" or "x y z timestamp online" format, into
+   * builder as it is, without merging close points.
+   */
+  public static void addTrackFile(Builder builder, File file, boolean hasAltitude)
+      throws IOException {
+    TrackParser in = TrackParser.open(file);
+    int n = 0;
+    double[] x = new double[64];
+    double[] y = new double[64];
+    double[] z = new double[64];
+    double[] timestamp = new double[64];
+    boolean[] online = new boolean[64];
+
+    try {
+      while (in.nextLine()) {
+        if (n == x.length) {
+          x = Arrays.copyOf(x, 2 * n);
+          y = Arrays.copyOf(y, 2 * n);
+          z = Arrays.copyOf(z, 2 * n);
+          timestamp = Arrays.copyOf(timestamp, 2 * n);
+          online = Arrays.copyOf(online, 2 * n);
+        }
+
+        x[n] = in.nextDouble();
+        y[n] = in.nextDouble();
+        z[n] = hasAltitude ? in.nextDouble() : 0.0;
+        timestamp[n] = in.nextDouble();
+        online[n] = in.nextBoolean();
+        n++;
+      }
+    } catch (RuntimeException e) {
+      throw new IOException(file + ": bad line " + (n + 1), e);
+    }
+
+    builder.addTrack(file.getName(), Arrays.copyOf(x, n), Arrays.copyOf(y, n),
+        Arrays.copyOf(z, n), Arrays.copyOf(timestamp, n), Arrays.copyOf(online, n));
+  }
+
+  /**
+   * Packs the track files in folder, in the order of their names, into a tracks.bin in folder.
+   */
+  public static void pack(File folder, boolean hasAltitude) throws IOException {
+    File[] files = folder.listFiles();
+
+    if (files == null) {
+      throw new IOException(folder + " is not a folder");
+    }
+    Arrays.sort(files);
+
+    Builder builder = new Builder(hasAltitude);
+
+    for (File file : files) {
+      if (file.isFile() && !file.getName().equals(FILE_NAME)) {
+        addTrackFile(builder, file, hasAltitude);
+      }
+    }
+    builder.write(new File(folder, FILE_NAME));
+  }
+
+  /**
+   * Writes the tracks of the tracks.bin in folder back into track files in folder.
+   */
+  public static void unpack(File folder) throws IOException {
+    TrackContainer container = open(new File(folder, FILE_NAME));
+
+    for (int i = 0; i < container.size(); i++) {
+      Track track = container.get(i);
+      BufferedWriter out = new BufferedWriter(new FileWriter(new File(folder, track.getName())));
+      Cursor cursor = track.cursor();
+
+      try {
+        while (cursor.next()) {
+          out.write(cursor.x + " " + cursor.y + " "
+              + (container.hasAltitude() ? cursor.z + " " : "") + cursor.timestamp + " "
+              + (cursor.online ? "True" : "False") + "\n");
+        }
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  public static void main(String args[]) throws IOException {
+    if (args.length < 3 || !(args[0].equals("pack") || args[0].equals("unpack"))) {
+      System.err.println("usage: TrackContainer pack|unpack hasAltitude folder...");
+      System.exit(1);
+    }
+
+    // if the track files contain altitude information
+    boolean hasAltitude = Boolean.parseBoolean(args[1]);
+
+    for (int i = 2; i < args.length; i++) {
+      if (args[0].equals("pack")) {
+        pack(new File(args[i]), hasAltitude);
+      } else {
+        unpack(new File(args[i]));
+      }
+    }
+  }
+}
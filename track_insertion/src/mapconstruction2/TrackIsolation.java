@@ -27,11 +27,10 @@ package mapconstruction2;
  *
  */
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -39,8 +38,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
-import java.util.Scanner;
-import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,6 +53,11 @@ class TrackFile {
   double minY;
   double maxX;
   double maxY;
+  SegmentIndex segmentIndex; // built on first use
+
+  // the track the curve is decoded from on first use, if it comes from a
+  // TrackContainer; curve and the bounding box are only set afterwards
+  private TrackContainer.Track track;
 
   TrackFile() {
     this.fileName = "";
@@ -73,15 +75,89 @@ class TrackFile {
     maxX = maxY = Double.NEGATIVE_INFINITY;
   }
 
+  /**
+   * Creates a track of track, decoded on first use as readFile() parses a track file.
+   */
+  TrackFile(TrackContainer.Track track) {
+    this();
+    this.fileName = track.getName();
+    this.curve = null;
+    this.track = track;
+  }
+
+  /**
+   * Decodes the points of track into curve, if not done yet.
+   */
+  private void decode() {
+    if (curve != null) {
+      return;
+    }
+
+    curve = new ArrayList<Vertex>(track.getPointCount());
+
+    TrackContainer.Cursor cursor = track.cursor();
+
+    while (cursor.next()) {
+      addPoint(new Vertex(cursor.x, cursor.y, cursor.z));
+    }
+
+    expandBoundingBox();
+  }
+
+  /**
+   * Appends newPoint to the track and grows the bounding box. A point closer than 0.001 to the
+   * last point replaces it by their midpoint.
+   */
+  void addPoint(Vertex newPoint) {
+    if (curve.size() > 0) {
+      Vertex lastPoint = curve.get(curve.size() - 1);
+
+      if (newPoint.dist(lastPoint) < 0.001) {
+        curve.remove(curve.size() - 1);
+        newPoint = (new Line(lastPoint, newPoint)).getVertex(0.5);
+      }
+    }
+
+    curve.add(newPoint);
+
+    minX = Math.min(minX, newPoint.getX());
+    minY = Math.min(minY, newPoint.getY());
+    maxX = Math.max(maxX, newPoint.getX());
+    maxY = Math.max(maxY, newPoint.getY());
+  }
+
+  /**
+   * Expands the bounding box by 0.1 on each side, once all points are added.
+   */
+  void expandBoundingBox() {
+    minX -= 0.1;
+    minY -= 0.1;
+    maxX += 0.1;
+    maxY += 0.1;
+  }
+
   public String getFileName() {
     return fileName;
   }
 
   public ArrayList<Vertex> getPose() {
+    decode();
     return curve;
   }
 
+  /**
+   * Returns the segment index of the pose, built on the first call. The pose
+   * must not be changed afterwards.
+   */
+  public SegmentIndex getSegmentIndex() {
+    if (segmentIndex == null) {
+      segmentIndex = new SegmentIndex(getPose());
+    }
+    return segmentIndex;
+  }
+
   public double getLength() {
+    decode();
     double length = 0;
     for (int i = 1; i < curve.size(); i++) {
       length = length + curve.get(i - 1).dist(curve.get(i));
@@ -90,58 +166,54 @@ class TrackFile {
   }
 
   public boolean enclosesVertex(Vertex v) {
+    decode();
     return (v.getX() >= minX) && (v.getX() <= maxX) && (v.getY() >= minY) && (v.getY() <= maxY);
   }
 
+  /**
+   * Reads the track at trackPath, a track file or "container#name" for the track name of a
+   * TrackContainer.
+   */
+  public static TrackFile open(String trackPath, boolean hasAltitude) throws IOException {
+    int separator = trackPath.lastIndexOf('#');
+
+    if (separator >= 0 && new File(trackPath.substring(0, separator)).isFile()) {
+      String name = trackPath.substring(separator + 1);
+      TrackContainer.Track track =
+          TrackContainer.open(new File(trackPath.substring(0, separator))).find(name);
+
+      if (track == null) {
+        throw new IOException("no track " + name + " in " + trackPath.substring(0, separator));
+      }
+      return new TrackFile(track);
+    }
+    return readFile(new File(trackPath), hasAltitude);
+  }
+
   public static TrackFile readFile(File inputFile, boolean hasAltitude) {
     TrackFile poseFile = new TrackFile();
     poseFile.fileName = inputFile.getName();
-    String str = "";
 
     try {
-      BufferedReader in = new BufferedReader(new FileReader(
-          inputFile.getAbsolutePath()));
+      TrackParser in = TrackParser.open(inputFile);
       double x, y, z;
 
-      while ((str = in.readLine()) != null) {
-        StringTokenizer strToken = new StringTokenizer(str);
-        // strToken.nextToken();
+      while (in.nextLine()) {
         // track file in "x y timestamp" or "x y z timestamp" format
 
-        x = Double.parseDouble(strToken.nextToken());
-        y = Double.parseDouble(strToken.nextToken());
+        x = in.nextDouble();
+        y = in.nextDouble();
 
         if (hasAltitude) {
-          z = Double.parseDouble(strToken.nextToken());
+          z = in.nextDouble();
         } else {
           z = 0.0;
         }
 
-        Vertex newPoint = new Vertex(x, y, z);
-
-        if (poseFile.curve.size() > 0) {
-          Vertex lastPoint = poseFile.curve.get(poseFile.curve.size() - 1);
-
-          if (newPoint.dist(lastPoint) < 0.001) {
-            poseFile.curve.remove(poseFile.curve.size() - 1);
-            newPoint = (new Line(lastPoint, newPoint)).getVertex(0.5);
-          }
-        }
-
-        poseFile.curve.add(newPoint);
-
-        poseFile.minX = Math.min(poseFile.minX, newPoint.getX());
-        poseFile.minY = Math.min(poseFile.minY, newPoint.getY());
-        poseFile.maxX = Math.max(poseFile.maxX, newPoint.getX());
-        poseFile.maxY = Math.max(poseFile.maxY, newPoint.getY());
+        poseFile.addPoint(new Vertex(x, y, z));
       }
 
-      poseFile.minX -= 0.1;
-      poseFile.minY -= 0.1;
-      poseFile.maxX += 0.1;
-      poseFile.maxY += 0.1;
-
-      in.close();
+      poseFile.expandBoundingBox();
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -153,7 +225,7 @@ class TrackFile {
  * An object that takes a set of poses as input, construct graph and write two
  * files one for vertices and one for edges.
  */
-public class TrackIsolation {
+public class TrackIsolation implements ParallelIntervals.Scanner {
 
   public static int curveid; // counter for pose
   public static String curveName; // file name for the pose
@@ -162,6 +234,25 @@ public class TrackIsolation {
 
   private static final String LINE_FLUSH = "\r\033[K";
 
+  // scratch space of the eps-region intersections computed by isWhiteInterval
+  private final IntersectionKernel.Scratch scratch = new IntersectionKernel.Scratch();
+
+  // cheap tests run before the exact test in isWhiteInterval, with their counters
+  private final SegmentFilter filter = new SegmentFilter();
+
+  // runs the computation of the first white intervals of all edges
+  private ParallelIntervals intervals = new ParallelIntervals(
+      Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Sets the number of threads computing the first white intervals, 1 to
+   * compute them on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    this.intervals.shutdown();
+    this.intervals = new ParallelIntervals(parallelism);
+  }
+
   /**
    * Writes the constructed map into files.
    */
@@ -185,45 +276,9 @@ public class TrackIsolation {
     }
   }
 
-  public static void readFromFile(List<Vertex> constructedMap, String fileName) {
+  public static void readFromFile(MapGraph constructedMap, String fileName) {
     try {
-      Scanner vertexScanner = new Scanner(new File(fileName + "/vertices.txt")).useDelimiter("[\\s,]");
-      Scanner edgeScanner = new Scanner(new File(fileName + "/edges.txt")).useDelimiter("[\\s,]");
-
-      int from = -1;
-      int to = -1;
-
-      while (vertexScanner.hasNext()) {
-        int id = vertexScanner.nextInt();
-        double x = vertexScanner.nextDouble();
-        double y = vertexScanner.nextDouble();
-        double z = vertexScanner.nextDouble();
-        double online = vertexScanner.nextDouble();
-
-        Vertex vertex = new Vertex(x, y, z);
-
-        vertex.addEntry(online);
-
-        constructedMap.add(vertex);
-
-        while (true) {
-          if (from == id) {
-            vertex.addElementAdjList(to);
-          }
-
-          if (!edgeScanner.hasNext()) break;
-
-          int edgeId = edgeScanner.nextInt();
-          from = edgeScanner.nextInt();
-          to = edgeScanner.nextInt();
-
-          if (from != id) break;
-        }
-      }
-
-
-      vertexScanner.close();
-      edgeScanner.close();
+      GraphFile.readMap(constructedMap, new VertexRegistry(), new File(fileName));
     } catch (Exception ex) {
       System.out.println(ex.toString());
     }
@@ -235,15 +290,34 @@ public class TrackIsolation {
    * if edge e has a part of white interval else false.
    */
 
-  public boolean isWhiteInterval(Edge edge, List<Vertex> pose,
+  public boolean isWhiteInterval(Edge edge, SegmentIndex segments,
       int currentIndex, double eps, double altEps) {
-    Line line = new Line(pose.get(currentIndex - 1), pose.get(currentIndex));
+    return this.isWhiteInterval(edge, segments, currentIndex, eps, altEps,
+        scratch, filter);
+  }
 
-    if (Math.abs(line.avgAltitude() - edge.getLine().avgAltitude()) <= altEps) {
-      return line.pIntersection(edge, eps);
-    } else {
+  /**
+   * Same as isWhiteInterval(edge, segments, currentIndex, eps, altEps), using
+   * scratch for the intersection and counting in filter.
+   */
+  public boolean isWhiteInterval(Edge edge, SegmentIndex segments,
+      int currentIndex, double eps, double altEps,
+      IntersectionKernel.Scratch scratch, SegmentFilter filter) {
+    int i = currentIndex;
+
+    if (!filter.accept(segments, i, edge, eps, altEps)) {
       return false;
     }
+
+    boolean white = IntersectionKernel.intersect(segments.getX1(i),
+        segments.getY1(i), segments.getX2(i), segments.getY2(i), segments.getM(i),
+        segments.getC(i), segments.getTheta(i), edge.getRegion(eps), scratch);
+
+    filter.countExact(white);
+    if (white) {
+      scratch.applyTo(edge);
+    }
+    return white;
   }
 
   /**
@@ -263,8 +337,20 @@ public class TrackIsolation {
    * Scans for next white interval on an Edge starting from index newstart of
    * pose.
    */
-  public void computeNextInterval(Edge edge, List<Vertex> pose, int newstart,
+  public void computeNextInterval(Edge edge, SegmentIndex segments, int newstart,
       double eps, double altEps) {
+    this.computeNextInterval(edge, segments, newstart, eps, altEps, scratch,
+        filter);
+  }
+
+  /**
+   * Same as computeNextInterval(edge, segments, newstart, eps, altEps), using
+   * scratch for the intersections and counting in filter.
+   */
+  public void computeNextInterval(Edge edge, SegmentIndex segments, int newstart,
+      double eps, double altEps, IntersectionKernel.Scratch scratch,
+      SegmentFilter filter) {
+    IntersectionKernel.Region region = edge.getRegion(eps);
 
     // Compute next white interval on edge.
     boolean first = true;
@@ -273,14 +359,24 @@ public class TrackIsolation {
     int startIndex = 0;
     double cstart = 0, vstart = 0;
 
-    if (newstart >= pose.size()) {
-      edge.setCurveEndIndex(pose.size());
+    if (newstart >= segments.size()) {
+      edge.setCurveEndIndex(segments.size());
       edge.setDone(true);
       return;
     }
 
-    for (int i = newstart; i < pose.size(); i++) {
-      boolean result = isWhiteInterval(edge, pose, i, eps, altEps);
+    for (int i = newstart; i < segments.size(); i++) {
+      // a segment which doesn't come near the edge has no white interval,
+      // so the search for the first one skips straight to the next near one
+      if (first) {
+        i = segments.next(i, region);
+        if (i >= segments.size()) {
+          break;
+        }
+      }
+
+      boolean result = isWhiteInterval(edge, segments, i, eps, altEps,
+          scratch, filter);
 
       // first = true means we are still looking for our first interval
       // starting from newstart.
@@ -314,15 +410,15 @@ public class TrackIsolation {
     if (first) {
       // if the last segment on the curve is the first segment of that
       // interval
-      edge.setCurveEndIndex(pose.size());
+      edge.setCurveEndIndex(segments.size());
       edge.setDone(true);
     } else {
       edge.setCurveStartIndex(startIndex);
       edge.setCurveStart(startIndex + cstart);
       edge.setEdgeStart(vstart);
 
-      edge.setCurveEnd(pose.size() - 2 + edge.getCurveEnd());
-      edge.setCurveEndIndex(pose.size() - 2);
+      edge.setCurveEnd(segments.size() - 2 + edge.getCurveEnd());
+      edge.setCurveEndIndex(segments.size() - 2);
     }
 
     return;
@@ -332,36 +428,34 @@ public class TrackIsolation {
    * Isolate track
    */
   // @TODO(mahmuda): extract some shorter well-named methods.
-  public void isolateTrack(List<Vertex> constructedMap, TrackFile track, double eps,
+  public void isolateTrack(MapGraph constructedMap, TrackFile track, double eps,
       double altEps) {
-    List<Edge> edges = new ArrayList<Edge>();
+    EdgeIndex edgeIndex = EdgeIndex.build(constructedMap,
+        EdgeIndex.CELL_SIZE_IN_EPS * eps);
 
-    List<Integer> vertexHistory = new ArrayList<Integer>();
-
-    for (int i = 0; i < constructedMap.size(); i++) {
-      Vertex v = constructedMap.get(i);
-
-      for (int j = 0; j < v.getDegree(); j++) {
-        int index = v.getAdjacentElementAt(j);
-
-        if ((index == i) || vertexHistory.contains(index)) continue;
-
-        Vertex w = constructedMap.get(index);
+    List<Vertex> pose = track.getPose();
 
-        if (!track.enclosesVertex(v) && !track.enclosesVertex(w)) continue;
+    // only edges crossing the bounding box of the track, expanded by eps,
+    // can contain a white interval
+    List<Edge> edges = edgeIndex.getEdges(track.minX - eps, track.minY - eps,
+        track.maxX + eps, track.maxY + eps);
 
-        edges.add(new Edge(v, w));
-      }
+    SegmentIndex segments = track.getSegmentIndex();
 
-      vertexHistory.add(i);
+    // each edge only reads the pose and writes to itself, so the first
+    // white intervals of all edges are computed in parallel
+    try {
+      this.intervals.computeFirstIntervals(this, edges, segments, eps, altEps,
+          filter);
+    } finally {
+      // the first white intervals are only computed once per track
+      this.intervals.shutdown();
     }
 
-    List<Vertex> pose = track.getPose();
-
     PriorityQueue<Edge> pq = new PriorityQueue<Edge>();
 
+    // edges are queued in list order, as in a sequential run
     for (int i = 0; i < edges.size(); i++) {
-      this.computeNextInterval(edges.get(i), pose, 1, eps, altEps);
       if (!edges.get(i).getDone()) {
         pq.add(edges.get(i));
       }
@@ -388,9 +482,11 @@ public class TrackIsolation {
 
       while (cend < pose.size()) {
 
-        logger.log(Level.FINEST, MapConstruction.curveName
-            + " has white interval " + edge.getCurveStart() + " "
-            + edge.getCurveEnd() + " " + cend);
+        if (logger.isLoggable(Level.FINEST)) {
+          logger.log(Level.FINEST, MapConstruction.curveName
+              + " has white interval " + edge.getCurveStart() + " "
+              + edge.getCurveEnd() + " " + cend);
+        }
 
         if (cend < edge.getCurveEnd()) {
           cend = edge.getCurveEnd();
@@ -418,14 +514,16 @@ public class TrackIsolation {
         // }
 
         if (edge.getCurveEnd() == pose.size() - 1) {
-          logger.log(Level.FINER, MapConstruction.curveName
-              + " processing completed.");
+          if (logger.isLoggable(Level.FINER)) {
+            logger.log(Level.FINER, MapConstruction.curveName
+                + " processing completed.");
+          }
           return;
         }
 
         first = false;
 
-        this.computeNextInterval(edge, pose,
+        this.computeNextInterval(edge, segments,
             edge.getCurveEndIndex() + 1, eps, altEps);
 
         if (!edge.getDone()) {
@@ -447,6 +545,8 @@ public class TrackIsolation {
     // path to the folder that contains input tracks.
     String inputPath = args[0];
 
+    // path to the track, a track file or "tracks.bin#name" for a track of a
+    // TrackContainer.
     String trackPath = args[1];
 
     // path to the folder where the output will be written.
@@ -466,9 +566,21 @@ public class TrackIsolation {
       altEps = 4.0;
     }
 
-    List<Vertex> constructedMap = new ArrayList<Vertex>();
+    // number of threads computing the first white intervals of the edges
+    if (args.length > 6) {
+      trackIsolation.setParallelism(Integer.parseInt(args[6]));
+    }
+
+    MapGraph constructedMap = new MapGraph();
+
+    TrackFile track;
 
-    TrackFile track = TrackFile.readFile(new File(trackPath), hasAltitude);
+    try {
+      track = TrackFile.open(trackPath, hasAltitude);
+    } catch (IOException ex) {
+      logger.log(Level.SEVERE, ex.toString());
+      throw new RuntimeException(ex);
+    }
 
     System.out.print(LINE_FLUSH + "Reading rebuilt map...");
 
@@ -476,7 +588,9 @@ public class TrackIsolation {
 
     System.out.print(LINE_FLUSH + "Isolating track...");
 
-    trackIsolation.isolateTrack(constructedMap, track, eps, altEps);
+    // the map is only read from now on
+    trackIsolation.isolateTrack(constructedMap.snapshot(), track, eps, altEps);
+    logger.info("white interval tests: " + trackIsolation.filter);
 
     System.out.print(LINE_FLUSH + "Exporting isolated track map...");
 
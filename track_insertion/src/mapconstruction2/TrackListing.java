@@ -0,0 +1,260 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TrackListing.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The tracks of one trackset folder, listed once, with the keys that identify them in the
+ * manifest of a map (see IncrementalUpdate).
+ *
+ * The key of a track is a hash of its points as parsed, x, y, z, timestamp and online, and not
+ * its name: the export numbers the tracks across all tracksets, so a new export of a dataset
+ * with more tracks renames most of them, while their points stay the same. Tracks with the same
+ * points get "#2", "#3"... appended to their key, in the order of the listing.
+ */
+public class TrackListing {
+
+  // bytes of the hash kept in a key
+  private static final int KEY_BYTES = 16;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final File trackset;
+  private final boolean hasAltitude;
+
+  // the tracks of a TrackContainer, or null with the track files
+  private final List<TrackContainer.Track> tracks;
+  private final List<File> files;
+  private final List<String> keys;
+
+  private TrackListing(File trackset, boolean hasAltitude, List<TrackContainer.Track> tracks,
+      List<File> files, List<String> keys) {
+    this.trackset = trackset;
+    this.hasAltitude = hasAltitude;
+    this.tracks = tracks;
+    this.files = files;
+    this.keys = keys;
+  }
+
+  public File getTrackset() {
+    return trackset;
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  /**
+   * Returns the key of track index in the manifest.
+   */
+  public String getKey(int index) {
+    return keys.get(index);
+  }
+
+  /**
+   * Returns the name of track index in the manifest, "trackset/track".
+   */
+  public String getName(int index) {
+    return trackset.getName() + "/"
+        + (tracks != null ? tracks.get(index).getName() : files.get(index).getName());
+  }
+
+  /**
+   * Returns the line of track index in the manifest, its key and its name.
+   */
+  public String getManifestLine(int index) {
+    return getKey(index) + " " + getName(index);
+  }
+
+  /**
+   * Returns the tracks whose key is not in keys.
+   */
+  public TrackListing without(Set<String> keys) {
+    List<TrackContainer.Track> keptTracks = (tracks != null)
+        ? new ArrayList<TrackContainer.Track>() : null;
+    List<File> keptFiles = (files != null) ? new ArrayList<File>() : null;
+    List<String> keptKeys = new ArrayList<String>();
+
+    for (int i = 0; i < size(); i++) {
+      if (!keys.contains(this.keys.get(i))) {
+        if (tracks != null) {
+          keptTracks.add(tracks.get(i));
+        } else {
+          keptFiles.add(files.get(i));
+        }
+        keptKeys.add(this.keys.get(i));
+      }
+    }
+    return new TrackListing(trackset, hasAltitude, keptTracks, keptFiles, keptKeys);
+  }
+
+  /**
+   * Reads the tracks, readParallelism track files at the same time. The tracks of a container
+   * are only decoded when they are inserted.
+   *
+   * @return the poses, in the order of the listing
+   */
+  public List<PoseFile> read(int readParallelism) {
+    if (tracks != null) {
+      List<PoseFile> poseFiles = new ArrayList<PoseFile>();
+
+      for (TrackContainer.Track track : tracks) {
+        poseFiles.add(new PoseFile(track));
+      }
+      return poseFiles;
+    }
+
+    MapConstruction construction = new MapConstruction();
+    construction.setReadParallelism(readParallelism);
+    construction.setShowProgress(false);
+
+    return construction.readFiles(files.toArray(new File[files.size()]), hasAltitude);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void addPoint(MessageDigest digest, ByteBuffer point, double x, double y,
+      double z, double timestamp, boolean online) {
+    point.clear();
+    point.putDouble(x).putDouble(y).putDouble(z).putDouble(timestamp);
+    point.put((byte) (online ? 1 : 0));
+    point.flip();
+    digest.update(point);
+  }
+
+  private static String key(MessageDigest digest, Map<String, Integer> seen) {
+    byte[] hash = digest.digest();
+    char[] hex = new char[2 * KEY_BYTES];
+
+    for (int i = 0; i < KEY_BYTES; i++) {
+      hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+      hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xf];
+    }
+
+    String key = new String(hex);
+    Integer count = seen.get(key);
+
+    seen.put(key, (count == null) ? 1 : count + 1);
+    return (count == null) ? key : key + "#" + (count + 1);
+  }
+
+  /**
+   * Returns the key of a track of a container, from its decoded points.
+   */
+  private static String key(TrackContainer.Track track, MessageDigest digest, ByteBuffer point,
+      Map<String, Integer> seen) {
+    TrackContainer.Cursor cursor = track.cursor();
+
+    while (cursor.next()) {
+      addPoint(digest, point, cursor.x, cursor.y, cursor.z, cursor.timestamp, cursor.online);
+    }
+    return key(digest, seen);
+  }
+
+  /**
+   * Returns the key of a track file, from its points as readFile() parses them.
+   */
+  private static String key(File file, boolean hasAltitude, MessageDigest digest,
+      ByteBuffer point, Map<String, Integer> seen) throws IOException {
+    TrackParser in = TrackParser.open(file);
+    int line = 0;
+
+    try {
+      while (in.nextLine()) {
+        line++;
+
+        double x = in.nextDouble();
+        double y = in.nextDouble();
+        double z = hasAltitude ? in.nextDouble() : 0.0;
+        double timestamp = in.nextDouble();
+
+        addPoint(digest, point, x, y, z, timestamp, in.nextBoolean());
+      }
+    } catch (RuntimeException e) {
+      throw new IOException(file + ": bad line " + line, e);
+    }
+    return key(digest, seen);
+  }
+
+  /**
+   * Lists the tracks of the trackset folders in tracksPath, in the order of
+   * FullRebuild.listTracksets() and, in a trackset, of the container or of the file names.
+   */
+  public static List<TrackListing> list(File tracksPath, boolean hasAltitude)
+      throws IOException {
+    List<TrackListing> listings = new ArrayList<TrackListing>();
+    MessageDigest digest = newDigest();
+    ByteBuffer point = ByteBuffer.allocate(4 * 8 + 1);
+    Map<String, Integer> seen = new HashMap<String, Integer>();
+
+    for (File trackset : FullRebuild.listTracksets(tracksPath)) {
+      File container = new File(trackset, TrackContainer.FILE_NAME);
+      List<String> keys = new ArrayList<String>();
+
+      if (container.isFile()) {
+        TrackContainer tracksetTracks = TrackContainer.open(container);
+        List<TrackContainer.Track> tracks = new ArrayList<TrackContainer.Track>();
+
+        for (int i = 0; i < tracksetTracks.size(); i++) {
+          tracks.add(tracksetTracks.get(i));
+          keys.add(key(tracks.get(i), digest, point, seen));
+        }
+        listings.add(new TrackListing(trackset, hasAltitude, tracks, null, keys));
+      } else {
+        File[] files = trackset.listFiles();
+        List<File> tracksetFiles = new ArrayList<File>();
+
+        // the order readAllFiles() reads them in
+        for (File file : files) {
+          if (file.isFile()) {
+            tracksetFiles.add(file);
+            keys.add(key(file, hasAltitude, digest, point, seen));
+          }
+        }
+        listings.add(new TrackListing(trackset, hasAltitude, null, tracksetFiles, keys));
+      }
+    }
+    return listings;
+  }
+}
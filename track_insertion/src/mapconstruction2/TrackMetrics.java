@@ -0,0 +1,180 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TrackMetrics.java
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Counters of the insertion of one track by MapConstruction, written one line per track into a
+ * CSV file, or a JSONL file when its name ends with ".jsonl":
+ *
+ * - candidateEdges: the edges of the map near the track, compared with it
+ *
+ * - whiteIntervalCalls, whiteIntervalHits: the segment and edge pairs tested for a white interval
+ * and the ones which have one
+ *
+ * - whiteIntervals: the white intervals the sweep went through
+ *
+ * - edgeSplitCalls, committedSplits: the split points computed on edges and the ones committed
+ *
+ * - newVertices, newEdges: the growth of the map, edges replaced by splits taken out
+ *
+ * - selectionMs, intervalMs, sweepMs, commitMs: the time to select the candidate edges, to
+ * compute their first white intervals, to sweep along the track and to commit the splits
+ *
+ * The tracks MapConstruction inserts again after it skipped a failing track and went back to a
+ * checkpoint get no second line. A resumed run appends to the file, so the tracks the killed
+ * run inserted after its last save get another line.
+ */
+public class TrackMetrics {
+
+  static final String[] COLUMNS = { "track", "name", "points", "candidateEdges",
+      "whiteIntervalCalls", "whiteIntervalHits", "whiteIntervals", "edgeSplitCalls",
+      "committedSplits", "newVertices", "newEdges", "selectionMs", "intervalMs", "sweepMs",
+      "commitMs" };
+
+  private final BufferedWriter out;
+  private final boolean json;
+
+  // the track being inserted
+  int track;
+  String name;
+  int points;
+
+  long candidateEdges;
+  long whiteIntervalCalls;
+  long whiteIntervalHits;
+  long whiteIntervals;
+  long edgeSplitCalls;
+  long committedSplits;
+  long newVertices;
+  long newEdges;
+
+  long selectionNanos;
+  long intervalNanos;
+  long sweepNanos;
+  long commitNanos;
+
+  private TrackMetrics(BufferedWriter out, boolean json) {
+    this.out = out;
+    this.json = json;
+  }
+
+  /**
+   * Creates file, as CSV with a header or as JSONL after its name.
+   */
+  public static TrackMetrics create(File file) throws IOException {
+    return open(file, false);
+  }
+
+  /**
+   * Opens file to add lines after the ones it has, as a run resumed from a checkpoint does. A
+   * missing or empty file is created as create() does.
+   */
+  public static TrackMetrics append(File file) throws IOException {
+    return open(file, true);
+  }
+
+  private static TrackMetrics open(File file, boolean append) throws IOException {
+    boolean json = file.getName().endsWith(".jsonl");
+    boolean empty = !append || file.length() == 0;
+    TrackMetrics metrics = new TrackMetrics(new BufferedWriter(new FileWriter(file, append)),
+        json);
+
+    if (!json && empty) {
+      for (int i = 0; i < COLUMNS.length; i++) {
+        metrics.out.write((i > 0 ? "," : "") + COLUMNS[i]);
+      }
+      metrics.out.write("\n");
+    }
+    return metrics;
+  }
+
+  /**
+   * Clears the counters for the insertion of a track.
+   */
+  void start(int track, String name, int points) {
+    this.track = track;
+    this.name = name;
+    this.points = points;
+
+    candidateEdges = whiteIntervalCalls = whiteIntervalHits = whiteIntervals = 0;
+    edgeSplitCalls = committedSplits = newVertices = newEdges = 0;
+    selectionNanos = intervalNanos = sweepNanos = commitNanos = 0;
+  }
+
+  private static String quote(String str, boolean json) {
+    if (json) {
+      return "\"" + str.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+    if (str.indexOf(',') >= 0 || str.indexOf('"') >= 0) {
+      return "\"" + str.replace("\"", "\"\"") + "\"";
+    }
+    return str;
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  /**
+   * Writes the counters of the track.
+   */
+  void write() throws IOException {
+    String[] values = { Integer.toString(track), quote(name, json), Integer.toString(points),
+        Long.toString(candidateEdges), Long.toString(whiteIntervalCalls),
+        Long.toString(whiteIntervalHits), Long.toString(whiteIntervals),
+        Long.toString(edgeSplitCalls), Long.toString(committedSplits),
+        Long.toString(newVertices), Long.toString(newEdges), millis(selectionNanos),
+        millis(intervalNanos), millis(sweepNanos), millis(commitNanos) };
+
+    StringBuilder line = new StringBuilder(json ? "{" : "");
+
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        line.append(',');
+      }
+      if (json) {
+        line.append('"').append(COLUMNS[i]).append("\":");
+      }
+      line.append(values[i]);
+    }
+
+    out.write(line.append(json ? "}\n" : "\n").toString());
+    // a run killed later keeps the lines of the tracks it inserted
+    out.flush();
+  }
+
+  public void close() throws IOException {
+    out.close();
+  }
+}
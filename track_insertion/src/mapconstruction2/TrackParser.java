@@ -0,0 +1,137 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TrackParser.java
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits a track file into lines and tokens in place, as BufferedReader.readLine() and a
+ * StringTokenizer with the default delimiters do, without a String per line or token. Numbers
+ * are parsed by CsvGraphReader.parseDouble().
+ */
+class TrackParser {
+
+  private final ByteBuffer buffer;
+  private final int end;
+
+  private int position = 0; // start of the next line
+  private int token = 0; // start of the rest of the current line
+  private int lineEnd = 0;
+
+  private TrackParser(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.end = buffer.limit();
+  }
+
+  /**
+   * Reads file into memory.
+   */
+  static TrackParser open(File file) throws IOException {
+    return new TrackParser(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+  }
+
+  private static boolean isDelimiter(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+  }
+
+  /**
+   * Moves to the next line, ended by "\n", "\r" or "\r\n".
+   *
+   * @return false if there is none
+   */
+  boolean nextLine() {
+    if (position >= end) {
+      return false;
+    }
+
+    int i = position;
+
+    while (i < end && buffer.get(i) != '\n' && buffer.get(i) != '\r') {
+      i++;
+    }
+
+    token = position;
+    lineEnd = i;
+
+    if (i < end && buffer.get(i) == '\r') {
+      i++;
+    }
+    if (i < end && buffer.get(i) == '\n') {
+      i++;
+    }
+    position = i;
+    return true;
+  }
+
+  /**
+   * Returns the offset of the end of the next token of the line and moves token to its start.
+   */
+  private int nextToken() {
+    while (token < lineEnd && isDelimiter(buffer.get(token))) {
+      token++;
+    }
+    if (token == lineEnd) {
+      throw new NoSuchElementException();
+    }
+
+    int tokenEnd = token;
+
+    while (tokenEnd < lineEnd && !isDelimiter(buffer.get(tokenEnd))) {
+      tokenEnd++;
+    }
+    return tokenEnd;
+  }
+
+  /**
+   * Parses the next token of the line as Double.parseDouble() does.
+   */
+  double nextDouble() {
+    int tokenEnd = nextToken();
+    double value = CsvGraphReader.parseDouble(buffer, token, tokenEnd);
+
+    token = tokenEnd;
+    return value;
+  }
+
+  /**
+   * Parses the next token of the line as Boolean.parseBoolean() does.
+   */
+  boolean nextBoolean() {
+    int tokenEnd = nextToken();
+    boolean value = (tokenEnd - token == 4)
+        && (buffer.get(token) | 0x20) == 't' && (buffer.get(token + 1) | 0x20) == 'r'
+        && (buffer.get(token + 2) | 0x20) == 'u' && (buffer.get(token + 3) | 0x20) == 'e';
+
+    token = tokenEnd;
+    return value;
+  }
+}
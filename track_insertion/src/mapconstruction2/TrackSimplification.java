@@ -0,0 +1,233 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: TrackSimplification.java
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Simplifies tracks with the Douglas-Peucker algorithm before they are inserted, so that straight
+ * stretches sampled densely become a few segments. A point is dropped when it is within
+ * toleranceInEps * eps of the segment between the points kept around it, and its altitude within
+ * toleranceInEps * altEps of the altitude along that segment. The simplified track is then within
+ * the same distance of the original one.
+ *
+ * The online entries of a dropped point are added to the nearest of the two points kept around
+ * it, so that a simplified track brings as many entries into the map as the original one.
+ */
+public class TrackSimplification {
+
+  public static final double TOLERANCE_IN_EPS = 0.25;
+
+  private static final Logger logger = Logger.getAnonymousLogger();
+
+  private final double toleranceInEps;
+  private final int parallelism;
+
+  /**
+   * @param parallelism the number of tracks simplified at the same time
+   */
+  public TrackSimplification(double toleranceInEps, int parallelism) {
+    this.toleranceInEps = toleranceInEps;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /**
+   * Returns how far the point p is from the segment between p1 and p2, as a multiple of the
+   * tolerances: above 1 when p must be kept.
+   */
+  private static double deviation(Vertex p, Vertex p1, Vertex p2, double tolerance,
+      double altTolerance) {
+    double xdiff = p2.getX() - p1.getX();
+    double ydiff = p2.getY() - p1.getY();
+    double length = xdiff * xdiff + ydiff * ydiff;
+    double t = 0;
+
+    if (length > 0) {
+      t = ((p.getX() - p1.getX()) * xdiff + (p.getY() - p1.getY()) * ydiff) / length;
+      t = Math.max(0, Math.min(1, t));
+    }
+
+    double dx = p1.getX() + t * xdiff - p.getX();
+    double dy = p1.getY() + t * ydiff - p.getY();
+    double deviation = Math.sqrt(dx * dx + dy * dy) / tolerance;
+
+    if (altTolerance > 0) {
+      double dz = Math.abs(p1.getZ() + t * (p2.getZ() - p1.getZ()) - p.getZ());
+      deviation = Math.max(deviation, dz / altTolerance);
+    }
+    return deviation;
+  }
+
+  /**
+   * Returns the points of curve kept by the simplification, as copies with the entries of the
+   * dropped points added.
+   */
+  public ArrayList<Vertex> simplify(List<Vertex> curve, double eps, double altEps) {
+    int n = curve.size();
+    ArrayList<Vertex> simplified = new ArrayList<Vertex>();
+
+    if (n < 3 || toleranceInEps <= 0) {
+      for (Vertex v : curve) {
+        simplified.add(new Vertex(v));
+      }
+      return simplified;
+    }
+
+    double tolerance = toleranceInEps * eps;
+    double altTolerance = toleranceInEps * altEps;
+    boolean[] keep = new boolean[n];
+    keep[0] = true;
+    keep[n - 1] = true;
+
+    // the pieces of curve left to check, as pairs of kept points
+    int[] stack = new int[2 * n];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = n - 1;
+
+    while (top > 0) {
+      int last = stack[--top];
+      int first = stack[--top];
+      int farthest = -1;
+      double maxDeviation = 1;
+
+      for (int i = first + 1; i < last; i++) {
+        double deviation = deviation(curve.get(i), curve.get(first), curve.get(last), tolerance,
+            altTolerance);
+
+        if (deviation > maxDeviation) {
+          maxDeviation = deviation;
+          farthest = i;
+        }
+      }
+
+      if (farthest != -1) {
+        keep[farthest] = true;
+        stack[top++] = first;
+        stack[top++] = farthest;
+        stack[top++] = farthest;
+        stack[top++] = last;
+      }
+    }
+
+    int previous = 0;
+    Vertex previousCopy = new Vertex(curve.get(0));
+    simplified.add(previousCopy);
+
+    for (int next = 1; next < n; next++) {
+      if (!keep[next]) {
+        continue;
+      }
+
+      Vertex nextCopy = new Vertex(curve.get(next));
+
+      for (int i = previous + 1; i < next; i++) {
+        Vertex dropped = curve.get(i);
+
+        if (dropped.dist(curve.get(previous)) <= dropped.dist(curve.get(next))) {
+          previousCopy.addEntry(dropped);
+        } else {
+          nextCopy.addEntry(dropped);
+        }
+      }
+
+      simplified.add(nextCopy);
+      previous = next;
+      previousCopy = nextCopy;
+    }
+    return simplified;
+  }
+
+  /**
+   * Returns poseFile simplified, as a pose of the same name.
+   */
+  public PoseFile simplify(PoseFile poseFile, double eps, double altEps) {
+    return new PoseFile(poseFile.getFileName(), simplify(poseFile.getPose(), eps, altEps));
+  }
+
+  /**
+   * Returns poseFiles simplified, in the same order, parallelism tracks at a time.
+   */
+  public List<PoseFile> simplifyAll(List<PoseFile> poseFiles, final double eps,
+      final double altEps) {
+    List<PoseFile> simplified = new ArrayList<PoseFile>();
+
+    if (parallelism <= 1 || poseFiles.size() < 2) {
+      for (PoseFile poseFile : poseFiles) {
+        simplified.add(simplify(poseFile, eps, altEps));
+      }
+    } else {
+      List<Callable<PoseFile>> tasks = new ArrayList<Callable<PoseFile>>();
+
+      for (final PoseFile poseFile : poseFiles) {
+        tasks.add(new Callable<PoseFile>() {
+          @Override
+          public PoseFile call() {
+            return simplify(poseFile, eps, altEps);
+          }
+        });
+      }
+
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism,
+          poseFiles.size()));
+
+      try {
+        for (Future<PoseFile> future : pool.invokeAll(tasks)) {
+          simplified.add(future.get());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause()
+            : new RuntimeException(e.getCause());
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    long points = 0;
+    long kept = 0;
+
+    for (int i = 0; i < poseFiles.size(); i++) {
+      points += poseFiles.get(i).getPose().size();
+      kept += simplified.get(i).getPose().size();
+    }
+
+    logger.info("simplified " + poseFiles.size() + " tracks from " + points + " to " + kept
+        + " points");
+    return simplified;
+  }
+}
@@ -28,9 +28,6 @@ package mapconstruction2;
  */
 
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * An object that represents a point in 3D. 
  */
@@ -46,13 +43,6 @@ public class Vertex {
   private double onlineSum; // sum of online entries values
   private double entryCount; // # of entries
 
-  /**
-   * Contains the indices of adjacent vertices.
-   */
-  private List<Integer> adjacencyList;
-
-  private boolean done = false;
-
   /**
    * Timestamp in milliseconds, this field is used when a pose is represented as a list of vertices.
    */
@@ -61,9 +51,6 @@ public class Vertex {
   // TODO(Mahmuda): Better to have static factory methods instead of constructor overloading.
 
   public Vertex() {
-    this.adjacencyList = new ArrayList<Integer>();
-    this.done = false;
-
     this.onlineSum = 0.0;
     this.entryCount = 0;
   }
@@ -164,82 +151,10 @@ public class Vertex {
   public static double dotProd(Vertex vector1, Vertex vector2){
 	  return vector1.getX()*vector2.getX()+vector1.getY()*vector2.getY()+vector1.getZ()*vector2.getZ();
   } 
-  public int getDegree() {
-    return this.adjacencyList.size();
-  }
-
-  public boolean getDone() {
-    return this.done;
-  }
-
   public double getTimestamp() {
     return this.timestamp;
   }
 
-
-  public void setDone(boolean done) {
-    this.done = done;
-  }
-
-  public List<Integer> getAdjacencyList() {
-    return this.adjacencyList;
-  }
-
-  public void clearAdjacencyList() {
-    this.adjacencyList.clear();
-  }
-
-  /**
-   * Adds an element to its adjacency list.
-   *
-   * @param v is the value to be added in adjacency list
-   */
-  void addElementAdjList(int v) {
-    for (int i = 0; i < this.getDegree(); i++) {
-      if (this.adjacencyList.get(i).intValue() == v) {
-        return;
-      }
-    }
-
-    this.adjacencyList.add(Integer.valueOf(v));
-  }
-
-  /**
-   * Returns the index of a vertex in the adjacency list.
-   *
-   * @param v the vertex we are looking for
-   *
-   * @return an int, the index of vertex k if found or -1 otherwise
-   */
-  public int getIndexAdjacent(int v) {
-    return this.adjacencyList.indexOf(v);
-  }
-
-  /**
-   * Returns the value in the adjacency list at index k
-   *
-   * @param k the index
-   *
-   * @return an int, the value at index k or -1 otherwise
-   */
-
-  public int getAdjacentElementAt(int k) {
-    return this.adjacencyList.get(k).intValue();
-  }
-
-  /**
-   * Set the adjacent vertex as value at index
-   *
-   * @param index the index to update
-   *
-   * @param value the new value at index
-   */
-
-  public void setAdjacentElementAt(int index, int value) {
-    this.adjacencyList.remove(index);
-    this.adjacencyList.add(index, value);
-  }
-
   /**
    * Computes distance between two vertices.
    *
@@ -252,14 +167,6 @@ public class Vertex {
     return Math.sqrt(Math.pow(this.x - v2.x, 2) + Math.pow(this.y - v2.y, 2));
   }
 
-  /**
-   * Resets a vertex's processing state.
-   */
-
-  public void reset() {
-    done = false;
-  }
-
   @Override
   public String toString() {
     return String.format("%f %f %f", this.x, this.y, this.z);
@@ -271,11 +178,6 @@ public class Vertex {
   public Vertex deepCopy() {
     Vertex vertex =
         new Vertex(this.lat, this.lng, this.alt, this.x, this.y, this.z, this.timestamp);
-    vertex.done = this.done;
-
-    for (int i = 0; i < this.adjacencyList.size(); i++) {
-      vertex.adjacencyList.add(this.adjacencyList.get(i).intValue());
-    }
     return vertex;
   }
 
@@ -0,0 +1,215 @@
+package mapconstruction2;
+
+/**
+ * Frechet-based map construction 2.0 Copyright 2013 Mahmuda Ahmed and Carola Wenk
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *  ------------------------------------------------------------------------
+ *
+ *  This software is based on the following article. Please cite this article when using this code
+ * as part of a research publication:
+ *
+ *  Mahmuda Ahmed and Carola Wenk, "Constructing Street Networks from GPS Trajectories", European
+ * Symposium on Algorithms (ESA): 60-71, Ljubljana, Slovenia, 2012
+ *
+ *  ------------------------------------------------------------------------
+ *
+ * Filename: VertexRegistry.java
+ *
+ */
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Maps vertex coordinates to their indices in a constructed map. Two vertices share an index when
+ * their coordinates are equal after rounding to 6 decimal places, which is the same identity
+ * Vertex.toString() gives, but keys are primitive and lookups don't allocate.
+ */
+public class VertexRegistry {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private static final double SCALE = 1e6; // 6 decimal places, as in "%f"
+
+  // quantized values which can't come from a finite coordinate
+  private static final long NEGATIVE_ZERO = Long.MIN_VALUE;
+  private static final long NOT_A_NUMBER = Long.MAX_VALUE;
+  private static final long POSITIVE_INFINITY = Long.MAX_VALUE - 1;
+  private static final long NEGATIVE_INFINITY = Long.MIN_VALUE + 1;
+
+  /*
+   * Open addressing with linear probing. Each slot keeps the three quantized coordinates, so keys
+   * never collide whatever the coordinate range is, and the index stored for them, -1 when the
+   * slot is empty.
+   */
+  private long[] keysX;
+  private long[] keysY;
+  private long[] keysZ;
+  private int[] values;
+  private int size;
+
+  public VertexRegistry() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize the number of vertices expected to be registered
+   */
+  public VertexRegistry(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity) {
+    keysX = new long[capacity];
+    keysY = new long[capacity];
+    keysZ = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, -1);
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Rounds a coordinate to an integer number of millionths, half up like "%f". Values close to a
+   * tie are rounded from their decimal representation, as Formatter does.
+   */
+  static long quantize(double value) {
+    if (Double.isNaN(value)) {
+      return NOT_A_NUMBER;
+    } else if (Double.isInfinite(value)) {
+      return value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY;
+    }
+
+    boolean negative = (Double.doubleToRawLongBits(value) < 0);
+    double scaled = Math.abs(value) * SCALE;
+    double floor = Math.floor(scaled);
+    double fraction = scaled - floor;
+    long magnitude;
+
+    if (Math.abs(fraction - 0.5) > 1e-6 + Math.ulp(scaled) * 4) {
+      magnitude = (long) floor + (fraction > 0.5 ? 1 : 0);
+    } else {
+      magnitude = new BigDecimal(Double.toString(Math.abs(value)))
+          .setScale(6, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    if (negative) {
+      return (magnitude == 0) ? NEGATIVE_ZERO : -magnitude;
+    }
+    return magnitude;
+  }
+
+  /**
+   * Packs the three quantized coordinates into one well mixed long, used to pick a slot.
+   */
+  private static long packedKey(long x, long y, long z) {
+    long h = x * 0x9E3779B97F4A7C15L;
+    h = (h ^ (h >>> 29) ^ y) * 0xBF58476D1CE4E5B9L;
+    h = (h ^ (h >>> 32) ^ z) * 0x94D049BB133111EBL;
+    return h ^ (h >>> 31);
+  }
+
+  private int slot(long x, long y, long z) {
+    int mask = values.length - 1;
+    int i = (int) packedKey(x, y, z) & mask;
+
+    while (values[i] != -1 && !(keysX[i] == x && keysY[i] == y && keysZ[i] == z)) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /**
+   * Returns the index registered for the coordinates of v, or -1 if there is none.
+   */
+  public int get(Vertex v) {
+    return values[slot(quantize(v.getX()), quantize(v.getY()), quantize(v.getZ()))];
+  }
+
+  public boolean containsKey(Vertex v) {
+    return get(v) != -1;
+  }
+
+  /**
+   * Registers index for the coordinates of v, replacing any index registered before.
+   */
+  public void put(Vertex v, int index) {
+    insert(v, index, true);
+  }
+
+  /**
+   * Registers index for the coordinates of v unless they already have one.
+   *
+   * @return the index registered for the coordinates of v after the call, which is index when v
+   *         was not registered yet
+   */
+  public int putIfAbsent(Vertex v, int index) {
+    return insert(v, index, false);
+  }
+
+  private int insert(Vertex v, int index, boolean replace) {
+    long x = quantize(v.getX());
+    long y = quantize(v.getY());
+    long z = quantize(v.getZ());
+
+    int i = slot(x, y, z);
+
+    if (values[i] != -1) {
+      if (replace) {
+        values[i] = index;
+      }
+      return values[i];
+    }
+
+    keysX[i] = x;
+    keysY[i] = y;
+    keysZ[i] = z;
+    values[i] = index;
+    size++;
+
+    if (size * 2 > values.length) {
+      rehash(values.length * 2);
+    }
+    return index;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldX = keysX;
+    long[] oldY = keysY;
+    long[] oldZ = keysZ;
+    int[] oldValues = values;
+
+    allocate(capacity);
+
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != -1) {
+        int j = slot(oldX[i], oldY[i], oldZ[i]);
+
+        keysX[j] = oldX[i];
+        keysY[j] = oldY[i];
+        keysZ[j] = oldZ[i];
+        values[j] = oldValues[i];
+        size++;
+      }
+    }
+  }
+}
@@ -0,0 +1,12 @@
+if [ ! -f data/final/inserted_tracks.txt ]; then
+  echo "no map to update in data/final/, run full_rebuild.sh first"
+  exit 1
+fi
+
+track_insertion/incremental_update_script.sh
+
+if [ $? -eq 0 ] ; then
+  Rscript plot_rebuilt_map.R
+else
+  exit 1
+fi